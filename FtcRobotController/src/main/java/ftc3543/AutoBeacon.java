@@ -2,6 +2,8 @@ package ftc3543;
 
 import ftclib.FtcOpMode;
 import hallib.HalDashboard;
+import trclib.TrcColorClassifier;
+import trclib.TrcColorSample;
 import trclib.TrcDbgTrace;
 import trclib.TrcEvent;
 import trclib.TrcRobot;
@@ -81,28 +83,24 @@ public class AutoBeacon implements TrcRobot.AutoStrategy
         {
             robot.encoderPidCtrl.printPidInfo(tracer);
             robot.gyroPidCtrl.printPidInfo(tracer);
+            TrcColorSample sample = robot.lineFollowColorSensor.getColorSample();
             tracer.traceInfo(moduleName, "[%.3f] LineFollow: color=%d, W/R/G/B=%d/%d/%d/%d",
                              elapsedTime,
                              (Integer)robot.lineFollowColorSensor.getColorNumber().value,
-                             (Integer)robot.lineFollowColorSensor.getWhiteValue().value,
-                             (Integer)robot.lineFollowColorSensor.getRedValue().value,
-                             (Integer)robot.lineFollowColorSensor.getGreenValue().value,
-                             (Integer)robot.lineFollowColorSensor.getBlueValue().value);
+                             sample.clear, sample.red, sample.green, sample.blue);
         }
         else if (robot.pidLineFollow.isEnabled())
         {
             robot.sonarPidCtrl.printPidInfo(tracer);
             robot.colorPidCtrl.printPidInfo(tracer);
+            TrcColorSample sample = robot.lineFollowColorSensor.getColorSample();
             tracer.traceInfo(moduleName, "[%.3f] LineFollow: color=%d, W/R/G/B=%d/%d/%d/%d",
                              elapsedTime,
                              (Integer)robot.lineFollowColorSensor.getColorNumber().value,
-                             (Integer)robot.lineFollowColorSensor.getWhiteValue().value,
-                             (Integer)robot.lineFollowColorSensor.getRedValue().value,
-                             (Integer)robot.lineFollowColorSensor.getGreenValue().value,
-                             (Integer)robot.lineFollowColorSensor.getBlueValue().value);
+                             sample.clear, sample.red, sample.green, sample.blue);
             dashboard.displayPrintf(3, "LineFollow:color=%d,white=%d",
                                     (Integer)robot.lineFollowColorSensor.getColorNumber().value,
-                                    (Integer)robot.lineFollowColorSensor.getWhiteValue().value);
+                                    sample.clear);
             robot.sonarPidCtrl.displayPidInfo(4);
             robot.colorPidCtrl.displayPidInfo(6);
         }
@@ -221,6 +219,17 @@ public class AutoBeacon implements TrcRobot.AutoStrategy
                     break;
 
                 case PUSH_BUTTON:
+                    if (robot.pidLineFollow.isCanceled())
+                    {
+                        //
+                        // Line following was aborted by a sensor fault, so we are not in
+                        // front of the beacon. Don't push a button or dump the climbers from
+                        // wherever we stopped, just stay there.
+                        //
+                        tracer.traceWarn(moduleName, "Line following aborted by sensor fault.");
+                        sm.setState(State.DONE);
+                        break;
+                    }
                     //
                     // Determine which button to press and press it.
                     // Simultaneously dump the climbers into the bin and
@@ -235,11 +244,14 @@ public class AutoBeacon implements TrcRobot.AutoStrategy
                         int redValue = robot.beaconColorSensor.red();
                         int greenValue = robot.beaconColorSensor.green();
                         int blueValue = robot.beaconColorSensor.blue();
-                        boolean isRed = redValue > blueValue && redValue > greenValue;
-                        boolean isBlue = blueValue > redValue && blueValue > greenValue;
+                        int colorId = robot.beaconColorClassifier.getColorId(
+                                redValue, greenValue, blueValue);
+                        boolean isRed = colorId == TrcColorClassifier.COLOR_RED;
+                        boolean isBlue = colorId == TrcColorClassifier.COLOR_BLUE;
                         tracer.traceInfo(
-                                moduleName, "[%d,%d,%d]isRed=%s,isBlue=%s",
+                                moduleName, "[%d,%d,%d]color=%s,isRed=%s,isBlue=%s",
                                 redValue, greenValue, blueValue,
+                                TrcColorClassifier.getColorName(colorId),
                                 isRed? "true": "false",
                                 isBlue? "true": "false");
                         //
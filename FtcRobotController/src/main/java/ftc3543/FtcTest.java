@@ -5,6 +5,8 @@ import ftclib.FtcMenu;
 import ftclib.FtcOpMode;
 import ftclib.FtcValueMenu;
 import trclib.TrcEvent;
+import trclib.TrcPidAutoTuner;
+import trclib.TrcSensorStats;
 import trclib.TrcStateMachine;
 import trclib.TrcTimer;
 
@@ -13,11 +15,14 @@ public class FtcTest extends FtcTeleOp implements FtcMenu.MenuButtons
     private enum Test
     {
         SENSORS_TEST,
+        SENSOR_STATS,
+        I2C_STATS,
         MOTORS_TEST,
         TIMED_DRIVE,
         DISTANCE_DRIVE,
         DEGREES_TURN,
-        LINE_FOLLOW
+        LINE_FOLLOW,
+        PID_AUTOTUNE
     }   //enum Test
 
     private enum Alliance
@@ -41,6 +46,16 @@ public class FtcTest extends FtcTeleOp implements FtcMenu.MenuButtons
     private TrcTimer timer;
     private TrcStateMachine sm;
     //
+    // Sensor statistics.
+    //
+    private TrcSensorStats gyroStats = null;
+    private TrcSensorStats colorStats = null;
+    private TrcSensorStats sonarStats = null;
+    //
+    // PID autotuner.
+    //
+    private TrcPidAutoTuner autoTuner = null;
+    //
     // Menu choices.
     //
     private Test test = Test.SENSORS_TEST;
@@ -49,6 +64,7 @@ public class FtcTest extends FtcTeleOp implements FtcMenu.MenuButtons
     private double turnDegrees = 0.0;
     private Alliance alliance = Alliance.RED_ALLIANCE;
     private double wallDistance = 0.0;
+    private TrcPidAutoTuner.DriveAxis tuneAxis = TrcPidAutoTuner.DriveAxis.Y;
 
     private int motorIndex = 0;
 
@@ -70,6 +86,34 @@ public class FtcTest extends FtcTeleOp implements FtcMenu.MenuButtons
         // Choice menus.
         //
         doMenus();
+        if (test == Test.SENSOR_STATS)
+        {
+            gyroStats = new TrcSensorStats("gyroRate", robot.gyro, 2);
+            colorStats = new TrcSensorStats("colorWhite", robot.lineFollowColorSensor, 4);
+            sonarStats = new TrcSensorStats("sonar", robot.sonarSensor, 0);
+            gyroStats.setEnabled(true);
+            colorStats.setEnabled(true);
+            sonarStats.setEnabled(true);
+        }
+        else if (test == Test.I2C_STATS)
+        {
+            robot.lineFollowColorSensor.resetTransactionStats();
+        }
+        else if (test == Test.PID_AUTOTUNE)
+        {
+            if (tuneAxis == TrcPidAutoTuner.DriveAxis.TURN)
+            {
+                autoTuner = new TrcPidAutoTuner(
+                        "gyroAutoTuner", robot.gyroPidCtrl, robot.driveBase, tuneAxis,
+                        RobotInfo.AUTOTUNE_TURN_POWER, RobotInfo.AUTOTUNE_TURN_HYSTERESIS);
+            }
+            else
+            {
+                autoTuner = new TrcPidAutoTuner(
+                        "encoderAutoTuner", robot.encoderPidCtrl, robot.driveBase, tuneAxis,
+                        RobotInfo.AUTOTUNE_DRIVE_POWER, RobotInfo.AUTOTUNE_DRIVE_HYSTERESIS);
+            }
+        }
         sm.start(State.START);
     }   //initRobot
 
@@ -86,7 +130,7 @@ public class FtcTest extends FtcTeleOp implements FtcMenu.MenuButtons
         //
         // Allow TeleOp to run so we can control the robot in test sensor mode.
         //
-        if (test == Test.SENSORS_TEST)
+        if (test == Test.SENSORS_TEST || test == Test.SENSOR_STATS || test == Test.I2C_STATS)
         {
             super.runPeriodic(elapsedTime);
         }
@@ -104,6 +148,14 @@ public class FtcTest extends FtcTeleOp implements FtcMenu.MenuButtons
                 doSensorsTest();
                 break;
 
+            case SENSOR_STATS:
+                doSensorStats();
+                break;
+
+            case I2C_STATS:
+                doI2cStats();
+                break;
+
             case MOTORS_TEST:
                 doMotorsTest();
                 break;
@@ -123,6 +175,10 @@ public class FtcTest extends FtcTeleOp implements FtcMenu.MenuButtons
             case LINE_FOLLOW:
                 doLineFollow(alliance, wallDistance);
                 break;
+
+            case PID_AUTOTUNE:
+                doPidAutoTune();
+                break;
         }
     }   //runContinuous
 
@@ -167,17 +223,24 @@ public class FtcTest extends FtcTeleOp implements FtcMenu.MenuButtons
         FtcChoiceMenu allianceMenu = new FtcChoiceMenu("Alliance:", testMenu, this);
         FtcValueMenu wallDistanceMenu = new FtcValueMenu("Wall distance:", allianceMenu, this,
                                                          2.0, 12.0, 2.0, 2.0, " %.0f in");
+        FtcChoiceMenu tuneAxisMenu = new FtcChoiceMenu("Tune axis:", testMenu, this);
 
         testMenu.addChoice("Sensors test", Test.SENSORS_TEST);
+        testMenu.addChoice("Sensor stats", Test.SENSOR_STATS);
+        testMenu.addChoice("I2C stats", Test.I2C_STATS);
         testMenu.addChoice("Motors test", Test.MOTORS_TEST);
         testMenu.addChoice("Timed drive", Test.TIMED_DRIVE, driveTimeMenu);
         testMenu.addChoice("Distance drive", Test.DISTANCE_DRIVE, driveDistanceMenu);
         testMenu.addChoice("Degrees turn", Test.DEGREES_TURN, turnDegreesMenu);
         testMenu.addChoice("Line follow", Test.LINE_FOLLOW, allianceMenu);
+        testMenu.addChoice("PID autotune", Test.PID_AUTOTUNE, tuneAxisMenu);
 
         allianceMenu.addChoice("Red", Alliance.RED_ALLIANCE, wallDistanceMenu);
         allianceMenu.addChoice("Blue", Alliance.BLUE_ALLIANCE, wallDistanceMenu);
 
+        tuneAxisMenu.addChoice("Drive", TrcPidAutoTuner.DriveAxis.Y);
+        tuneAxisMenu.addChoice("Turn", TrcPidAutoTuner.DriveAxis.TURN);
+
         FtcMenu.walkMenuTree(testMenu);
 
         test = (Test)testMenu.getCurrentChoiceObject();
@@ -186,6 +249,7 @@ public class FtcTest extends FtcTeleOp implements FtcMenu.MenuButtons
         turnDegrees = turnDegreesMenu.getCurrentValue();
         alliance = (Alliance)allianceMenu.getCurrentChoiceObject();
         wallDistance = wallDistanceMenu.getCurrentValue();
+        tuneAxis = (TrcPidAutoTuner.DriveAxis)tuneAxisMenu.getCurrentChoiceObject();
 
         dashboard.displayPrintf(0, "Test: %s", testMenu.getCurrentChoiceText());
     }   //doMenus
@@ -221,6 +285,34 @@ public class FtcTest extends FtcTeleOp implements FtcMenu.MenuButtons
                                 robot.sonarSensor.getData(0).value);
     }   //doSensorsTest
 
+    private void doSensorStats()
+    {
+        //
+        // Display the running statistics of the sensors. Drive the robot around and watch
+        // for noisy sensors or slow sample rates.
+        //
+        gyroStats.displayStats(9);
+        colorStats.displayStats(11);
+        sonarStats.displayStats(13);
+    }   //doSensorStats
+
+    private void doI2cStats()
+    {
+        //
+        // Display the transaction statistics of the I2C color sensor, first for the whole
+        // device, then for each register range it reads.
+        //
+        robot.lineFollowColorSensor.getTransactionStats().displayStats(9);
+        for (int i = 0; i < Math.min(robot.lineFollowColorSensor.getNumTransactionStats(), 2); i++)
+        {
+            robot.lineFollowColorSensor.getTransactionStats(i).displayStats(11 + 2*i);
+        }
+        dashboard.displayPrintf(15, "PortUtil=%.2f,AvgQueue=%.1f,MaxQueue=%d",
+                                robot.i2cMonitor.getPortUtilization(robot.lineFollowColorSensor),
+                                robot.i2cMonitor.getAverageQueueDepth(robot.lineFollowColorSensor),
+                                robot.i2cMonitor.getMaxQueueDepth(robot.lineFollowColorSensor));
+    }   //doI2cStats
+
     private void doMotorsTest()
     {
         dashboard.displayPrintf(9, "Motors Test: index=%d", motorIndex);
@@ -499,4 +591,49 @@ public class FtcTest extends FtcTeleOp implements FtcMenu.MenuButtons
         }
     }   //doLineFollow
 
+    private void doPidAutoTune()
+    {
+        dashboard.displayPrintf(9, "PID Autotune: %s, cycles=%d",
+                                tuneAxis.toString(), autoTuner.getCycles());
+        dashboard.displayPrintf(10, "xPos=%.1f,yPos=%.1f,heading=%.1f",
+                                robot.driveBase.getXPosition(),
+                                robot.driveBase.getYPosition(),
+                                robot.driveBase.getHeading());
+
+        if (sm.isReady())
+        {
+            State state = (State)sm.getState();
+            switch (state)
+            {
+                case START:
+                    //
+                    // Oscillate the axis around its current position to measure it.
+                    //
+                    autoTuner.start(event, RobotInfo.AUTOTUNE_TIMEOUT);
+                    sm.addEvent(event);
+                    sm.waitForEvents(State.DONE);
+                    break;
+
+                case DONE:
+                default:
+                    //
+                    // We are done, display the recommended gains for each tuning rule.
+                    //
+                    dashboard.displayPrintf(11, "Ku=%.4f,Tu=%.3f,successful=%s",
+                                            autoTuner.getUltimateGain(),
+                                            autoTuner.getUltimatePeriod(),
+                                            Boolean.toString(autoTuner.isSuccessful()));
+                    for (TrcPidAutoTuner.TuningRule rule: TrcPidAutoTuner.TuningRule.values())
+                    {
+                        dashboard.displayPrintf(12 + rule.ordinal(),
+                                                "%s: Kp=%.4f,Ki=%.4f,Kd=%.4f",
+                                                rule.toString(), autoTuner.getKp(rule),
+                                                autoTuner.getKi(rule), autoTuner.getKd(rule));
+                    }
+                    sm.stop();
+                    break;
+            }
+        }
+    }   //doPidAutoTune
+
 }   //class FtcTest
@@ -11,12 +11,18 @@ import ftclib.FtcServo;
 import ftclib.FtcUltrasonicSensor;
 import hallib.HalUtil;
 import trclib.TrcAnalogTrigger;
+import trclib.TrcColorClassifier;
 import trclib.TrcDriveBase;
 import trclib.TrcEnhancedServo;
+import trclib.TrcEvent;
+import trclib.TrcFilter;
+import trclib.TrcI2cPortMonitor;
+import trclib.TrcMedianFilter;
 import trclib.TrcPidController;
 import trclib.TrcPidDrive;
 import trclib.TrcRobot;
 import trclib.TrcSensor;
+import trclib.TrcSensorHealthMonitor;
 
 public class Robot implements TrcPidController.PidInput, TrcAnalogTrigger.TriggerHandler
 {
@@ -25,9 +31,12 @@ public class Robot implements TrcPidController.PidInput, TrcAnalogTrigger.Trigge
     //
     public FtcMRGyro gyro;
     public ColorSensor beaconColorSensor;
+    public TrcColorClassifier beaconColorClassifier;
     public FtcMRI2cColorSensor lineFollowColorSensor;
+    public TrcI2cPortMonitor i2cMonitor;
     public FtcUltrasonicSensor sonarSensor;
     public double prevSonarValue;
+    public TrcMedianFilter colorFilter;
 
     //
     // DriveBase subsystem.
@@ -49,6 +58,8 @@ public class Robot implements TrcPidController.PidInput, TrcAnalogTrigger.Trigge
     public TrcPidController colorPidCtrl;
     public TrcPidDrive pidLineFollow;
     public TrcAnalogTrigger colorTrigger;
+    public TrcEvent sensorFaultEvent;
+    public TrcSensorHealthMonitor sensorMonitor;
 
     //
     // Winch subsystem.
@@ -84,9 +95,19 @@ public class Robot implements TrcPidController.PidInput, TrcAnalogTrigger.Trigge
         gyro.calibrate();
         beaconColorSensor = hardwareMap.colorSensor.get("colorSensor");
         beaconColorSensor.enableLed(false);
+        beaconColorClassifier = new TrcColorClassifier(
+                RobotInfo.BEACON_BLACK_LEVEL, RobotInfo.BEACON_MIN_SATURATION);
         lineFollowColorSensor = new FtcMRI2cColorSensor("i2cColorSensor", 0x40);
         lineFollowColorSensor.setLEDEnabled(true);
-        sonarSensor = new FtcUltrasonicSensor("legoSonarSensor");
+        //
+        // The monitor lets the I2C stats test show how busy the color sensor port is.
+        //
+        i2cMonitor = new TrcI2cPortMonitor("i2cModule");
+        i2cMonitor.addDevice(lineFollowColorSensor);
+        colorFilter = new TrcMedianFilter("colorFilter", RobotInfo.COLOR_FILTER_SIZE);
+        sonarSensor = new FtcUltrasonicSensor(
+                "legoSonarSensor",
+                new TrcFilter[] {new TrcMedianFilter("sonarFilter", RobotInfo.SONAR_FILTER_SIZE)});
         sonarSensor.setScale(RobotInfo.SONAR_INCHES_PER_CM);
         //
         // DriveBase subsystem.
@@ -139,6 +160,18 @@ public class Robot implements TrcPidController.PidInput, TrcAnalogTrigger.Trigge
         colorTrigger = new TrcAnalogTrigger(
                 "colorTrigger", lineFollowColorSensor, 0, color4Zones, this);
         //
+        // Abort line following if the I2C color sensor stops updating or the sonar
+        // loses its echo.
+        //
+        sensorFaultEvent = new TrcEvent("sensorFaultEvent");
+        sensorMonitor = new TrcSensorHealthMonitor("sensorMonitor", null, sensorFaultEvent);
+        int sensorId = sensorMonitor.addSensor("lineFollowColor", lineFollowColorSensor, 4);
+        sensorMonitor.setStaleTimeout(sensorId, RobotInfo.COLOR_STALE_TIMEOUT);
+        sensorId = sensorMonitor.addSensor("sonar", sonarSensor, 0);
+        sensorMonitor.setSaturationLimits(
+                sensorId, 0.0, RobotInfo.SONAR_MAX_DISTANCE, RobotInfo.SONAR_SATURATION_TIME);
+        pidLineFollow.setAbortEvent(sensorFaultEvent);
+        //
         // Winch subsystem.
         //
         winch = new Winch();
@@ -175,6 +208,7 @@ public class Robot implements TrcPidController.PidInput, TrcAnalogTrigger.Trigge
         lineFollowColorSensor.setLEDEnabled(true);
         sonarSensor.setEnabled(true);
         prevSonarValue = (Double)sonarSensor.getData(0).value;
+        sensorMonitor.setEnabled(true);
         driveBase.resetPosition();
         climberDepositor.setPosition(RobotInfo.DEPOSITOR_RETRACT_POSITION);
         winch.setTilterPosition(RobotInfo.WINCH_TILTER_MIN_POSITION);
@@ -184,6 +218,7 @@ public class Robot implements TrcPidController.PidInput, TrcAnalogTrigger.Trigge
     {
         FtcOpMode.getOpModeTracer().traceInfo(
                 FtcOpMode.getOpModeName(), "Stopping: %.3f", HalUtil.getCurrentTime());
+        sensorMonitor.setEnabled(false);
         gyro.setEnabled(false);
         lineFollowColorSensor.setLEDEnabled(false);
         sonarSensor.setEnabled(false);
@@ -227,6 +262,7 @@ public class Robot implements TrcPidController.PidInput, TrcAnalogTrigger.Trigge
         {
             TrcSensor.SensorData data = lineFollowColorSensor.getWhiteValue();
             input = data.value != null? (double)(Integer)data.value: 0.0;
+            input = colorFilter.filterData(input);
             //
             // Give it a deadband to minimize fish tailing.
             //
@@ -20,6 +20,12 @@ public class RobotInfo
     public static final double GYRO_TOLERANCE                   = 2.0;
     public static final double GYRO_SETTLING                    = 0.2;
 
+    public static final double AUTOTUNE_DRIVE_POWER             = 0.5;
+    public static final double AUTOTUNE_DRIVE_HYSTERESIS        = 0.5;
+    public static final double AUTOTUNE_TURN_POWER              = 0.5;
+    public static final double AUTOTUNE_TURN_HYSTERESIS         = 1.0;
+    public static final double AUTOTUNE_TIMEOUT                 = 20.0;
+
     //
     // Line following PID control.
     //
@@ -31,6 +37,9 @@ public class RobotInfo
     public static final double SONAR_SETTLING                   = 0.2;
     public static final double SONAR_INCHES_PER_CM              = (1.0/2.54);
     public static final double SONAR_BEACON_DISTANCE            = 2.0;
+    public static final int SONAR_FILTER_SIZE                   = 5;
+    public static final double SONAR_MAX_DISTANCE               = (255.0*SONAR_INCHES_PER_CM);
+    public static final double SONAR_SATURATION_TIME            = 0.5;
 
     public static final double COLOR_KP                         = 0.125;
     public static final double COLOR_KI                         = 0.0;
@@ -46,6 +55,8 @@ public class RobotInfo
     public static final double COLOR_WHITE_LEVEL                = 10.0;
     public static final double COLOR_LINE_EDGE_LEVEL            = ((COLOR_DARK_LEVEL + COLOR_WHITE_LEVEL)/2.0);
     public static final double COLOR_LINE_EDGE_DEADBAND         = (COLOR_LINE_EDGE_LEVEL*0.25);
+    public static final int COLOR_FILTER_SIZE                   = 3;
+    public static final double COLOR_STALE_TIMEOUT              = 0.5;
 
     //
     // Winch subsystem.
@@ -89,5 +100,7 @@ public class RobotInfo
     //
     public static final double PUSHER_LEFT_TRAVEL_TIME          = 0.7;
     public static final double PUSHER_RIGHT_TRAVEL_TIME         = 1.0;
+    public static final int BEACON_BLACK_LEVEL                  = 1;
+    public static final double BEACON_MIN_SATURATION            = 0.1;
 
 }   //class RobotInfo
@@ -26,6 +26,10 @@ package ftclib;
 
 import com.qualcomm.robotcore.hardware.HardwareMap;
 
+import java.nio.ByteBuffer;
+
+import trclib.TrcColorClassifier;
+import trclib.TrcColorSample;
 import trclib.TrcDbgTrace;
 import trclib.TrcI2cDevice;
 import trclib.TrcSensor;
@@ -99,13 +103,28 @@ public class FtcAdaFruitColorSensor extends FtcI2cDevice implements TrcI2cDevice
 
     private static final byte STATUS_AVALID = ((byte)(1 << 0)); //RGBC Valid.
     private static final byte STATUS_AINT   = ((byte)(1 << 4)); //RGBC clear channel Interrupt.
+    //
+    // The color values are 16-bit, so small readings are mostly noise.
+    //
+    private static final int DEF_BLACK_LEVEL        = 64;
+    private static final double DEF_MIN_SATURATION  = 0.2;
 
     private int deviceID = 0;
     private int deviceStatus = 0;
-    private TrcSensor.SensorData clearValue = new TrcSensor.SensorData(0.0, null);
-    private TrcSensor.SensorData redValue = new TrcSensor.SensorData(0.0, null);
-    private TrcSensor.SensorData greenValue = new TrcSensor.SensorData(0.0, null);
-    private TrcSensor.SensorData blueValue = new TrcSensor.SensorData(0.0, null);
+    //
+    // The samples are kept as primitives and only boxed when a getter is called, so the
+    // repeating read completion does not allocate.
+    //
+    private double dataTimestamp = 0.0;
+    private boolean dataValid = false;
+    private int clearValue = 0;
+    private int redValue = 0;
+    private int greenValue = 0;
+    private int blueValue = 0;
+    private TrcColorSample colorSample = new TrcColorSample();
+    private static final TrcColorClassifier defColorClassifier =
+            new TrcColorClassifier(DEF_BLACK_LEVEL, DEF_MIN_SATURATION);
+    private TrcColorClassifier colorClassifier = defColorClassifier;
 
     /**
      * Constructor: Creates an instance of the object.
@@ -160,7 +179,7 @@ public class FtcAdaFruitColorSensor extends FtcI2cDevice implements TrcI2cDevice
      */
     public void setSensorEnabled(boolean enabled)
     {
-        sendByteCommand(REG_ENABLE, enabled? (byte)(ENABLE_PON | ENABLE_AEN): 0);
+        writeCachedRegister(REG_ENABLE, enabled? (byte)(ENABLE_PON | ENABLE_AEN): 0);
     }   //setSensorEnabled
 
     /**
@@ -170,7 +189,7 @@ public class FtcAdaFruitColorSensor extends FtcI2cDevice implements TrcI2cDevice
      */
     public void setATime(byte aTime)
     {
-        sendByteCommand(REG_ATIME, aTime);
+        writeCachedRegister(REG_ATIME, aTime);
     }   //setATime
 
     /**
@@ -180,7 +199,7 @@ public class FtcAdaFruitColorSensor extends FtcI2cDevice implements TrcI2cDevice
      */
     public void setWTime(byte wTime)
     {
-        sendByteCommand(REG_WTIME, wTime);
+        writeCachedRegister(REG_WTIME, wTime);
     }   //setWTime
 
     /**
@@ -190,7 +209,7 @@ public class FtcAdaFruitColorSensor extends FtcI2cDevice implements TrcI2cDevice
      */
     public void setClearInterruptLowThreshold(short threshold)
     {
-        sendWordCommand(REG_AILTL, threshold);
+        writeCachedRegister16(REG_AILTL, threshold);
     }   //setClearInterruptLowThreshold
 
     /**
@@ -200,7 +219,7 @@ public class FtcAdaFruitColorSensor extends FtcI2cDevice implements TrcI2cDevice
      */
     public void setClearInterruptHighThreshold(short threshold)
     {
-        sendWordCommand(REG_AIHTL, threshold);
+        writeCachedRegister16(REG_AIHTL, threshold);
     }   //setClearInterruptHighThreshold
 
     /**
@@ -210,7 +229,7 @@ public class FtcAdaFruitColorSensor extends FtcI2cDevice implements TrcI2cDevice
      */
     public void setAGain(byte aGain)
     {
-        sendByteCommand(REG_CONTROL, aGain);
+        writeCachedRegister(REG_CONTROL, aGain);
     }   //setAGain
 
     /**
@@ -233,6 +252,38 @@ public class FtcAdaFruitColorSensor extends FtcI2cDevice implements TrcI2cDevice
         return deviceStatus;
     }   //getStatus
 
+    /**
+     * This method sets the classifier used to determine the hue and color ID of the color
+     * samples.
+     *
+     * @param classifier specifies the color classifier.
+     */
+    public void setColorClassifier(TrcColorClassifier classifier)
+    {
+        colorClassifier = classifier;
+    }   //setColorClassifier
+
+    /**
+     * This method returns the latest color sample. The clear, red, green and blue values of
+     * the sample come from the same burst read and are classified when they arrive. The sample
+     * is updated in place, so the caller must copy it if it needs to keep the values.
+     *
+     * @return latest color sample.
+     */
+    public TrcColorSample getColorSample()
+    {
+        final String funcName = "getColorSample";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API,
+                               "=%s", colorSample.toString());
+        }
+
+        return colorSample;
+    }   //getColorSample
+
     /**
      * This method returns the clear value.
      *
@@ -241,8 +292,8 @@ public class FtcAdaFruitColorSensor extends FtcI2cDevice implements TrcI2cDevice
     public TrcSensor.SensorData getClearValue()
     {
         final String funcName = "getClearValue";
-        TrcSensor.SensorData data =
-                new TrcSensor.SensorData(clearValue.timestamp, clearValue.value);
+        TrcSensor.SensorData data = new TrcSensor.SensorData(
+                dataTimestamp, dataValid? Integer.valueOf(clearValue): null);
 
         if (debugEnabled)
         {
@@ -262,8 +313,8 @@ public class FtcAdaFruitColorSensor extends FtcI2cDevice implements TrcI2cDevice
     public TrcSensor.SensorData getRedValue()
     {
         final String funcName = "getRedValue";
-        TrcSensor.SensorData data =
-                new TrcSensor.SensorData(redValue.timestamp, redValue.value);
+        TrcSensor.SensorData data = new TrcSensor.SensorData(
+                dataTimestamp, dataValid? Integer.valueOf(redValue): null);
 
         if (debugEnabled)
         {
@@ -283,8 +334,8 @@ public class FtcAdaFruitColorSensor extends FtcI2cDevice implements TrcI2cDevice
     public TrcSensor.SensorData getGreenValue()
     {
         final String funcName = "getGreenValue";
-        TrcSensor.SensorData data =
-                new TrcSensor.SensorData(greenValue.timestamp, greenValue.value);
+        TrcSensor.SensorData data = new TrcSensor.SensorData(
+                dataTimestamp, dataValid? Integer.valueOf(greenValue): null);
 
         if (debugEnabled)
         {
@@ -304,8 +355,8 @@ public class FtcAdaFruitColorSensor extends FtcI2cDevice implements TrcI2cDevice
     public TrcSensor.SensorData getBlueValue()
     {
         final String funcName = "getBlueValue";
-        TrcSensor.SensorData data =
-                new TrcSensor.SensorData(blueValue.timestamp, blueValue.value);
+        TrcSensor.SensorData data = new TrcSensor.SensorData(
+                dataTimestamp, dataValid? Integer.valueOf(blueValue): null);
 
         if (debugEnabled)
         {
@@ -327,13 +378,13 @@ public class FtcAdaFruitColorSensor extends FtcI2cDevice implements TrcI2cDevice
      * @param regAddress specifies the starting register address.
      * @param length specifies the number of bytes read.
      * @param timestamp specified the timestamp of the data retrieved.
-     * @param data specifies the data byte array.
+     * @param data specifies the read-only data buffer.
      * @param timedout specifies true if the operation was timed out, false otherwise.
      * @return true to repeat the operation, false otherwise.
      */
     @Override
     public boolean readCompletion(
-            int regAddress, int length, double timestamp, byte[] data, boolean timedout)
+            int regAddress, int length, double timestamp, ByteBuffer data, boolean timedout)
     {
         final String funcName = "readCompletion";
         boolean repeat = false;
@@ -342,7 +393,7 @@ public class FtcAdaFruitColorSensor extends FtcI2cDevice implements TrcI2cDevice
         {
             if (!timedout)
             {
-                deviceID = TrcUtil.bytesToInt(data[0]);
+                deviceID = TrcUtil.bytesToInt(data.get(0));
             }
             else
             {
@@ -356,21 +407,26 @@ public class FtcAdaFruitColorSensor extends FtcI2cDevice implements TrcI2cDevice
                 //
                 // Read these repeatedly.
                 //
-                deviceStatus = TrcUtil.bytesToInt(data[REG_STATUS - READ_START]);
+                deviceStatus = TrcUtil.bytesToInt(data.get(REG_STATUS - READ_START));
                 if ((deviceStatus & STATUS_AVALID) != 0)
                 {
-                    clearValue.timestamp = timestamp;
-                    clearValue.value = TrcUtil.bytesToInt(data[REG_CDATAL - READ_START],
-                                                          data[REG_CDATAH - READ_START]);
-                    redValue.timestamp = timestamp;
-                    redValue.value = TrcUtil.bytesToInt(data[REG_RDATAL - READ_START],
-                                                        data[REG_RDATAH - READ_START]);
-                    greenValue.timestamp = timestamp;
-                    greenValue.value = TrcUtil.bytesToInt(data[REG_GDATAL - READ_START],
-                                                          data[REG_GDATAH - READ_START]);
-                    blueValue.timestamp = timestamp;
-                    blueValue.value = TrcUtil.bytesToInt(data[REG_BDATAL - READ_START],
-                                                         data[REG_BDATAH - READ_START]);
+                    dataTimestamp = timestamp;
+                    clearValue = TrcUtil.bytesToInt(data.get(REG_CDATAL - READ_START),
+                                                    data.get(REG_CDATAH - READ_START));
+                    redValue = TrcUtil.bytesToInt(data.get(REG_RDATAL - READ_START),
+                                                  data.get(REG_RDATAH - READ_START));
+                    greenValue = TrcUtil.bytesToInt(data.get(REG_GDATAL - READ_START),
+                                                    data.get(REG_GDATAH - READ_START));
+                    blueValue = TrcUtil.bytesToInt(data.get(REG_BDATAL - READ_START),
+                                                   data.get(REG_BDATAH - READ_START));
+                    dataValid = true;
+
+                    colorSample.timestamp = timestamp;
+                    colorSample.clear = clearValue;
+                    colorSample.red = redValue;
+                    colorSample.green = greenValue;
+                    colorSample.blue = blueValue;
+                    colorClassifier.classify(colorSample);
                 }
             }
             repeat = true;
@@ -384,7 +440,8 @@ public class FtcAdaFruitColorSensor extends FtcI2cDevice implements TrcI2cDevice
             dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.CALLBK,
                                "=%s", Boolean.toString(repeat));
             dbgTrace.traceInfo(funcName, "%s(addr=%x,len=%d,time=%.3f,size=%d,timedout=%s)=%s",
-                               funcName, regAddress, length, timestamp, data.length,
+                               funcName, regAddress, length, timestamp,
+                               data == null? 0: data.limit(),
                                Boolean.toString(timedout), Boolean.toString(repeat));
         }
 
@@ -28,6 +28,7 @@ import android.hardware.Sensor;
 import hallib.HalUtil;
 import trclib.TrcDbgTrace;
 import trclib.TrcFilter;
+import trclib.TrcSampleQueue;
 import trclib.TrcGyro;
 
 /**
@@ -79,6 +80,40 @@ public class FtcAndroidGyro extends TrcGyro
         this(instanceName, null);
     }   //FtcAndroidGyro
 
+    /**
+     * This method enables oversampling. The Android sensor will run at its fastest rate
+     * and average the rotation rate events down to the given output interval, which lowers the
+     * noise without loading the robot loop with more samples. It must be called while the
+     * sensor is disabled.
+     *
+     * @param outputInterval specifies the output sampling interval in microseconds, 0 to
+     *                       disable oversampling.
+     */
+    public void setOversampling(int outputInterval)
+    {
+        final String funcName = "setOversampling";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API,
+                                "interval=%d", outputInterval);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        sensor.setOversampling(outputInterval, true);
+    }   //setOversampling
+
+    /**
+     * This method returns the underlying Android sensor so the caller can query its input
+     * and output rates and dropped event counts.
+     *
+     * @return Android sensor object.
+     */
+    public FtcAndroidSensor getAndroidSensor()
+    {
+        return sensor;
+    }   //getAndroidSensor
+
     /**
      * This method enables/disables the sensor.
      *
@@ -113,6 +148,37 @@ public class FtcAndroidGyro extends TrcGyro
         }
     }   //calibrate
 
+    /**
+     * This method returns the sample queue of the Android sensor so that the integrator
+     * can integrate every sensor event instead of just the latest one.
+     *
+     * @param dataType specifies the data type.
+     * @return sample queue if the data type is ROTATION_RATE, null otherwise.
+     */
+    @Override
+    public TrcSampleQueue getSampleQueue(Object dataType)
+    {
+        return dataType == DataType.ROTATION_RATE? sensor.getSampleQueue(dataType): null;
+    }   //getSampleQueue
+
+    /**
+     * This method creates the sample queue of the Android sensor when the integrator attaches
+     * and removes it when the integrator detaches, so events are only buffered while they are
+     * drained.
+     *
+     * @param dataType specifies the data type.
+     * @param enabled specifies true when the integrator attaches, false when it detaches.
+     */
+    @Override
+    public void setSampleQueueEnabled(Object dataType, boolean enabled)
+    {
+        super.setSampleQueueEnabled(dataType, enabled);
+        if (dataType == DataType.ROTATION_RATE)
+        {
+            sensor.setSampleQueueEnabled(dataType, enabled);
+        }
+    }   //setSampleQueueEnabled
+
     //
     // Implements TrcAccelerometer abstract methods.
     //
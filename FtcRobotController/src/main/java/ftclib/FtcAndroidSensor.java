@@ -29,13 +29,25 @@ import android.hardware.SensorEvent;
 import android.hardware.SensorEventListener;
 import android.hardware.SensorManager;
 
+import java.util.concurrent.atomic.AtomicLongArray;
+
 import hallib.HalUtil;
 import trclib.TrcDbgTrace;
 import trclib.TrcFilter;
+import trclib.TrcSampleQueue;
 import trclib.TrcSensor;
 
 /**
  * This class implements an Android sensor that may have multiple axes.
+ * Sensor timestamps are converted to the HalUtil.getCurrentTime() time base.
+ * Optionally, every sensor event can also be pushed into a sample queue so that
+ * a consumer on the robot thread can process all samples, not just the latest.
+ * The latest sample is published from the sensor thread with a sequence lock so
+ * readers never see a timestamp and values from different events. Neither the
+ * sensor thread nor the readers allocate memory, except getRawData which must
+ * return a new SensorData object. The sensor can also oversample, running the
+ * hardware at its fastest rate and decimating or averaging the events down to a
+ * configured output rate before publishing them.
  */
 public class FtcAndroidSensor extends TrcSensor implements SensorEventListener
 {
@@ -43,11 +55,72 @@ public class FtcAndroidSensor extends TrcSensor implements SensorEventListener
     private static final boolean debugEnabled = false;
     private TrcDbgTrace dbgTrace = null;
 
+    //
+    // Number of samples the sample queue holds, enough for several robot loops of events at
+    // the fastest sensor rate.
+    //
+    public static final int DEF_SAMPLE_QUEUE_SIZE = 64;
+
+    /**
+     * This class holds a consistent snapshot of the latest sample of all axes. It is
+     * filled in place by getSample so the caller can reuse it without allocating memory.
+     */
+    public static class Sample
+    {
+        public long sequence;
+        public double timestamp;
+        public final double[] values;
+
+        /**
+         * Constructor: Creates an instance of the object.
+         *
+         * @param numAxes specifies the number of axes.
+         */
+        public Sample(int numAxes)
+        {
+            values = new double[numAxes];
+        }   //Sample
+
+    }   //class Sample
+
     private SensorManager sensorManager;
     private Sensor sensor;
     private int numAxes;
-    private SensorData[] sensorData;
+    //
+    // The latest sample is published with a sequence lock. The sensor thread makes
+    // publishSeq odd while it is writing and even when it is done, so the sample
+    // sequence number is publishSeq/2. Element 0 of sampleBits is the timestamp and the
+    // rest are the axis values, all stored as raw double bits. Every access is volatile,
+    // so a reader that sees the same even publishSeq before and after reading the
+    // elements has read a consistent sample.
+    //
+    private final AtomicLongArray sampleBits;
+    private volatile long publishSeq = 0;
     private boolean enabled = false;
+    private volatile TrcSampleQueue sampleQueue = null;
+    //
+    // Oversampling state, only touched by the sensor thread while enabled.
+    //
+    private int outputInterval = 0;
+    private boolean averaging = true;
+    private double outputPeriod = 0.0;
+    private final double[] outputValues;
+    private final double[] accumValues;
+    private double accumTime = 0.0;
+    private int accumCount = 0;
+    private double nextOutputTime = 0.0;
+    //
+    // Rate statistics, written by the sensor thread and reset by the first event after enabling.
+    //
+    private volatile long inputEventCount = 0;
+    private volatile long outputSampleCount = 0;
+    private volatile long decimatedEventCount = 0;
+    private volatile double firstInputTime = 0.0;
+    private volatile double lastInputTime = 0.0;
+    private volatile double firstOutputTime = 0.0;
+    private volatile double lastOutputTime = 0.0;
+    private volatile boolean timeSynced = false;
+    private double timeOffset = 0.0;
 
     /**
      * Constructor: Creates an instance of the object.
@@ -81,10 +154,13 @@ public class FtcAndroidSensor extends TrcSensor implements SensorEventListener
         }
 
         this.numAxes = numAxes;
-        sensorData = new SensorData[numAxes];
-        for (int i = 0; i < numAxes; i++)
+        outputValues = new double[numAxes];
+        accumValues = new double[numAxes];
+        sampleBits = new AtomicLongArray(numAxes + 1);
+        sampleBits.set(0, Double.doubleToRawLongBits(HalUtil.getCurrentTime()));
+        for (int i = 1; i <= numAxes; i++)
         {
-            sensorData[i] = new SensorData(HalUtil.getCurrentTime(), 0.0);
+            sampleBits.set(i, Double.doubleToRawLongBits(0.0));
         }
     }   //FtcAndroidSensor
 
@@ -173,6 +249,159 @@ public class FtcAndroidSensor extends TrcSensor implements SensorEventListener
         return createInstance(instanceName, sensorType, numAxes, null);
     }   //createInstance
 
+    /**
+     * This method creates the sample queue that buffers every sensor event. The queue must
+     * only be drained by one consumer. It is normally created by setSampleQueueEnabled when
+     * an integrator attaches, this method lets the caller choose the capacity instead.
+     *
+     * @param capacity specifies the number of samples the queue can hold.
+     */
+    public void enableSampleQueue(int capacity)
+    {
+        final String funcName = "enableSampleQueue";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API, "capacity=%d", capacity);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        sampleQueue = new TrcSampleQueue(toString(), capacity, numAxes);
+    }   //enableSampleQueue
+
+    /**
+     * This method removes the sample queue, sensor events are no longer buffered.
+     */
+    public void disableSampleQueue()
+    {
+        final String funcName = "disableSampleQueue";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        sampleQueue = null;
+    }   //disableSampleQueue
+
+    /**
+     * This method sets the oversampling mode. In this mode, the sensor is registered at
+     * the fastest hardware rate regardless of the sampling interval passed to setEnabled.
+     * The events are then either averaged or decimated down to the output interval before
+     * being published, so the consumer sees fewer but less noisy samples. The output
+     * interval cannot be shorter than the minimum delay of the sensor hardware. It must be
+     * called while the sensor is disabled.
+     *
+     * @param outputInterval specifies the output sampling interval in microseconds, 0 to
+     *                       disable oversampling.
+     * @param averaging specifies true to average all events in an output interval, false to
+     *                  publish only the last event and drop the rest.
+     */
+    public void setOversampling(int outputInterval, boolean averaging)
+    {
+        final String funcName = "setOversampling";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API,
+                                "interval=%d,averaging=%s",
+                                outputInterval, Boolean.toString(averaging));
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        if (enabled)
+        {
+            throw new IllegalStateException("Sensor must be disabled.");
+        }
+
+        if (outputInterval < 0)
+        {
+            throw new IllegalArgumentException("outputInterval cannot be negative.");
+        }
+
+        if (outputInterval > 0)
+        {
+            outputInterval = Math.max(outputInterval, sensor.getMinDelay());
+        }
+
+        this.outputInterval = outputInterval;
+        this.averaging = averaging;
+        outputPeriod = outputInterval/1000000.0;
+    }   //setOversampling
+
+    /**
+     * This method returns the output sampling interval of the oversampling mode.
+     *
+     * @return output sampling interval in microseconds, 0 if oversampling is disabled.
+     */
+    public int getOversamplingInterval()
+    {
+        return outputInterval;
+    }   //getOversamplingInterval
+
+    /**
+     * This method returns the rate of the events coming from the sensor hardware since
+     * the sensor was enabled.
+     *
+     * @return input event rate in Hz.
+     */
+    public double getInputRate()
+    {
+        long count = inputEventCount;
+        double duration = lastInputTime - firstInputTime;
+
+        return count > 1 && duration > 0.0? (count - 1)/duration: 0.0;
+    }   //getInputRate
+
+    /**
+     * This method returns the rate of the samples published since the sensor was enabled.
+     * It is the same as the input rate unless oversampling is enabled.
+     *
+     * @return output sample rate in Hz.
+     */
+    public double getOutputRate()
+    {
+        long count = outputSampleCount;
+        double duration = lastOutputTime - firstOutputTime;
+
+        return count > 1 && duration > 0.0? (count - 1)/duration: 0.0;
+    }   //getOutputRate
+
+    /**
+     * This method returns the number of events received from the sensor hardware since
+     * the sensor was enabled.
+     *
+     * @return number of input events.
+     */
+    public long getInputEventCount()
+    {
+        return inputEventCount;
+    }   //getInputEventCount
+
+    /**
+     * This method returns the number of samples published since the sensor was enabled.
+     *
+     * @return number of output samples.
+     */
+    public long getOutputSampleCount()
+    {
+        return outputSampleCount;
+    }   //getOutputSampleCount
+
+    /**
+     * This method returns the number of events that never reached a consumer, either
+     * because they were decimated without averaging or because the sample queue was full.
+     *
+     * @return number of dropped events.
+     */
+    public long getDroppedEventCount()
+    {
+        TrcSampleQueue queue = sampleQueue;
+
+        return decimatedEventCount + (queue != null? queue.getDroppedCount(): 0);
+    }   //getDroppedEventCount
+
     /**
      * This method enables/disables the sensor data listener.
      *
@@ -193,7 +422,13 @@ public class FtcAndroidSensor extends TrcSensor implements SensorEventListener
         this.enabled = enabled;
         if (enabled)
         {
-            sensorManager.registerListener(this, sensor, samplingInterval);
+            //
+            // Resynchronize the sensor time base with the first event after enabling.
+            //
+            timeSynced = false;
+            sensorManager.registerListener(
+                    this, sensor,
+                    outputInterval > 0? SensorManager.SENSOR_DELAY_FASTEST: samplingInterval);
         }
         else
         {
@@ -230,6 +465,89 @@ public class FtcAndroidSensor extends TrcSensor implements SensorEventListener
         return enabled;
     }   //isEnabled
 
+    /**
+     * This method returns the sequence number of the latest sample. It increments by one
+     * for every published sample, so the caller can compare it with the previous sequence
+     * number to detect missed or duplicate samples. Without oversampling, every sensor event
+     * is published. With oversampling, only the decimated or averaged output samples are
+     * published, so it increments once per output interval, not once per sensor event.
+     *
+     * @return sample sequence number, 0 if no sample has been received.
+     */
+    public long getSampleSequence()
+    {
+        return publishSeq >>> 1;
+    }   //getSampleSequence
+
+    /**
+     * This method copies a consistent snapshot of the latest sample of all axes into the
+     * given sample object.
+     *
+     * @param sample specifies the sample object to be filled in.
+     */
+    public void getSample(Sample sample)
+    {
+        final String funcName = "getSample";
+
+        if (sample.values.length < numAxes)
+        {
+            throw new IllegalArgumentException(
+                    String.format("sample must have at least %d axes.", numAxes));
+        }
+
+        long seq;
+        do
+        {
+            seq = publishSeq;
+            sample.timestamp = Double.longBitsToDouble(sampleBits.get(0));
+            for (int i = 0; i < numAxes; i++)
+            {
+                sample.values[i] = Double.longBitsToDouble(sampleBits.get(i + 1));
+            }
+        } while ((seq & 1) != 0 || seq != publishSeq);
+        sample.sequence = seq >>> 1;
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API,
+                               "=(seq:%d,timestamp:%.3f)", sample.sequence, sample.timestamp);
+        }
+    }   //getSample
+
+    /**
+     * This method is called on the sensor thread to publish a new sample and push it into
+     * the sample queue if there is one.
+     *
+     * @param timestamp specifies the timestamp of the sample.
+     * @param values specifies the sample values of all axes.
+     */
+    private void publishSample(double timestamp, double[] values)
+    {
+        long seq = publishSeq;
+
+        publishSeq = seq + 1;
+        sampleBits.set(0, Double.doubleToRawLongBits(timestamp));
+        for (int i = 0; i < numAxes; i++)
+        {
+            sampleBits.set(i + 1, Double.doubleToRawLongBits(values[i]));
+        }
+        publishSeq = seq + 2;
+
+        TrcSampleQueue queue = sampleQueue;
+        if (queue != null)
+        {
+            queue.put(timestamp, values);
+        }
+
+        if (outputSampleCount == 0)
+        {
+            firstOutputTime = timestamp;
+        }
+        lastOutputTime = timestamp;
+        outputSampleCount++;
+    }   //publishSample
+
     //
     // Implements TrcSensor abstract methods.
     //
@@ -245,7 +563,17 @@ public class FtcAndroidSensor extends TrcSensor implements SensorEventListener
     public SensorData getRawData(int index, Object dataType)
     {
         final String funcName = "getRawData";
-        SensorData data = new SensorData(sensorData[index].timestamp, sensorData[index].value);
+        long seq;
+        double timestamp;
+        double value;
+
+        do
+        {
+            seq = publishSeq;
+            timestamp = Double.longBitsToDouble(sampleBits.get(0));
+            value = Double.longBitsToDouble(sampleBits.get(index + 1));
+        } while ((seq & 1) != 0 || seq != publishSeq);
+        SensorData data = new SensorData(timestamp, value);
 
         if (debugEnabled)
         {
@@ -257,6 +585,45 @@ public class FtcAndroidSensor extends TrcSensor implements SensorEventListener
         return data;
     }   //getRawData
 
+    //
+    // Overrides TrcSensor methods.
+    //
+
+    /**
+     * This method returns the sample queue if enabled. The Android sensor only has one
+     * data type, so the data type is ignored.
+     *
+     * @param dataType specifies the data type (not used, can be null).
+     * @return sample queue, null if not enabled.
+     */
+    @Override
+    public TrcSampleQueue getSampleQueue(Object dataType)
+    {
+        return sampleQueue;
+    }   //getSampleQueue
+
+    /**
+     * This method creates the sample queue when a consumer attaches and removes it when the
+     * consumer detaches. The Android sensor only has one data type, so the data type is only
+     * passed on to the super class.
+     *
+     * @param dataType specifies the data type (not used, can be null).
+     * @param enabled specifies true when a consumer attaches, false when it detaches.
+     */
+    @Override
+    public void setSampleQueueEnabled(Object dataType, boolean enabled)
+    {
+        super.setSampleQueueEnabled(dataType, enabled);
+        if (enabled)
+        {
+            enableSampleQueue(DEF_SAMPLE_QUEUE_SIZE);
+        }
+        else
+        {
+            disableSampleQueue();
+        }
+    }   //setSampleQueueEnabled
+
     //
     // Implements SensorEventListener interface.
     //
@@ -299,10 +666,97 @@ public class FtcAndroidSensor extends TrcSensor implements SensorEventListener
             dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.CALLBK);
         }
 
-        for (int i = 0; i < numAxes; i++)
+        double eventTime = event.timestamp/1000000000.0;
+        if (!timeSynced)
+        {
+            //
+            // Android event timestamps are not on the HalUtil time base and their epoch
+            // differs between devices, so compute the offset from the first event.
+            //
+            timeOffset = HalUtil.getCurrentTime() - eventTime;
+            timeSynced = true;
+            //
+            // This is the first event after enabling, start over the statistics and the
+            // oversampling window.
+            //
+            inputEventCount = 0;
+            outputSampleCount = 0;
+            decimatedEventCount = 0;
+            firstInputTime = eventTime + timeOffset;
+            accumCount = 0;
+            nextOutputTime = firstInputTime;
+        }
+        double timestamp = eventTime + timeOffset;
+
+        lastInputTime = timestamp;
+        inputEventCount++;
+
+        if (outputInterval == 0)
+        {
+            for (int i = 0; i < numAxes; i++)
+            {
+                outputValues[i] = event.values[i];
+            }
+            publishSample(timestamp, outputValues);
+        }
+        else
         {
-            sensorData[i].timestamp = event.timestamp/1000000000.0;
-            sensorData[i].value = (double)event.values[i];
+            if (averaging)
+            {
+                if (accumCount == 0)
+                {
+                    accumTime = 0.0;
+                    for (int i = 0; i < numAxes; i++)
+                    {
+                        accumValues[i] = 0.0;
+                    }
+                }
+
+                accumTime += timestamp;
+                for (int i = 0; i < numAxes; i++)
+                {
+                    accumValues[i] += event.values[i];
+                }
+                accumCount++;
+            }
+
+            if (timestamp >= nextOutputTime)
+            {
+                //
+                // The output interval is up. Advance the output clock by a whole period so
+                // the output rate doesn't drift, unless we fell behind by more than a period.
+                //
+                nextOutputTime += outputPeriod;
+                if (nextOutputTime <= timestamp)
+                {
+                    nextOutputTime = timestamp + outputPeriod;
+                }
+
+                if (averaging)
+                {
+                    //
+                    // The average of the events is centered at the average of their timestamps.
+                    //
+                    for (int i = 0; i < numAxes; i++)
+                    {
+                        outputValues[i] = accumValues[i]/accumCount;
+                    }
+                    publishSample(accumTime/accumCount, outputValues);
+                    accumCount = 0;
+                }
+                else
+                {
+                    for (int i = 0; i < numAxes; i++)
+                    {
+                        outputValues[i] = event.values[i];
+                    }
+                    publishSample(timestamp, outputValues);
+                }
+            }
+            else if (!averaging)
+            {
+                decimatedEventCount++;
+            }
         }
     }   //onSensorChanged
 
@@ -24,9 +24,11 @@
 package ftclib;
 
 import com.qualcomm.robotcore.hardware.HardwareMap;
+import com.qualcomm.robotcore.hardware.I2cController;
 import com.qualcomm.robotcore.hardware.I2cDevice;
 
-import java.util.Arrays;
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.Lock;
 
 import trclib.TrcDbgTrace;
 import trclib.TrcI2cDevice;
@@ -42,8 +44,36 @@ public class FtcI2cDevice extends TrcI2cDevice
     private static final boolean debugEnabled = false;
     private TrcDbgTrace dbgTrace = null;
 
+    //
+    // The Core Device Interface I2C port buffer can hold at most this many data bytes.
+    //
+    protected static final int MAX_TRANSFER_LENGTH = 26;
+    //
+    // A port that misses a transaction is usually back a few loops later, so timed out requests
+    // are retried a couple of times with a short backoff.
+    //
+    private static final int MAX_RETRIES = 2;
+    private static final double INITIAL_RETRY_BACKOFF = 0.01;
+    private static final double MAX_RETRY_BACKOFF = 0.1;
+    //
+    // The read and write caches start with a header holding the mode, the I2C address, the
+    // register address and the number of data bytes of the transaction the data belongs to.
+    //
+    private static final int CACHE_DATA_OFFSET = I2cController.I2C_BUFFER_START_ADDRESS;
+    private static final int CACHE_MODE_OFFSET = CACHE_DATA_OFFSET - 4;
+    private static final int CACHE_REGADDR_OFFSET = CACHE_DATA_OFFSET - 2;
+    private static final int CACHE_LENGTH_OFFSET = CACHE_DATA_OFFSET - 1;
+    private static final byte CACHE_MODE_READ = (byte)0x80;
+
     private int i2cAddress;
     private I2cDevice device;
+    private byte[] readCache;
+    private Lock readCacheLock;
+    private byte[] writeCache;
+    private Lock writeCacheLock;
+    private byte[] readData;
+    private ByteBuffer readDataView;
+    private int readRegAddress = -1;
 
     /**
      * Constructor: Creates an instance of the object.
@@ -67,6 +97,15 @@ public class FtcI2cDevice extends TrcI2cDevice
 
         this.i2cAddress = i2cAddress;
         device = hardwareMap.i2cDevice.get(instanceName);
+        readCache = device.getI2cReadCache();
+        readCacheLock = device.getI2cReadCacheLock();
+        writeCache = device.getI2cWriteCache();
+        writeCacheLock = device.getI2cWriteCacheLock();
+        readData = new byte[readCache.length - CACHE_DATA_OFFSET];
+        readDataView = ByteBuffer.wrap(readData).asReadOnlyBuffer();
+        setMaxTransferLength(MAX_TRANSFER_LENGTH);
+        setAdaptiveTimeoutEnabled(true);
+        setRetryPolicy(MAX_RETRIES, INITIAL_RETRY_BACKOFF, MAX_RETRY_BACKOFF);
     }   //FtcI2cDevice
 
     /**
@@ -163,6 +202,7 @@ public class FtcI2cDevice extends TrcI2cDevice
             dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
         }
 
+        readRegAddress = regAddress;
         device.enableI2cReadMode(i2cAddress, regAddress, length);
         device.setI2cPortActionFlag();
         device.writeI2cCacheToController();
@@ -188,31 +228,68 @@ public class FtcI2cDevice extends TrcI2cDevice
         }
 
         device.enableI2cWriteMode(i2cAddress, regAddress, length);
-        device.copyBufferIntoWriteBuffer(data);
+        //
+        // Copy only the requested number of bytes into the write cache, the data buffer may be
+        // larger than that.
+        //
+        writeCacheLock.lock();
+        try
+        {
+            System.arraycopy(data, 0, writeCache, CACHE_DATA_OFFSET, length);
+        }
+        finally
+        {
+            writeCacheLock.unlock();
+        }
         device.setI2cPortActionFlag();
         device.writeI2cCacheToController();
     }   //sendWriteCommand
 
     /**
-     * This method retrieves the data read from the device.
+     * This method retrieves the data read from the device. The data is copied out of the read
+     * cache while holding the cache lock into a preallocated buffer, so no memory is allocated.
+     * The returned read-only view is reused by subsequent calls. The reply of a read that timed
+     * out may still land in the read cache later, so the data is only returned if the cache
+     * header says it is the reply to the read command sent last. Otherwise the returned buffer
+     * is empty and the caller keeps waiting.
      *
-     * @return byte array containing the data read.
+     * @return read-only buffer containing the data read.
      */
     @Override
-    public byte[] getData()
+    public ByteBuffer getData()
     {
         final String funcName = "getData";
+        int length;
 
         device.readI2cCacheFromController();
-        byte[] data = device.getCopyOfReadBuffer();
+        readCacheLock.lock();
+        try
+        {
+            if (readCache[CACHE_MODE_OFFSET] == CACHE_MODE_READ &&
+                (readCache[CACHE_REGADDR_OFFSET] & 0xff) == readRegAddress)
+            {
+                length = Math.min(readCache[CACHE_LENGTH_OFFSET] & 0xff, readData.length);
+                System.arraycopy(readCache, CACHE_DATA_OFFSET, readData, 0, length);
+            }
+            else
+            {
+                length = 0;
+            }
+        }
+        finally
+        {
+            readCacheLock.unlock();
+        }
+        readDataView.clear();
+        readDataView.limit(length);
 
         if (debugEnabled)
         {
             dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API);
-            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API, "=%s", Arrays.toString(data));
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API, "=(len=%d)", length);
         }
 
-        return data;
+        return readDataView;
     }   //getData
 
 }   //class FtcI2cDevice
@@ -25,6 +25,10 @@ package ftclib;
 
 import com.qualcomm.robotcore.hardware.HardwareMap;
 
+import java.nio.ByteBuffer;
+
+import trclib.TrcColorClassifier;
+import trclib.TrcColorSample;
 import trclib.TrcDbgTrace;
 import trclib.TrcI2cDevice;
 import trclib.TrcSensor;
@@ -56,6 +60,18 @@ public class FtcMRI2cColorSensor extends FtcMRI2cDevice implements TrcI2cDevice.
     private static final int READ_START             = REG_COLOR_NUMBER;
     private static final int READ_END               = REG_WHITE;
     private static final int READ_LENGTH            = (READ_END - READ_START + 1);
+    //
+    // The color values don't need to be read faster than 20 Hz, leave the rest of the port
+    // bandwidth to other requests.
+    //
+    private static final double READ_PERIOD         = 0.05;
+    //
+    // The color values are 8-bit and rarely go much above 30, so anything with a color
+    // channel reading at least 2 is taken as a color, and 20% saturation separates colors
+    // from white.
+    //
+    private static final int DEF_BLACK_LEVEL        = 2;
+    private static final double DEF_MIN_SATURATION  = 0.2;
 
     //
     // Commands.
@@ -88,11 +104,21 @@ public class FtcMRI2cColorSensor extends FtcMRI2cDevice implements TrcI2cDevice.
     private static final byte COLORNUM_LIGHT_BLUE   = 15;
     private static final byte COLORNUM_WHITE        = 16;
 
-    private TrcSensor.SensorData colorNumber = new TrcSensor.SensorData(0.0, null);
-    private TrcSensor.SensorData redValue = new TrcSensor.SensorData(0.0, null);
-    private TrcSensor.SensorData greenValue = new TrcSensor.SensorData(0.0, null);
-    private TrcSensor.SensorData blueValue = new TrcSensor.SensorData(0.0, null);
-    private TrcSensor.SensorData whiteValue = new TrcSensor.SensorData(0.0, null);
+    //
+    // The samples are kept as primitives and only boxed when a getter is called, so the
+    // repeating read completion does not allocate.
+    //
+    private double dataTimestamp = 0.0;
+    private boolean dataValid = false;
+    private int colorNumber = 0;
+    private int redValue = 0;
+    private int greenValue = 0;
+    private int blueValue = 0;
+    private int whiteValue = 0;
+    private TrcColorSample colorSample = new TrcColorSample();
+    private static final TrcColorClassifier defColorClassifier =
+            new TrcColorClassifier(DEF_BLACK_LEVEL, DEF_MIN_SATURATION);
+    private TrcColorClassifier colorClassifier = defColorClassifier;
 
     /**
      * Constructor: Creates an instance of the object.
@@ -114,7 +140,7 @@ public class FtcMRI2cColorSensor extends FtcMRI2cDevice implements TrcI2cDevice.
                     TrcDbgTrace.MsgLevel.INFO);
         }
 
-        read(READ_START, READ_LENGTH, this);
+        readPeriodic(READ_START, READ_LENGTH, this, READ_PERIOD);
     }   //FtcMRI2cColorSensor
 
     /**
@@ -146,7 +172,11 @@ public class FtcMRI2cColorSensor extends FtcMRI2cDevice implements TrcI2cDevice.
      */
     public void setLEDEnabled(boolean enabled)
     {
-        sendByteCommand(REG_COMMAND, enabled? CMD_ENABLE_LED: CMD_DISABLE_LED);
+        //
+        // The command register reads back the LED mode once other commands have completed,
+        // so it is written through the register cache to skip redundant LED mode changes.
+        //
+        writeCachedRegister(REG_COMMAND, enabled? CMD_ENABLE_LED: CMD_DISABLE_LED);
     }   //setLEDEnabled
 
     /**
@@ -203,6 +233,38 @@ public class FtcMRI2cColorSensor extends FtcMRI2cDevice implements TrcI2cDevice.
         sendByteCommand(REG_COMMAND, CMD_CAL_WHITEBAL);
     }   //calibrateWhiteBalance
 
+    /**
+     * This method sets the classifier used to determine the hue and color ID of the color
+     * samples.
+     *
+     * @param classifier specifies the color classifier.
+     */
+    public void setColorClassifier(TrcColorClassifier classifier)
+    {
+        colorClassifier = classifier;
+    }   //setColorClassifier
+
+    /**
+     * This method returns the latest color sample. The red, green, blue and white values of
+     * the sample come from the same read and are classified when they arrive. The sample is
+     * updated in place, so the caller must copy it if it needs to keep the values.
+     *
+     * @return latest color sample.
+     */
+    public TrcColorSample getColorSample()
+    {
+        final String funcName = "getColorSample";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API,
+                               "=%s", colorSample.toString());
+        }
+
+        return colorSample;
+    }   //getColorSample
+
     /**
      * This method returns the color number.
      *
@@ -211,8 +273,8 @@ public class FtcMRI2cColorSensor extends FtcMRI2cDevice implements TrcI2cDevice.
     public TrcSensor.SensorData getColorNumber()
     {
         final String funcName = "getColorNumber";
-        TrcSensor.SensorData data =
-                new TrcSensor.SensorData(colorNumber.timestamp, colorNumber.value);
+        TrcSensor.SensorData data = new TrcSensor.SensorData(
+                dataTimestamp, dataValid? Integer.valueOf(colorNumber): null);
 
         if (debugEnabled)
         {
@@ -232,8 +294,8 @@ public class FtcMRI2cColorSensor extends FtcMRI2cDevice implements TrcI2cDevice.
     public TrcSensor.SensorData getRedValue()
     {
         final String funcName = "getRedValue";
-        TrcSensor.SensorData data =
-                new TrcSensor.SensorData(redValue.timestamp, redValue.value);
+        TrcSensor.SensorData data = new TrcSensor.SensorData(
+                dataTimestamp, dataValid? Integer.valueOf(redValue): null);
 
         if (debugEnabled)
         {
@@ -253,8 +315,8 @@ public class FtcMRI2cColorSensor extends FtcMRI2cDevice implements TrcI2cDevice.
     public TrcSensor.SensorData getGreenValue()
     {
         final String funcName = "getGreenValue";
-        TrcSensor.SensorData data =
-                new TrcSensor.SensorData(greenValue.timestamp, greenValue.value);
+        TrcSensor.SensorData data = new TrcSensor.SensorData(
+                dataTimestamp, dataValid? Integer.valueOf(greenValue): null);
 
         if (debugEnabled)
         {
@@ -274,8 +336,8 @@ public class FtcMRI2cColorSensor extends FtcMRI2cDevice implements TrcI2cDevice.
     public TrcSensor.SensorData getBlueValue()
     {
         final String funcName = "getBlueValue";
-        TrcSensor.SensorData data =
-                new TrcSensor.SensorData(blueValue.timestamp, blueValue.value);
+        TrcSensor.SensorData data = new TrcSensor.SensorData(
+                dataTimestamp, dataValid? Integer.valueOf(blueValue): null);
 
         if (debugEnabled)
         {
@@ -295,8 +357,8 @@ public class FtcMRI2cColorSensor extends FtcMRI2cDevice implements TrcI2cDevice.
     public TrcSensor.SensorData getWhiteValue()
     {
         final String funcName = "getWhiteValue";
-        TrcSensor.SensorData data =
-                new TrcSensor.SensorData(whiteValue.timestamp, whiteValue.value);
+        TrcSensor.SensorData data = new TrcSensor.SensorData(
+                dataTimestamp, dataValid? Integer.valueOf(whiteValue): null);
 
         if (debugEnabled)
         {
@@ -318,13 +380,13 @@ public class FtcMRI2cColorSensor extends FtcMRI2cDevice implements TrcI2cDevice.
      * @param regAddress specifies the starting register address.
      * @param length specifies the number of bytes read.
      * @param timestamp specified the timestamp of the data retrieved.
-     * @param data specifies the data byte array.
+     * @param data specifies the read-only data buffer.
      * @param timedout specifies true if the operation was timed out, false otherwise.
      * @return true to repeat the operation, false otherwise.
      */
     @Override
     public boolean readCompletion(
-            int regAddress, int length, double timestamp, byte[] data, boolean timedout)
+            int regAddress, int length, double timestamp, ByteBuffer data, boolean timedout)
     {
         final String funcName = "readCompletion";
         boolean repeat = false;
@@ -336,20 +398,24 @@ public class FtcMRI2cColorSensor extends FtcMRI2cDevice implements TrcI2cDevice.
                 //
                 // Read these repeatedly.
                 //
-                colorNumber.timestamp = timestamp;
-                colorNumber.value = TrcUtil.bytesToInt(data[REG_COLOR_NUMBER - READ_START]);
+                dataTimestamp = timestamp;
+                colorNumber = TrcUtil.bytesToInt(data.get(REG_COLOR_NUMBER - READ_START));
+
+                redValue = TrcUtil.bytesToInt(data.get(REG_RED - READ_START));
 
-                redValue.timestamp = timestamp;
-                redValue.value = TrcUtil.bytesToInt(data[REG_RED - READ_START]);
+                greenValue = TrcUtil.bytesToInt(data.get(REG_GREEN - READ_START));
 
-                greenValue.timestamp = timestamp;
-                greenValue.value = TrcUtil.bytesToInt(data[REG_GREEN - READ_START]);
+                blueValue = TrcUtil.bytesToInt(data.get(REG_BLUE - READ_START));
 
-                blueValue.timestamp = timestamp;
-                blueValue.value = TrcUtil.bytesToInt(data[REG_BLUE - READ_START]);
+                whiteValue = TrcUtil.bytesToInt(data.get(REG_WHITE - READ_START));
+                dataValid = true;
 
-                whiteValue.timestamp = timestamp;
-                whiteValue.value = TrcUtil.bytesToInt(data[REG_WHITE - READ_START]);
+                colorSample.timestamp = timestamp;
+                colorSample.red = redValue;
+                colorSample.green = greenValue;
+                colorSample.blue = blueValue;
+                colorSample.clear = whiteValue;
+                colorClassifier.classify(colorSample);
             }
             repeat = true;
         }
@@ -366,7 +432,8 @@ public class FtcMRI2cColorSensor extends FtcMRI2cDevice implements TrcI2cDevice.
             dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.CALLBK,
                                "=%s", Boolean.toString(repeat));
             dbgTrace.traceInfo(funcName, "%s(addr=%x,len=%d,time=%.3f,size=%d,timedout=%s)=%s",
-                               funcName, regAddress, length, timestamp, data.length,
+                               funcName, regAddress, length, timestamp,
+                               data == null? 0: data.limit(),
                                Boolean.toString(timedout), Boolean.toString(repeat));
         }
 
@@ -25,6 +25,8 @@ package ftclib;
 
 import com.qualcomm.robotcore.hardware.HardwareMap;
 
+import java.nio.ByteBuffer;
+
 import trclib.TrcDbgTrace;
 import trclib.TrcI2cDevice;
 import trclib.TrcUtil;
@@ -104,7 +106,7 @@ public class FtcMRI2cDevice extends FtcI2cDevice implements TrcI2cDevice.Complet
         }
 
         byte[] data = {newAddress, I2CADDR_TRIGGER_BYTE_1, I2CADDR_TRIGGER_BYTE_2};
-        write(REG_SET_I2C_ADDRESS, data.length, data);
+        write(REG_SET_I2C_ADDRESS, data.length, data, null, 0.0, PRIORITY_HIGH, 0.0);
         updateI2cAddress(newAddress);
     }   //setI2cAddress
 
@@ -172,13 +174,13 @@ public class FtcMRI2cDevice extends FtcI2cDevice implements TrcI2cDevice.Complet
      * @param regAddress specifies the starting register address.
      * @param length specifies the number of bytes read.
      * @param timestamp specified the timestamp of the data retrieved.
-     * @param data specifies the data byte array.
+     * @param data specifies the read-only data buffer.
      * @param timedout specifies true if the operation was timed out, false otherwise.
      * @return true to repeat the operation, false otherwise.
      */
     @Override
     public boolean readCompletion(
-            int regAddress, int length, double timestamp, byte[] data, boolean timedout)
+            int regAddress, int length, double timestamp, ByteBuffer data, boolean timedout)
     {
         final String funcName = "readCompletion";
         boolean repeat = false;
@@ -194,10 +196,10 @@ public class FtcMRI2cDevice extends FtcI2cDevice implements TrcI2cDevice.Complet
                 //
                 // These only need to be read once, so no repeat.
                 //
-                firmwareRev = TrcUtil.bytesToInt(data[REG_FIRMWARE_REVISION - HEADER_START]);
+                firmwareRev = TrcUtil.bytesToInt(data.get(REG_FIRMWARE_REVISION - HEADER_START));
                 manufacturerCode =
-                        TrcUtil.bytesToInt(data[REG_MANUFACTURER_CODE - HEADER_START]);
-                idCode = TrcUtil.bytesToInt(data[REG_ID_CODE - HEADER_START]);
+                        TrcUtil.bytesToInt(data.get(REG_MANUFACTURER_CODE - HEADER_START));
+                idCode = TrcUtil.bytesToInt(data.get(REG_ID_CODE - HEADER_START));
             }
         }
 
@@ -209,7 +211,8 @@ public class FtcMRI2cDevice extends FtcI2cDevice implements TrcI2cDevice.Complet
             dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.CALLBK,
                                "=%s", Boolean.toString(repeat));
             dbgTrace.traceInfo(funcName, "%s(addr=%x,len=%d,time=%.3f,size=%d,timedout=%s)=%s",
-                               funcName, regAddress, length, timestamp, data.length,
+                               funcName, regAddress, length, timestamp,
+                               data == null? 0: data.limit(),
                                Boolean.toString(timedout), Boolean.toString(repeat));
         }
 
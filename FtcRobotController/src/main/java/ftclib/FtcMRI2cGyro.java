@@ -25,6 +25,9 @@ package ftclib;
 
 import com.qualcomm.robotcore.hardware.HardwareMap;
 
+import java.nio.ByteBuffer;
+
+import trclib.TrcDataUnwrapper;
 import trclib.TrcDbgTrace;
 import trclib.TrcI2cDevice;
 import trclib.TrcSensor;
@@ -65,20 +68,32 @@ public class FtcMRI2cGyro extends FtcMRI2cDevice implements TrcI2cDevice.Complet
 
     private static final int READ_START             = REG_HEADING_LSB;
     private static final int READ_END               = REG_Z_SCALING_MSB;
-    private static final int READ_LENGTH            = (READ_START - READ_END + 1);
+    private static final int READ_LENGTH            = (READ_END - READ_START + 1);
 
     private static final byte CMD_MEASUREMENT_MODE  = 0x00;
     private static final byte CMD_RESET_OFFSET_CAL  = 0x4e;
     private static final byte CMD_RESET_Z_INTEGRATOR= 0x52;
     private static final byte CMD_WRITE_EEPROM_DATA = 0x57;
 
-    private TrcSensor.SensorData heading = new TrcSensor.SensorData(0.0, null);
-    private TrcSensor.SensorData integratedZ = new TrcSensor.SensorData(0.0, null);
-    private TrcSensor.SensorData rawX = new TrcSensor.SensorData(0.0, null);
-    private TrcSensor.SensorData rawY = new TrcSensor.SensorData(0.0, null);
-    private TrcSensor.SensorData rawZ = new TrcSensor.SensorData(0.0, null);
-    private TrcSensor.SensorData zOffset = new TrcSensor.SensorData(0.0, null);
-    private TrcSensor.SensorData zScaling = new TrcSensor.SensorData(0.0, null);
+    //
+    // Max turn rate of the sensor in degrees per second, used to unwrap the heading.
+    //
+    private static final double MAX_TURN_RATE       = 2000.0;
+
+    //
+    // The samples are kept as primitives and only boxed when a getter is called, so the
+    // repeating read completion does not allocate.
+    //
+    private double dataTimestamp = 0.0;
+    private boolean dataValid = false;
+    private int heading = 0;
+    private int integratedZ = 0;
+    private int rawX = 0;
+    private int rawY = 0;
+    private int rawZ = 0;
+    private int zOffset = 0;
+    private int zScaling = 0;
+    private TrcDataUnwrapper headingUnwrapper;
     private boolean calibrating = false;
 
     /**
@@ -101,6 +116,10 @@ public class FtcMRI2cGyro extends FtcMRI2cDevice implements TrcI2cDevice.Complet
                     TrcDbgTrace.MsgLevel.INFO);
         }
 
+        headingUnwrapper = new TrcDataUnwrapper(instanceName, 1);
+        headingUnwrapper.setValueRange(0, 0.0, 360.0);
+        headingUnwrapper.setMaxRate(0, MAX_TURN_RATE);
+
         resetZIntegrator();
         read(READ_START, READ_LENGTH, this);
     }   //FtcMRI2cGyro
@@ -187,8 +206,8 @@ public class FtcMRI2cGyro extends FtcMRI2cDevice implements TrcI2cDevice.Complet
     public TrcSensor.SensorData getHeading()
     {
         final String funcName = "getHeading";
-        TrcSensor.SensorData data =
-                new TrcSensor.SensorData(heading.timestamp, heading.value);
+        TrcSensor.SensorData data = new TrcSensor.SensorData(
+                dataTimestamp, dataValid? Integer.valueOf(heading): null);
 
         if (debugEnabled)
         {
@@ -200,6 +219,49 @@ public class FtcMRI2cGyro extends FtcMRI2cDevice implements TrcI2cDevice.Complet
         return data;
     }   //getHeading
 
+    /**
+     * This method returns the heading data unwrapped so it doesn't jump between 0 and 359
+     * when the robot turns across the zero heading.
+     *
+     * @return unwrapped heading data in degrees.
+     */
+    public TrcSensor.SensorData getUnwrappedHeading()
+    {
+        final String funcName = "getUnwrappedHeading";
+        TrcSensor.SensorData data = new TrcSensor.SensorData(
+                headingUnwrapper.getTimestamp(0), headingUnwrapper.getUnwrappedValue(0));
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API,
+                               "=(timestamp=%.3f,value=%f)", data.timestamp, data.value);
+        }
+
+        return data;
+    }   //getUnwrappedHeading
+
+    /**
+     * This method returns the turn rate computed from the unwrapped heading.
+     *
+     * @return turn rate in degrees per second.
+     */
+    public TrcSensor.SensorData getHeadingRate()
+    {
+        final String funcName = "getHeadingRate";
+        TrcSensor.SensorData data = new TrcSensor.SensorData(
+                headingUnwrapper.getTimestamp(0), headingUnwrapper.getRate(0));
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API,
+                               "=(timestamp=%.3f,value=%f)", data.timestamp, data.value);
+        }
+
+        return data;
+    }   //getHeadingRate
+
     /**
      * This method returns the integrated Z value.
      *
@@ -208,8 +270,8 @@ public class FtcMRI2cGyro extends FtcMRI2cDevice implements TrcI2cDevice.Complet
     public TrcSensor.SensorData getIntegratedZ()
     {
         final String funcName = "getIntegratedZ";
-        TrcSensor.SensorData data =
-                new TrcSensor.SensorData(integratedZ.timestamp, integratedZ.value);
+        TrcSensor.SensorData data = new TrcSensor.SensorData(
+                dataTimestamp, dataValid? Integer.valueOf(integratedZ): null);
 
         if (debugEnabled)
         {
@@ -229,8 +291,8 @@ public class FtcMRI2cGyro extends FtcMRI2cDevice implements TrcI2cDevice.Complet
     public TrcSensor.SensorData getRawX()
     {
         final String funcName = "getRawX";
-        TrcSensor.SensorData data =
-                new TrcSensor.SensorData(rawX.timestamp, rawX.value);
+        TrcSensor.SensorData data = new TrcSensor.SensorData(
+                dataTimestamp, dataValid? Integer.valueOf(rawX): null);
 
         if (debugEnabled)
         {
@@ -250,8 +312,8 @@ public class FtcMRI2cGyro extends FtcMRI2cDevice implements TrcI2cDevice.Complet
     public TrcSensor.SensorData getRawY()
     {
         final String funcName = "getRawY";
-        TrcSensor.SensorData data =
-                new TrcSensor.SensorData(rawY.timestamp, rawY.value);
+        TrcSensor.SensorData data = new TrcSensor.SensorData(
+                dataTimestamp, dataValid? Integer.valueOf(rawY): null);
 
         if (debugEnabled)
         {
@@ -271,8 +333,8 @@ public class FtcMRI2cGyro extends FtcMRI2cDevice implements TrcI2cDevice.Complet
     public TrcSensor.SensorData getRawZ()
     {
         final String funcName = "getRawZ";
-        TrcSensor.SensorData data =
-                new TrcSensor.SensorData(rawZ.timestamp, rawZ.value);
+        TrcSensor.SensorData data = new TrcSensor.SensorData(
+                dataTimestamp, dataValid? Integer.valueOf(rawZ): null);
 
         if (debugEnabled)
         {
@@ -292,8 +354,8 @@ public class FtcMRI2cGyro extends FtcMRI2cDevice implements TrcI2cDevice.Complet
     public TrcSensor.SensorData getZOffset()
     {
         final String funcName = "getZOffset";
-        TrcSensor.SensorData data =
-                new TrcSensor.SensorData(zOffset.timestamp, zOffset.value);
+        TrcSensor.SensorData data = new TrcSensor.SensorData(
+                dataTimestamp, dataValid? Integer.valueOf(zOffset): null);
 
         if (debugEnabled)
         {
@@ -313,8 +375,8 @@ public class FtcMRI2cGyro extends FtcMRI2cDevice implements TrcI2cDevice.Complet
     public TrcSensor.SensorData getZScaling()
     {
         final String funcName = "getZScaling";
-        TrcSensor.SensorData data =
-                new TrcSensor.SensorData(zScaling.timestamp, zScaling.value);
+        TrcSensor.SensorData data = new TrcSensor.SensorData(
+                dataTimestamp, dataValid? Integer.valueOf(zScaling): null);
 
         if (debugEnabled)
         {
@@ -336,13 +398,13 @@ public class FtcMRI2cGyro extends FtcMRI2cDevice implements TrcI2cDevice.Complet
      * @param regAddress specifies the starting register address.
      * @param length specifies the number of bytes read.
      * @param timestamp specified the timestamp of the data retrieved.
-     * @param data specifies the data byte array.
+     * @param data specifies the read-only data buffer.
      * @param timedout specifies true if the operation was timed out, false otherwise.
      * @return true to repeat the operation, false otherwise.
      */
     @Override
     public boolean readCompletion(
-            int regAddress, int length, double timestamp, byte[] data, boolean timedout)
+            int regAddress, int length, double timestamp, ByteBuffer data, boolean timedout)
     {
         final String funcName = "readCompletion";
         boolean repeat = false;
@@ -354,39 +416,29 @@ public class FtcMRI2cGyro extends FtcMRI2cDevice implements TrcI2cDevice.Complet
                 //
                 // Read these repeatedly.
                 //
-                int value = TrcUtil.bytesToInt(data[REG_HEADING_LSB - READ_START]);
-                heading.timestamp = timestamp;
-                heading.value = (360 - value)%360;
-
-                integratedZ.timestamp = timestamp;
-                integratedZ.value =
-                        -TrcUtil.bytesToInt(data[REG_INTEGRATED_Z_LSB - READ_START],
-                                            data[REG_INTEGRATED_Z_MSB - READ_START]);
-
-                rawX.timestamp = timestamp;
-                rawX.value =
-                        -TrcUtil.bytesToInt(data[REG_RAW_X_LSB - READ_START],
-                                            data[REG_RAW_X_MSB - READ_START]);
-
-                rawY.timestamp = timestamp;
-                rawY.value =
-                        -TrcUtil.bytesToInt(data[REG_RAW_Y_LSB - READ_START],
-                                            data[REG_RAW_Y_MSB - READ_START]);
-
-                rawZ.timestamp = timestamp;
-                rawZ.value =
-                        -TrcUtil.bytesToInt(data[REG_RAW_Z_LSB - READ_START],
-                                            data[REG_RAW_Z_MSB - READ_START]);
-
-                zOffset.timestamp = timestamp;
-                zOffset.value =
-                        TrcUtil.bytesToInt(data[REG_Z_OFFSET_LSB - READ_START],
-                                           data[REG_Z_OFFSET_MSB - READ_START]);
-
-                zScaling.timestamp = timestamp;
-                zScaling.value =
-                        TrcUtil.bytesToInt(data[REG_Z_SCALING_LSB - READ_START],
-                                           data[REG_Z_SCALING_MSB - READ_START]);
+                int value = TrcUtil.bytesToInt(data.get(REG_HEADING_LSB - READ_START));
+                dataTimestamp = timestamp;
+                heading = (360 - value)%360;
+                headingUnwrapper.unwrap(0, timestamp, (360 - value)%360);
+
+                integratedZ = -TrcUtil.bytesToInt(data.get(REG_INTEGRATED_Z_LSB - READ_START),
+                                                  data.get(REG_INTEGRATED_Z_MSB - READ_START));
+
+                rawX = -TrcUtil.bytesToInt(data.get(REG_RAW_X_LSB - READ_START),
+                                           data.get(REG_RAW_X_MSB - READ_START));
+
+                rawY = -TrcUtil.bytesToInt(data.get(REG_RAW_Y_LSB - READ_START),
+                                           data.get(REG_RAW_Y_MSB - READ_START));
+
+                rawZ = -TrcUtil.bytesToInt(data.get(REG_RAW_Z_LSB - READ_START),
+                                           data.get(REG_RAW_Z_MSB - READ_START));
+
+                zOffset = TrcUtil.bytesToInt(data.get(REG_Z_OFFSET_LSB - READ_START),
+                                             data.get(REG_Z_OFFSET_MSB - READ_START));
+
+                zScaling = TrcUtil.bytesToInt(data.get(REG_Z_SCALING_LSB - READ_START),
+                                              data.get(REG_Z_SCALING_MSB - READ_START));
+                dataValid = true;
             }
             repeat = true;
         }
@@ -403,7 +455,8 @@ public class FtcMRI2cGyro extends FtcMRI2cDevice implements TrcI2cDevice.Complet
             dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.CALLBK,
                                "=%s", Boolean.toString(repeat));
             dbgTrace.traceInfo(funcName, "%s(addr=%x,len=%d,time=%.3f,size=%d,timedout=%s)=%s",
-                               funcName, regAddress, length, timestamp, data.length,
+                               funcName, regAddress, length, timestamp,
+                               data == null? 0: data.limit(),
                                Boolean.toString(timedout), Boolean.toString(repeat));
         }
 
@@ -489,6 +542,14 @@ public class FtcMRI2cGyro extends FtcMRI2cDevice implements TrcI2cDevice.Complet
             case 6:
                 data = getZScaling();
                 break;
+
+            case 7:
+                data = getUnwrappedHeading();
+                break;
+
+            case 8:
+                data = getHeadingRate();
+                break;
         }
 
         if (debugEnabled)
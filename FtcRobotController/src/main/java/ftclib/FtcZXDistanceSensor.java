@@ -25,8 +25,11 @@ package ftclib;
 
 import com.qualcomm.robotcore.hardware.HardwareMap;
 
+import java.nio.ByteBuffer;
+
 import trclib.TrcDbgTrace;
 import trclib.TrcI2cDevice;
+import trclib.TrcI2cFuture;
 import trclib.TrcSensor;
 import trclib.TrcSensorDataSource;
 import trclib.TrcUtil;
@@ -262,6 +265,12 @@ public class FtcZXDistanceSensor extends FtcI2cDevice implements TrcI2cDevice.Co
     //
     public static final int MODEL_VERSION           = 0x01;
 
+    //
+    // Timeouts in seconds of the identification reads at initialization.
+    //
+    private static final double INIT_READ_TIMEOUT   = 0.5;
+    private static final double INIT_WAIT_TIMEOUT   = 1.0;
+
     private int deviceStatus = 0;
     private TrcSensor.SensorData gesture = new TrcSensor.SensorData(0.0, null);
     private TrcSensor.SensorData gestureSpeed = new TrcSensor.SensorData(0.0, null);
@@ -271,6 +280,8 @@ public class FtcZXDistanceSensor extends FtcI2cDevice implements TrcI2cDevice.Co
     private TrcSensor.SensorData rightRangingData = new TrcSensor.SensorData(0.0, null);
     private int regMapVersion = 0;
     private int modelVersion = 0;
+    private TrcI2cFuture regMapVersionRead = null;
+    private TrcI2cFuture modelVersionRead = null;
 
     /**
      * Constructor: Creates an instance of the object.
@@ -292,8 +303,22 @@ public class FtcZXDistanceSensor extends FtcI2cDevice implements TrcI2cDevice.Co
                     TrcDbgTrace.MsgLevel.INFO);
         }
 
-        read(REG_REGVER, 1, this);
-        read(REG_MODEL, 1, this);
+        //
+        // The data registers from REG_GESTURE to REG_RRNG are separated by unused registers
+        // with no read side effect, so allow them to be read in a single transaction.
+        //
+        setMaxCoalescingGap(REG_XPOS - REG_GSPEED - 1);
+        //
+        // Read the identification registers in one go and wait for them for a while. If the
+        // reads are still pending after that (e.g. they are being retried), they are not issued
+        // again, their results are picked up later by checkIdReads.
+        //
+        TrcI2cFuture[] idReads = readAll(
+                new int[]{REG_REGVER, REG_MODEL}, new int[]{1, 1}, INIT_READ_TIMEOUT);
+        regMapVersionRead = idReads[0];
+        modelVersionRead = idReads[1];
+        waitForAll(idReads, INIT_WAIT_TIMEOUT);
+        checkIdReads();
         read(REG_STATUS, 1, this);
     }   //FtcZXDistanceSensor
 
@@ -318,6 +343,40 @@ public class FtcZXDistanceSensor extends FtcI2cDevice implements TrcI2cDevice.Co
         this(instanceName, DEF_I2CADDRESS);
     }   //FtcZXDistanceSensor
 
+    /**
+     * This method picks up the results of the identification register reads issued by the
+     * constructor once they are done. A read that failed even after its retries is issued again
+     * in the background and retried until it succeeds.
+     */
+    private void checkIdReads()
+    {
+        if (regMapVersionRead != null && regMapVersionRead.isDone())
+        {
+            if (regMapVersionRead.isSuccessful())
+            {
+                regMapVersion = regMapVersionRead.getByte(0);
+            }
+            else
+            {
+                read(REG_REGVER, 1, this);
+            }
+            regMapVersionRead = null;
+        }
+
+        if (modelVersionRead != null && modelVersionRead.isDone())
+        {
+            if (modelVersionRead.isSuccessful())
+            {
+                modelVersion = modelVersionRead.getByte(0);
+            }
+            else
+            {
+                read(REG_MODEL, 1, this);
+            }
+            modelVersionRead = null;
+        }
+    }   //checkIdReads
+
     /**
      * This method returns the data from the Status register.
      *
@@ -471,6 +530,8 @@ public class FtcZXDistanceSensor extends FtcI2cDevice implements TrcI2cDevice.Co
     {
         final String funcName = "getRegMapVersion";
 
+        checkIdReads();
+
         if (debugEnabled)
         {
             dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API);
@@ -489,6 +550,8 @@ public class FtcZXDistanceSensor extends FtcI2cDevice implements TrcI2cDevice.Co
     {
         final String funcName = "getModelVersion";
 
+        checkIdReads();
+
         if (debugEnabled)
         {
             dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API);
@@ -508,13 +571,13 @@ public class FtcZXDistanceSensor extends FtcI2cDevice implements TrcI2cDevice.Co
      * @param regAddress specifies the starting register address.
      * @param length specifies the number of bytes read.
      * @param timestamp specified the timestamp of the data retrieved.
-     * @param data specifies the data byte array.
+     * @param data specifies the read-only data buffer.
      * @param timedout specifies true if the operation was timed out, false otherwise.
      * @return true to repeat the operation, false otherwise.
      */
     @Override
     public boolean readCompletion(
-            int regAddress, int length, double timestamp, byte[] data, boolean timedout)
+            int regAddress, int length, double timestamp, ByteBuffer data, boolean timedout)
     {
         final String funcName = "readCompletion";
         boolean repeat = false;
@@ -528,7 +591,7 @@ public class FtcZXDistanceSensor extends FtcI2cDevice implements TrcI2cDevice.Co
                 }
                 else
                 {
-                    regMapVersion = TrcUtil.bytesToInt(data[0]);
+                    regMapVersion = TrcUtil.bytesToInt(data.get(0));
                 }
                 break;
 
@@ -539,14 +602,15 @@ public class FtcZXDistanceSensor extends FtcI2cDevice implements TrcI2cDevice.Co
                 }
                 else
                 {
-                    modelVersion = TrcUtil.bytesToInt(data[0]);
+                    modelVersion = TrcUtil.bytesToInt(data.get(0));
                 }
                 break;
 
             case REG_STATUS:
+                checkIdReads();
                 if (!timedout)
                 {
-                    deviceStatus = TrcUtil.bytesToInt(data[0]);
+                    deviceStatus = TrcUtil.bytesToInt(data.get(0));
 
                     if ((deviceStatus & STATUS_GESTURES) != 0)
                     {
@@ -569,7 +633,7 @@ public class FtcZXDistanceSensor extends FtcI2cDevice implements TrcI2cDevice.Co
                 if (!timedout)
                 {
                     gesture.timestamp = timestamp;
-                    gesture.value = Gesture.getGesture(TrcUtil.bytesToInt(data[0]));
+                    gesture.value = Gesture.getGesture(TrcUtil.bytesToInt(data.get(0)));
                 }
                 break;
 
@@ -577,7 +641,7 @@ public class FtcZXDistanceSensor extends FtcI2cDevice implements TrcI2cDevice.Co
                 if (!timedout)
                 {
                     gestureSpeed.timestamp = timestamp;
-                    gestureSpeed.value = TrcUtil.bytesToInt(data[0]);
+                    gestureSpeed.value = TrcUtil.bytesToInt(data.get(0));
                 }
                 break;
 
@@ -585,7 +649,7 @@ public class FtcZXDistanceSensor extends FtcI2cDevice implements TrcI2cDevice.Co
                 if (!timedout)
                 {
                     xPos.timestamp = timestamp;
-                    xPos.value = TrcUtil.bytesToInt(data[0]);
+                    xPos.value = TrcUtil.bytesToInt(data.get(0));
                 }
                 break;
 
@@ -593,7 +657,7 @@ public class FtcZXDistanceSensor extends FtcI2cDevice implements TrcI2cDevice.Co
                 if (!timedout)
                 {
                     zPos.timestamp = timestamp;
-                    zPos.value = TrcUtil.bytesToInt(data[0]);
+                    zPos.value = TrcUtil.bytesToInt(data.get(0));
                 }
                 break;
 
@@ -601,7 +665,7 @@ public class FtcZXDistanceSensor extends FtcI2cDevice implements TrcI2cDevice.Co
                 if (!timedout)
                 {
                     leftRangingData.timestamp = timestamp;
-                    leftRangingData.value = TrcUtil.bytesToInt(data[0]);
+                    leftRangingData.value = TrcUtil.bytesToInt(data.get(0));
                 }
                 break;
 
@@ -609,7 +673,7 @@ public class FtcZXDistanceSensor extends FtcI2cDevice implements TrcI2cDevice.Co
                 if (!timedout)
                 {
                     rightRangingData.timestamp = timestamp;
-                    rightRangingData.value = TrcUtil.bytesToInt(data[0]);
+                    rightRangingData.value = TrcUtil.bytesToInt(data.get(0));
                 }
                 break;
 
@@ -28,14 +28,21 @@ package hallib;
  */
 public class HalUtil
 {
+    //
+    // The wall clock only has msec resolution. To get finer time deltas, we take a wall
+    // clock reading once and advance it with the high resolution nano timer.
+    //
+    private static final long baseTimeMillis = System.currentTimeMillis();
+    private static final long baseNanoTime = System.nanoTime();
+
     /**
-     * This method returns the current time in seconds.
+     * This method returns the current time in seconds with sub-msec resolution.
      *
      * @return current time in seconds.
      */
     public static double getCurrentTime()
     {
-        return System.currentTimeMillis()/1000.0;
+        return baseTimeMillis/1000.0 + (System.nanoTime() - baseNanoTime)/1000000000.0;
     }   //getCurrentTime
 
     /**
@@ -157,6 +157,10 @@ public abstract class TrcAccelerometer extends TrcSensor implements TrcSensorDat
             dataIntegrator = new TrcDataIntegrator(
                     instanceName, this, DataType.ACCELERATION,
                     (options & ACCEL_DOUBLE_INTEGRATE) != 0);
+            //
+            // Rectangular integration drifts badly when integrated twice.
+            //
+            dataIntegrator.setIntegrationMethod(TrcDataIntegrator.IntegrationMethod.TRAPEZOIDAL);
             if ((options & ACCEL_DOUBLE_INTEGRATE) != 0)
             {
                 dataIntegrator.setUnwindIntegratedData(true);
@@ -224,6 +228,29 @@ public abstract class TrcAccelerometer extends TrcSensor implements TrcSensorDat
         }
     }   //setEnabled
 
+    /**
+     * This method sets the integration method used by the built-in integrator.
+     * It has no effect if the accelerometer doesn't use the built-in integrator.
+     *
+     * @param method specifies the integration method.
+     */
+    public void setIntegrationMethod(TrcDataIntegrator.IntegrationMethod method)
+    {
+        final String funcName = "setIntegrationMethod";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API,
+                                "method=%s", method.toString());
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        if (dataIntegrator != null)
+        {
+            dataIntegrator.setIntegrationMethod(method);
+        }
+    }   //setIntegrationMethod
+
     /**
      * This method inverts the x-axis. This is useful if the orientation of
      * the accelerometer x-axis is such that the data goes the wrong direction.
@@ -0,0 +1,148 @@
+/*
+ * Titan Robotics Framework Library
+ * Copyright (c) 2016 Titan Robotics Club (http://www.titanrobotics.net)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package trclib;
+
+/**
+ * This class implements a second order (biquad) low pass filter. The coefficients are computed
+ * from the cutoff frequency, the sample rate and the quality factor (Q) using the well known
+ * Audio EQ Cookbook formulas, and the filter is evaluated in the transposed direct form II
+ * which needs only two state variables. A Q of 1/sqrt(2) gives a Butterworth response with no
+ * overshoot in the pass band. Note that the filter assumes data samples arrive at the given
+ * sample rate, so it should be fed from a task running at a steady rate. The filter state is
+ * primed with the first sample so there is no startup transient from zero.
+ */
+public class TrcBiquadFilter extends TrcFilter
+{
+    private static final String moduleName = "TrcBiquadFilter";
+    private static final boolean debugEnabled = false;
+    private TrcDbgTrace dbgTrace = null;
+
+    public static final double BUTTERWORTH_Q = 1.0/Math.sqrt(2.0);
+
+    private final double b0, b1, b2, a1, a2;
+    private double z1, z2;
+    private boolean initialized;
+
+    /**
+     * Constructor: Creates an instance of the object.
+     *
+     * @param instanceName specifies the instance name.
+     * @param cutoffFreq specifies the cutoff frequency in Hz.
+     * @param sampleRate specifies the sample rate in Hz.
+     * @param q specifies the quality factor.
+     */
+    public TrcBiquadFilter(String instanceName, double cutoffFreq, double sampleRate, double q)
+    {
+        super(instanceName);
+
+        if (debugEnabled)
+        {
+            dbgTrace = new TrcDbgTrace(
+                    moduleName + "." + instanceName,
+                    false,
+                    TrcDbgTrace.TraceLevel.API,
+                    TrcDbgTrace.MsgLevel.INFO);
+        }
+
+        if (cutoffFreq <= 0.0 || cutoffFreq >= sampleRate/2.0)
+        {
+            throw new IllegalArgumentException(
+                    "Cutoff frequency must be between zero and half the sample rate.");
+        }
+
+        if (q <= 0.0)
+        {
+            throw new IllegalArgumentException("Q must be greater than zero.");
+        }
+
+        double w0 = 2.0*Math.PI*cutoffFreq/sampleRate;
+        double cosW0 = Math.cos(w0);
+        double alpha = Math.sin(w0)/(2.0*q);
+        double a0 = 1.0 + alpha;
+
+        b0 = (1.0 - cosW0)/2.0/a0;
+        b1 = (1.0 - cosW0)/a0;
+        b2 = b0;
+        a1 = -2.0*cosW0/a0;
+        a2 = (1.0 - alpha)/a0;
+        reset();
+    }   //TrcBiquadFilter
+
+    /**
+     * Constructor: Creates an instance of the object with a Butterworth response.
+     *
+     * @param instanceName specifies the instance name.
+     * @param cutoffFreq specifies the cutoff frequency in Hz.
+     * @param sampleRate specifies the sample rate in Hz.
+     */
+    public TrcBiquadFilter(String instanceName, double cutoffFreq, double sampleRate)
+    {
+        this(instanceName, cutoffFreq, sampleRate, BUTTERWORTH_Q);
+    }   //TrcBiquadFilter
+
+    //
+    // Overrides TrcFilter methods.
+    //
+
+    @Override
+    public void reset()
+    {
+        z1 = 0.0;
+        z2 = 0.0;
+        initialized = false;
+    }   //reset
+
+    //
+    // Implements TrcFilter abstract methods.
+    //
+
+    @Override
+    public double filterData(double data)
+    {
+        final String funcName = "filterData";
+
+        if (!initialized)
+        {
+            //
+            // Prime the state as if the input has been at this value forever.
+            //
+            z2 = (b2 - a2)*data;
+            z1 = (b1 - a1)*data + z2;
+            initialized = true;
+        }
+
+        double output = b0*data + z1;
+        z1 = b1*data - a1*output + z2;
+        z2 = b2*data - a2*output;
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API, "data=%f", data);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API, "=%f", output);
+        }
+
+        return output;
+    }   //filterData
+
+}   //class TrcBiquadFilter
@@ -0,0 +1,248 @@
+/*
+ * Titan Robotics Framework Library
+ * Copyright (c) 2016 Titan Robotics Club (http://www.titanrobotics.net)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package trclib;
+
+/**
+ * This class classifies RGB color samples into a hue and a color ID with a lookup table.
+ * The channels are first scaled so the strongest one is at full scale. That removes the
+ * brightness and leaves only the chromaticity. Since the strongest channel is then always at
+ * full scale, the table is indexed by which channel is the strongest and the quantized values
+ * of the other two. The hue and the chromatic color of every table entry are computed once
+ * and shared by all classifiers, so classifying a sample is a constant-time table lookup with
+ * no floating point math. Samples whose strongest channel is below the black level are
+ * classified as black, and samples with a saturation below the minimum are classified as
+ * white. The saturation of a normalized sample only depends on its weakest channel, so the
+ * white test is an integer compare.
+ */
+public class TrcColorClassifier
+{
+    public static final int COLOR_UNKNOWN       = 0;
+    public static final int COLOR_BLACK         = 1;
+    public static final int COLOR_WHITE         = 2;
+    public static final int COLOR_RED           = 3;
+    public static final int COLOR_YELLOW        = 4;
+    public static final int COLOR_GREEN         = 5;
+    public static final int COLOR_CYAN          = 6;
+    public static final int COLOR_BLUE          = 7;
+    public static final int COLOR_MAGENTA       = 8;
+
+    private static final String[] colorNames =
+            {"Unknown", "Black", "White", "Red", "Yellow", "Green", "Cyan", "Blue", "Magenta"};
+    //
+    // Each of the two weaker normalized channels is quantized into this many bits of the table
+    // index. The index also holds which channel is the strongest (red, green or blue).
+    //
+    private static final int CHANNEL_BITS = 5;
+    private static final int CHANNEL_MAX = (1 << CHANNEL_BITS) - 1;
+    private static final int PLANE_SIZE = 1 << (2*CHANNEL_BITS);
+    private static final int TABLE_SIZE = 3*PLANE_SIZE;
+    //
+    // Each chromatic color covers 60 degrees of hue centered on its primary or secondary hue,
+    // starting with red centered on 0 degree.
+    //
+    private static final int[] hueColors =
+            {COLOR_RED, COLOR_YELLOW, COLOR_GREEN, COLOR_CYAN, COLOR_BLUE, COLOR_MAGENTA};
+
+    private static final short[] hueTable = new short[TABLE_SIZE];
+    private static final byte[] colorTable = new byte[TABLE_SIZE];
+
+    static
+    {
+        for (int index = 0; index < TABLE_SIZE; index++)
+        {
+            int maxChannel = index/PLANE_SIZE;
+            int c1 = (index >> CHANNEL_BITS) & CHANNEL_MAX;
+            int c2 = index & CHANNEL_MAX;
+            int r = maxChannel == 0? CHANNEL_MAX: c1;
+            int g = maxChannel == 0? c1: maxChannel == 1? CHANNEL_MAX: c2;
+            int b = maxChannel == 2? CHANNEL_MAX: c2;
+            double delta = CHANNEL_MAX - Math.min(r, Math.min(g, b));
+            double hue = 0.0;
+
+            if (delta > 0.0)
+            {
+                if (maxChannel == 0)
+                {
+                    hue = 60.0*((g - b)/delta);
+                }
+                else if (maxChannel == 1)
+                {
+                    hue = 60.0*((b - r)/delta + 2.0);
+                }
+                else
+                {
+                    hue = 60.0*((r - g)/delta + 4.0);
+                }
+
+                if (hue < 0.0)
+                {
+                    hue += 360.0;
+                }
+            }
+
+            hueTable[index] = (short)Math.round(hue);
+            colorTable[index] = (byte)hueColors[(int)((hue + 30.0)/60.0) % hueColors.length];
+        }
+    }
+
+    private final int blackLevel;
+    //
+    // A normalized sample is white if its weakest channel is at least this level.
+    //
+    private final int whiteLevel;
+
+    /**
+     * Constructor: Creates an instance of the object.
+     *
+     * @param blackLevel specifies the raw channel value below which the sample is black.
+     * @param minSaturation specifies the saturation (0.0 to 1.0) below which the sample is
+     *                      white.
+     */
+    public TrcColorClassifier(int blackLevel, double minSaturation)
+    {
+        if (minSaturation < 0.0 || minSaturation > 1.0)
+        {
+            throw new IllegalArgumentException("Saturation must be between 0.0 and 1.0.");
+        }
+
+        this.blackLevel = blackLevel;
+        this.whiteLevel = (int)Math.floor(CHANNEL_MAX - minSaturation*CHANNEL_MAX) + 1;
+    }   //TrcColorClassifier
+
+    /**
+     * This method returns the name of a color ID for tracing and display.
+     *
+     * @param colorId specifies the color ID.
+     * @return name of the color.
+     */
+    public static String getColorName(int colorId)
+    {
+        return colorId >= 0 && colorId < colorNames.length? colorNames[colorId]: colorNames[0];
+    }   //getColorName
+
+    /**
+     * This method classifies the red, green and blue channels of a sample and stores the hue
+     * and the color ID in the sample.
+     *
+     * @param sample specifies the sample to classify.
+     */
+    public void classify(TrcColorSample sample)
+    {
+        int index = getTableIndex(sample.red, sample.green, sample.blue);
+
+        if (index < 0)
+        {
+            sample.hue = 0;
+            sample.colorId = COLOR_BLACK;
+        }
+        else
+        {
+            sample.hue = hueTable[index];
+            sample.colorId = getTableColor(index);
+        }
+    }   //classify
+
+    /**
+     * This method returns the color ID of the given color.
+     *
+     * @param red specifies the red channel value.
+     * @param green specifies the green channel value.
+     * @param blue specifies the blue channel value.
+     * @return color ID.
+     */
+    public int getColorId(int red, int green, int blue)
+    {
+        int index = getTableIndex(red, green, blue);
+
+        return index < 0? COLOR_BLACK: getTableColor(index);
+    }   //getColorId
+
+    /**
+     * This method returns the hue of the given color.
+     *
+     * @param red specifies the red channel value.
+     * @param green specifies the green channel value.
+     * @param blue specifies the blue channel value.
+     * @return hue in degrees (0 to 359), 0 if the color is black.
+     */
+    public int getHue(int red, int green, int blue)
+    {
+        int index = getTableIndex(red, green, blue);
+
+        return index < 0? 0: hueTable[index];
+    }   //getHue
+
+    /**
+     * This method returns the color ID of a table entry, taking the minimum saturation into
+     * account.
+     *
+     * @param index specifies the table index.
+     * @return color ID.
+     */
+    private int getTableColor(int index)
+    {
+        int minChannel = Math.min((index >> CHANNEL_BITS) & CHANNEL_MAX, index & CHANNEL_MAX);
+
+        return minChannel >= whiteLevel? COLOR_WHITE: colorTable[index];
+    }   //getTableColor
+
+    /**
+     * This method scales the channels so the strongest one is at full scale and combines which
+     * channel is the strongest and the quantized other two channels into the table index.
+     *
+     * @param red specifies the red channel value.
+     * @param green specifies the green channel value.
+     * @param blue specifies the blue channel value.
+     * @return table index, -1 if the color is below the black level.
+     */
+    private int getTableIndex(int red, int green, int blue)
+    {
+        int max = Math.max(red, Math.max(green, blue));
+        int index = -1;
+
+        if (max > 0 && max >= blackLevel)
+        {
+            int half = max/2;
+            int r = (Math.max(red, 0)*CHANNEL_MAX + half)/max;
+            int g = (Math.max(green, 0)*CHANNEL_MAX + half)/max;
+            int b = (Math.max(blue, 0)*CHANNEL_MAX + half)/max;
+
+            if (red == max)
+            {
+                index = (g << CHANNEL_BITS) | b;
+            }
+            else if (green == max)
+            {
+                index = PLANE_SIZE | (r << CHANNEL_BITS) | b;
+            }
+            else
+            {
+                index = 2*PLANE_SIZE | (r << CHANNEL_BITS) | g;
+            }
+        }
+
+        return index;
+    }   //getTableIndex
+
+}   //class TrcColorClassifier
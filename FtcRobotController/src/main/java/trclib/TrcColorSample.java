@@ -0,0 +1,71 @@
+/*
+ * Titan Robotics Framework Library
+ * Copyright (c) 2016 Titan Robotics Club (http://www.titanrobotics.net)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package trclib;
+
+/**
+ * This class holds one coherent sample of a color sensor. All channels come from the same
+ * burst read and share one timestamp. The sensor updates the sample in place every time new
+ * data arrives, so reading it does not allocate memory. The hue and color ID are filled in by
+ * a TrcColorClassifier when the sample is taken.
+ */
+public class TrcColorSample
+{
+    public double timestamp = 0.0;
+    public int red = 0;
+    public int green = 0;
+    public int blue = 0;
+    public int clear = 0;
+    public int hue = 0;
+    public int colorId = TrcColorClassifier.COLOR_UNKNOWN;
+
+    /**
+     * This method copies the content of another sample into this sample.
+     *
+     * @param sample specifies the sample to copy from.
+     */
+    public void set(TrcColorSample sample)
+    {
+        this.timestamp = sample.timestamp;
+        this.red = sample.red;
+        this.green = sample.green;
+        this.blue = sample.blue;
+        this.clear = sample.clear;
+        this.hue = sample.hue;
+        this.colorId = sample.colorId;
+    }   //set
+
+    /**
+     * This method returns the sample in string form for tracing.
+     *
+     * @return string form of the sample.
+     */
+    @Override
+    public String toString()
+    {
+        return String.format("[%.3f] R/G/B/C=%d/%d/%d/%d,hue=%d,color=%s",
+                             timestamp, red, green, blue, clear, hue,
+                             TrcColorClassifier.getColorName(colorId));
+    }   //toString
+
+}   //class TrcColorSample
@@ -30,7 +30,14 @@ import hallib.HalUtil;
  * Some value sensors such as gyros and accelerometers may need to integrate
  * their data to provide heading from gyro rotation rate, and velocity or
  * distance from accelerometer acceleration data. This class uses a periodic
- * task to do integration and optionally double integration.
+ * task to do integration and optionally double integration. The integration
+ * method is selectable. Rectangular integration multiplies the latest sample by
+ * the elapsed time. Trapezoidal integration averages the latest and the previous
+ * samples. Simpson integration fits a quadratic through the last three samples,
+ * which may be unevenly spaced in time. The integrator state is kept in primitive
+ * arrays and the primitive getters don't allocate any memory. If the sensor buffers
+ * its samples in a sample queue, the integrator drains and integrates every sample
+ * queued since the last loop instead of polling the latest one.
  */
 public class TrcDataIntegrator implements TrcTaskMgr.Task
 {
@@ -38,14 +45,51 @@ public class TrcDataIntegrator implements TrcTaskMgr.Task
     private static final boolean debugEnabled = false;
     private TrcDbgTrace dbgTrace = null;
 
+    /**
+     * Specifies the integration method.
+     */
+    public enum IntegrationMethod
+    {
+        /**
+         * Integrates the latest sample over the elapsed time.
+         */
+        RECTANGULAR,
+
+        /**
+         * Integrates the average of the latest and the previous samples over the elapsed time.
+         */
+        TRAPEZOIDAL,
+
+        /**
+         * Integrates a quadratic fitted through the last three samples over the elapsed time.
+         */
+        SIMPSON
+    }   //enum IntegrationMethod
+
     private final String instanceName;
     private TrcSensor sensor;
     private Object dataType;
     private int numAxes;
-    private TrcSensor.SensorData[] inputData;
-    private TrcSensor.SensorData[] integratedData;
-    private TrcSensor.SensorData[] doubleIntegratedData;
-    private double[] prevTimes;
+    private boolean doubleIntegration;
+    private IntegrationMethod method = IntegrationMethod.RECTANGULAR;
+    //
+    // Per axis integrator state.
+    //
+    private double[] inputTimes;
+    private double[] inputValues;
+    private double[] prevInputValues;
+    private double[] prevPrevInputValues;
+    private double[] prevDeltaTimes;
+    private double[] integratedValues;
+    private double[] prevIntegratedValues;
+    private double[] prevPrevIntegratedValues;
+    private double[] doubleIntegratedValues;
+    private int[] sampleCounts;
+    //
+    // Current sample of each axis.
+    //
+    private double[] sampleTimes;
+    private double[] sampleValues;
     private boolean unwindIntegratedData = false;
 
     /**
@@ -79,22 +123,21 @@ public class TrcDataIntegrator implements TrcTaskMgr.Task
         this.instanceName = instanceName;
         this.sensor = sensor;
         this.dataType = dataType;
+        this.doubleIntegration = doubleIntegration;
         numAxes = sensor.getNumAxes();
 
-        inputData = new TrcSensor.SensorData[numAxes];
-        integratedData = new TrcSensor.SensorData[numAxes];
-        doubleIntegratedData = doubleIntegration? new TrcSensor.SensorData[numAxes]: null;
-        prevTimes = new double[numAxes];
-
-        for (int i = 0; i < numAxes; i++)
-        {
-            integratedData[i] = new TrcSensor.SensorData(0.0, 0.0);
-            if (doubleIntegratedData != null)
-            {
-                doubleIntegratedData[i] = new TrcSensor.SensorData(0.0, 0.0);
-            }
-            prevTimes[i] = 0.0;
-        }
+        inputTimes = new double[numAxes];
+        inputValues = new double[numAxes];
+        prevInputValues = new double[numAxes];
+        prevPrevInputValues = new double[numAxes];
+        prevDeltaTimes = new double[numAxes];
+        integratedValues = new double[numAxes];
+        prevIntegratedValues = new double[numAxes];
+        prevPrevIntegratedValues = new double[numAxes];
+        doubleIntegratedValues = new double[numAxes];
+        sampleCounts = new int[numAxes];
+        sampleTimes = new double[numAxes];
+        sampleValues = new double[numAxes];
     }   //TrcDataIntegrator
 
     /**
@@ -131,6 +174,40 @@ public class TrcDataIntegrator implements TrcTaskMgr.Task
         unwindIntegratedData = unwindData;
     }   //setUnwindIntegratedData
 
+    /**
+     * This method sets the integration method. The default is RECTANGULAR.
+     *
+     * @param method specifies the integration method.
+     */
+    public void setIntegrationMethod(IntegrationMethod method)
+    {
+        final String funcName = "setIntegrationMethod";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API,
+                                "method=%s", method.toString());
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        if (method == null)
+        {
+            throw new NullPointerException("method cannot be null.");
+        }
+
+        this.method = method;
+    }   //setIntegrationMethod
+
+    /**
+     * This method returns the integration method.
+     *
+     * @return integration method.
+     */
+    public IntegrationMethod getIntegrationMethod()
+    {
+        return method;
+    }   //getIntegrationMethod
+
     /**
      * This method enables the data integrator. The data integrator is not
      * automatically enabled when created. You must explicitly call this
@@ -151,6 +228,7 @@ public class TrcDataIntegrator implements TrcTaskMgr.Task
 
         if (enabled)
         {
+            sensor.setSampleQueueEnabled(dataType, true);
             reset();
             TrcTaskMgr.getInstance().registerTask(
                     instanceName, this, TrcTaskMgr.TaskType.PRECONTINUOUS_TASK);
@@ -158,6 +236,7 @@ public class TrcDataIntegrator implements TrcTaskMgr.Task
         else
         {
             TrcTaskMgr.getInstance().unregisterTask(this, TrcTaskMgr.TaskType.PRECONTINUOUS_TASK);
+            sensor.setSampleQueueEnabled(dataType, false);
         }
     }   //setEnabled
 
@@ -176,12 +255,17 @@ public class TrcDataIntegrator implements TrcTaskMgr.Task
             dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
         }
 
-        prevTimes[index] = HalUtil.getCurrentTime();
-        integratedData[index].value = 0.0;
-        if (doubleIntegratedData != null)
-        {
-            doubleIntegratedData[index].value = 0.0;
-        }
+        inputTimes[index] = HalUtil.getCurrentTime();
+        inputValues[index] = 0.0;
+        prevInputValues[index] = 0.0;
+        prevPrevInputValues[index] = 0.0;
+        prevDeltaTimes[index] = 0.0;
+        integratedValues[index] = 0.0;
+        prevIntegratedValues[index] = 0.0;
+        prevPrevIntegratedValues[index] = 0.0;
+        doubleIntegratedValues[index] = 0.0;
+        sampleCounts[index] = 0;
+        sensor.clearQueuedSample(index);
     }   //reset
 
     /**
@@ -197,7 +281,7 @@ public class TrcDataIntegrator implements TrcTaskMgr.Task
             dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
         }
 
-        for (int i = 0; i < integratedData.length; i++)
+        for (int i = 0; i < numAxes; i++)
         {
             reset(i);
         }
@@ -213,15 +297,13 @@ public class TrcDataIntegrator implements TrcTaskMgr.Task
     {
         final String funcName = "getInputData";
         TrcSensor.SensorData data =
-                new TrcSensor.SensorData(inputData[index].timestamp, inputData[index].value);
+                new TrcSensor.SensorData(inputTimes[index], inputValues[index]);
 
         if (debugEnabled)
         {
             dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API);
             dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API,
-                               "=(timestamp=%.3f,value=%f",
-                               data != null? data.timestamp: 0.0,
-                               data != null? data.value: 0.0);
+                               "=(timestamp=%.3f,value=%f", data.timestamp, data.value);
         }
 
         return data;
@@ -236,16 +318,14 @@ public class TrcDataIntegrator implements TrcTaskMgr.Task
     public TrcSensor.SensorData getIntegratedData(int index)
     {
         final String funcName = "getIntegratedData";
-        TrcSensor.SensorData data = new TrcSensor.SensorData(
-                integratedData[index].timestamp, integratedData[index].value);
+        TrcSensor.SensorData data =
+                new TrcSensor.SensorData(inputTimes[index], integratedValues[index]);
 
         if (debugEnabled)
         {
             dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API);
             dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API,
-                               "=(timestamp=%.3f,value=%f",
-                               data != null? data.timestamp: 0.0,
-                               data != null? data.value: 0.0);
+                               "=(timestamp=%.3f,value=%f", data.timestamp, data.value);
         }
 
         return data;
@@ -260,21 +340,104 @@ public class TrcDataIntegrator implements TrcTaskMgr.Task
     public TrcSensor.SensorData getDoubleIntegratedData(int index)
     {
         final String funcName = "getDoubleIntegratedData";
-        TrcSensor.SensorData data = new TrcSensor.SensorData(
-                    doubleIntegratedData[index].timestamp, doubleIntegratedData[index].value);
+        TrcSensor.SensorData data =
+                new TrcSensor.SensorData(inputTimes[index], doubleIntegratedValues[index]);
 
         if (debugEnabled)
         {
             dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API);
             dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API,
-                               "=(timestamp=%.3f,value=%f",
-                               data != null? data.timestamp: 0.0,
-                               data != null? data.value: 0.0);
+                               "=(timestamp=%.3f,value=%f", data.timestamp, data.value);
         }
 
         return data;
     }   //getDoubleIntegratedData
 
+    /**
+     * This method returns the timestamp of the last indexed input sample. It does not
+     * allocate any memory.
+     *
+     * @param index specifies the index.
+     * @return timestamp of the last sample.
+     */
+    public double getTimestamp(int index)
+    {
+        return inputTimes[index];
+    }   //getTimestamp
+
+    /**
+     * This method returns the last indexed input value. It does not allocate any memory.
+     *
+     * @param index specifies the index.
+     * @return last input value.
+     */
+    public double getInputValue(int index)
+    {
+        return inputValues[index];
+    }   //getInputValue
+
+    /**
+     * This method returns the last indexed integrated value. It does not allocate any memory.
+     *
+     * @param index specifies the index.
+     * @return last integrated value.
+     */
+    public double getIntegratedValue(int index)
+    {
+        return integratedValues[index];
+    }   //getIntegratedValue
+
+    /**
+     * This method returns the last indexed double integrated value. It does not allocate
+     * any memory.
+     *
+     * @param index specifies the index.
+     * @return last double integrated value.
+     */
+    public double getDoubleIntegratedValue(int index)
+    {
+        return doubleIntegratedValues[index];
+    }   //getDoubleIntegratedValue
+
+    /**
+     * This method integrates one step using the selected integration method. It falls back
+     * to a lower order method if there are not enough samples in the history.
+     *
+     * @param numSamples specifies the number of samples in the history before this one.
+     * @param y0 specifies the sample before the previous one.
+     * @param y1 specifies the previous sample.
+     * @param y2 specifies the current sample.
+     * @param h1 specifies the time between y0 and y1.
+     * @param h2 specifies the time between y1 and y2.
+     * @return the area under the curve between y1 and y2.
+     */
+    private double integrateStep(
+            int numSamples, double y0, double y1, double y2, double h1, double h2)
+    {
+        double area;
+
+        if (method == IntegrationMethod.SIMPSON && numSamples >= 2 && h1 > 0.0)
+        {
+            //
+            // Integrate the quadratic through (t0, y0), (t1, y1) and (t2, y2) from t1 to t2.
+            // With even spacing this reduces to h*(5*y2 + 8*y1 - y0)/12.
+            //
+            area = h2*(y2*(2.0*h2 + 3.0*h1)/(6.0*(h1 + h2)) +
+                       y1*(h2 + 3.0*h1)/(6.0*h1) -
+                       y0*h2*h2/(6.0*h1*(h1 + h2)));
+        }
+        else if (method != IntegrationMethod.RECTANGULAR && numSamples >= 1)
+        {
+            area = (y1 + y2)*h2/2.0;
+        }
+        else
+        {
+            area = y2*h2;
+        }
+
+        return area;
+    }   //integrateStep
+
     //
     // Implements TrcTaskMgr.Task
     //
@@ -316,47 +479,57 @@ public class TrcDataIntegrator implements TrcTaskMgr.Task
                     "mode=%s", runMode.toString());
         }
 
-        boolean allZeroAxis = true;
-        double[] deltaTime = new double[inputData.length];
-        for (int i = 0; i < inputData.length; i++)
+        TrcSampleQueue sampleQueue = sensor.getSampleQueue(dataType);
+        if (sampleQueue != null)
         {
             //
-            // Get sensor data.
+            // The sensor buffers every sample, integrate the whole backlog since the last
+            // loop so we don't lose the samples in between.
             //
-            inputData[i] = sensor.getData(i, dataType);
-            deltaTime[i] = inputData[i].timestamp - prevTimes[i];
-            if ((Double)inputData[i].value != 0.0)
+            for (int n = sampleQueue.size(); n > 0; n--)
             {
-                allZeroAxis = false;
+                double timestamp = sampleQueue.peekTimestamp();
+                boolean allZeroAxis = true;
+
+                for (int i = 0; i < numAxes; i++)
+                {
+                    sampleTimes[i] = timestamp;
+                    sampleValues[i] = sensor.processQueuedSample(
+                            i, timestamp, sampleQueue.peekValue(i));
+                    if (sampleValues[i] != 0.0)
+                    {
+                        allZeroAxis = false;
+                    }
+                }
+                sampleQueue.remove();
+                //
+                // Samples taken before the integrator was reset are discarded.
+                //
+                integrateSamples(allZeroAxis, false);
             }
-            //
-            // Do integration.
-            //
-            integratedData[i].timestamp = inputData[i].timestamp;
-            integratedData[i].value = (Double)integratedData[i].value +
-                                      (Double)inputData[i].value*deltaTime[i];
-            prevTimes[i] = inputData[i].timestamp;
         }
-
-        //
-        // Do double integration if necessary.
-        //
-        if (doubleIntegratedData != null)
+        else
         {
-            for (int i = 0; i < inputData.length; i++)
+            boolean allZeroAxis = true;
+
+            for (int i = 0; i < numAxes; i++)
             {
-                doubleIntegratedData[i].timestamp = inputData[i].timestamp;
-                if (allZeroAxis)
-                {
-                    integratedData[i].value = 0.0;
-                }
-                else
+                //
+                // Get sensor data.
+                //
+                TrcSensor.SensorData data = sensor.getData(i, dataType);
+                sampleTimes[i] = data.timestamp;
+                sampleValues[i] = (Double)data.value;
+                if (sampleValues[i] != 0.0)
                 {
-                    doubleIntegratedData[i].value =
-                            (Double)doubleIntegratedData[i].value +
-                            (Double)integratedData[i].value*deltaTime[i];
+                    allZeroAxis = false;
                 }
             }
+            //
+            // Skip the sample if it's not newer than the last one (e.g. the sensor hasn't
+            // produced new data since the last loop).
+            //
+            integrateSamples(allZeroAxis, true);
         }
 
         if (debugEnabled)
@@ -370,4 +543,99 @@ public class TrcDataIntegrator implements TrcTaskMgr.Task
     {
     }   //postContinuousTask
 
+    /**
+     * This method integrates the current sample of all axes held in sampleTimes and
+     * sampleValues. The sample of an axis is skipped if it is not newer than the last one.
+     * If the input of all axes is zero and unwinding is enabled, the integrated data is
+     * reset instead of being integrated into the double integrated data.
+     *
+     * @param allZeroAxis specifies true if the input of all axes is zero.
+     * @param resyncTime specifies true to take a stale sample as the starting point if the
+     *                   axis has no sample yet (i.e. the sensor timestamp is not on the same
+     *                   time base as the reset time).
+     */
+    private void integrateSamples(boolean allZeroAxis, boolean resyncTime)
+    {
+        boolean unwinding = doubleIntegration && unwindIntegratedData && allZeroAxis;
+
+        for (int i = 0; i < numAxes; i++)
+        {
+            double deltaTime = sampleTimes[i] - inputTimes[i];
+
+            if (deltaTime > 0.0)
+            {
+                integrateSample(i, sampleTimes[i], sampleValues[i], deltaTime, unwinding);
+            }
+            else if (resyncTime && sampleCounts[i] == 0)
+            {
+                inputTimes[i] = sampleTimes[i];
+                inputValues[i] = sampleValues[i];
+            }
+        }
+        unwindData(allZeroAxis);
+    }   //integrateSamples
+
+    /**
+     * This method resets the integrated data of all axes if double integration is enabled,
+     * unwinding is enabled and the input of all axes is zero.
+     *
+     * @param allZeroAxis specifies true if the input of all axes is zero.
+     */
+    private void unwindData(boolean allZeroAxis)
+    {
+        if (doubleIntegration && unwindIntegratedData && allZeroAxis)
+        {
+            //
+            // There is no acceleration on any axis, assume we are not moving.
+            //
+            for (int i = 0; i < numAxes; i++)
+            {
+                integratedValues[i] = 0.0;
+                prevIntegratedValues[i] = 0.0;
+                prevPrevIntegratedValues[i] = 0.0;
+            }
+        }
+    }   //unwindData
+
+    /**
+     * This method integrates one new sample into the indexed integrator state and shifts
+     * the sample history.
+     *
+     * @param index specifies the axis index.
+     * @param timestamp specifies the timestamp of the sample.
+     * @param value specifies the sample value.
+     * @param deltaTime specifies the time since the previous sample.
+     * @param unwinding specifies true if the integrated data is about to be reset, in which
+     *                  case this sample is not integrated into the double integrated data.
+     */
+    private void integrateSample(
+            int index, double timestamp, double value, double deltaTime, boolean unwinding)
+    {
+        int numSamples = sampleCounts[index];
+        double h1 = prevDeltaTimes[index];
+
+        prevPrevIntegratedValues[index] = prevIntegratedValues[index];
+        prevIntegratedValues[index] = integratedValues[index];
+        integratedValues[index] += integrateStep(
+                numSamples, prevPrevInputValues[index], prevInputValues[index], value,
+                h1, deltaTime);
+
+        if (doubleIntegration && !unwinding)
+        {
+            doubleIntegratedValues[index] += integrateStep(
+                    numSamples, prevPrevIntegratedValues[index], prevIntegratedValues[index],
+                    integratedValues[index], h1, deltaTime);
+        }
+
+        prevPrevInputValues[index] = prevInputValues[index];
+        prevInputValues[index] = value;
+        prevDeltaTimes[index] = deltaTime;
+        inputValues[index] = value;
+        inputTimes[index] = timestamp;
+        if (numSamples < 2)
+        {
+            sampleCounts[index] = numSamples + 1;
+        }
+    }   //integrateSample
+
 }   //class TrcDataIntegrator
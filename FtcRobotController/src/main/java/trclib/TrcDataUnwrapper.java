@@ -38,7 +38,12 @@ package trclib;
  * robot will turn left all the way around to get back to zero.
  * This class implements a periodic task that monitor the sensor data. If it
  * crosses the value range boundary, it will keep track of the number of crossovers
- * and will adjust the value so it doesn't wrap.
+ * and will adjust the value so it doesn't wrap. It can also be used standalone
+ * without a task by calling unwrap with each new sample. The unwrapper state is
+ * kept in primitive arrays, so unwrapping doesn't allocate any memory. If a max
+ * rate is set for an axis, the unwrapper predicts the next value from the rate of
+ * change and can handle multiple crossovers between two samples, as long as the
+ * rate doesn't change by more than half of the value range between samples.
  */
 public class TrcDataUnwrapper implements TrcTaskMgr.Task
 {
@@ -52,7 +57,11 @@ public class TrcDataUnwrapper implements TrcTaskMgr.Task
     private int numAxes;
     private double[] valueRangeLows;
     private double[] valueRangeHighs;
-    private TrcSensor.SensorData[] prevData;
+    private double[] maxRates;
+    private boolean[] initialized;
+    private double[] prevTimestamps;
+    private double[] unwrappedValues;
+    private double[] rates;
     private int[] numCrossovers;
 
     /**
@@ -63,6 +72,32 @@ public class TrcDataUnwrapper implements TrcTaskMgr.Task
      * @param dataType specifies the data type to be unwrapped.
      */
     public TrcDataUnwrapper(final String instanceName, TrcSensor sensor, Object dataType)
+    {
+        this(instanceName, sensor, dataType, getNumAxes(sensor));
+    }   //TrcDataUnwrapper
+
+    /**
+     * Constructor: Creates an instance of the object to be used standalone. The caller
+     * must call unwrap with each new sample.
+     *
+     * @param instanceName specifies the instance name.
+     * @param numAxes specifies the number of axes.
+     */
+    public TrcDataUnwrapper(final String instanceName, int numAxes)
+    {
+        this(instanceName, null, null, numAxes);
+    }   //TrcDataUnwrapper
+
+    /**
+     * Constructor: Creates an instance of the object.
+     *
+     * @param instanceName specifies the instance name.
+     * @param sensor specifies the sensor object that needs data unwrapping, null if standalone.
+     * @param dataType specifies the data type to be unwrapped.
+     * @param numAxes specifies the number of axes.
+     */
+    private TrcDataUnwrapper(
+            final String instanceName, TrcSensor sensor, Object dataType, int numAxes)
     {
         if (debugEnabled)
         {
@@ -73,29 +108,42 @@ public class TrcDataUnwrapper implements TrcTaskMgr.Task
                     TrcDbgTrace.MsgLevel.INFO);
         }
 
-        if (sensor == null)
+        if (numAxes <= 0)
         {
-            throw new NullPointerException("sensor cannot be null.");
+            throw new IllegalArgumentException("Unwrapper must have at least one axis.");
         }
 
         this.instanceName = instanceName;
         this.sensor = sensor;
         this.dataType = dataType;
-        numAxes = sensor.getNumAxes();
+        this.numAxes = numAxes;
 
         valueRangeLows = new double[numAxes];
         valueRangeHighs = new double[numAxes];
-        prevData = new TrcSensor.SensorData[numAxes];
+        maxRates = new double[numAxes];
+        initialized = new boolean[numAxes];
+        prevTimestamps = new double[numAxes];
+        unwrappedValues = new double[numAxes];
+        rates = new double[numAxes];
         numCrossovers = new int[numAxes];
+    }   //TrcDataUnwrapper
 
-        for (int i = 0; i < numAxes; i++)
+    /**
+     * This method returns the number of axes of the sensor. It is used by the constructor
+     * to validate the sensor before creating the unwrapper.
+     *
+     * @param sensor specifies the sensor object.
+     * @return number of axes of the sensor.
+     */
+    private static int getNumAxes(TrcSensor sensor)
+    {
+        if (sensor == null)
         {
-            valueRangeLows[i] = 0.0;
-            valueRangeHighs[i] = 0.0;
-            prevData[i] = null;
-            numCrossovers[i] = 0;
+            throw new NullPointerException("sensor cannot be null.");
         }
-    }   //TrcDataUnwrapper
+
+        return sensor.getNumAxes();
+    }   //getNumAxes
 
     /**
      * This method returns the instance name.
@@ -110,7 +158,7 @@ public class TrcDataUnwrapper implements TrcTaskMgr.Task
     /**
      * This method enables the data unwrapper. The data unwrapper is not
      * automatically enabled when created. You must explicitly call this
-     * method to enable the data unwrapper.
+     * method to enable the data unwrapper. A standalone unwrapper cannot be enabled.
      *
      * @param enabled specifies true for enabling the data unwrapper, disabling it otherwise.
      */
@@ -125,6 +173,11 @@ public class TrcDataUnwrapper implements TrcTaskMgr.Task
             dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
         }
 
+        if (sensor == null)
+        {
+            throw new UnsupportedOperationException("Standalone unwrapper cannot be enabled.");
+        }
+
         if (enabled)
         {
             reset();
@@ -138,7 +191,8 @@ public class TrcDataUnwrapper implements TrcTaskMgr.Task
     }   //setEnabled
 
     /**
-     * This method resets the indexed unwrapper.
+     * This method resets the indexed unwrapper. If the unwrapper has a sensor, the current
+     * sensor data becomes the first sample. Otherwise, the next sample passed to unwrap does.
      *
      * @param index specifies the axis index.
      */
@@ -152,8 +206,14 @@ public class TrcDataUnwrapper implements TrcTaskMgr.Task
             dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
         }
 
-        prevData[index] = sensor.getData(index, dataType);
+        initialized[index] = false;
+        rates[index] = 0.0;
         numCrossovers[index] = 0;
+        if (sensor != null)
+        {
+            TrcSensor.SensorData data = sensor.getData(index, dataType);
+            unwrap(index, data.timestamp, (Double)data.value);
+        }
     }   //reset
 
     /**
@@ -203,6 +263,124 @@ public class TrcDataUnwrapper implements TrcTaskMgr.Task
         valueRangeHighs[index] = valueRangeHigh;
     }   //setValueRange
 
+    /**
+     * This method sets the maximum rate of change of the indexed axis. If set, the
+     * unwrapper predicts the next value from the last rate bounded by the max rate and
+     * picks the crossover count closest to the prediction. Otherwise, it picks the
+     * crossover count closest to the previous value, which can only detect a single
+     * crossover of less than half of the value range between samples.
+     *
+     * @param index specifies the axis index.
+     * @param maxRate specifies the max rate in value units per second, 0 to disable.
+     */
+    public void setMaxRate(int index, double maxRate)
+    {
+        final String funcName = "setMaxRate";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API, "maxRate=%f", maxRate);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        if (maxRate < 0.0)
+        {
+            throw new IllegalArgumentException("maxRate cannot be negative.");
+        }
+
+        maxRates[index] = maxRate;
+    }   //setMaxRate
+
+    /**
+     * This method unwraps a new sample of the indexed axis. It doesn't allocate any memory.
+     *
+     * @param index specifies the axis index.
+     * @param timestamp specifies the timestamp of the sample.
+     * @param value specifies the wrapped sample value.
+     * @return unwrapped value.
+     */
+    public double unwrap(int index, double timestamp, double value)
+    {
+        double range = valueRangeHighs[index] - valueRangeLows[index];
+        double offsetValue = value - valueRangeLows[index];
+
+        if (!initialized[index] || range <= 0.0)
+        {
+            //
+            // First sample or no value range, there is nothing to unwrap.
+            //
+            unwrappedValues[index] = offsetValue + range*numCrossovers[index];
+            initialized[index] = true;
+        }
+        else
+        {
+            double deltaTime = timestamp - prevTimestamps[index];
+            double predicted = unwrappedValues[index];
+
+            if (maxRates[index] > 0.0 && deltaTime > 0.0)
+            {
+                predicted += TrcUtil.limit(rates[index], -maxRates[index], maxRates[index])*deltaTime;
+            }
+
+            numCrossovers[index] = (int)Math.round((predicted - offsetValue)/range);
+            double unwrappedValue = offsetValue + range*numCrossovers[index];
+
+            if (deltaTime > 0.0)
+            {
+                rates[index] = (unwrappedValue - unwrappedValues[index])/deltaTime;
+            }
+            unwrappedValues[index] = unwrappedValue;
+        }
+        prevTimestamps[index] = timestamp;
+
+        return unwrappedValues[index];
+    }   //unwrap
+
+    /**
+     * This method returns the indexed unwrapped value. It doesn't allocate any memory.
+     *
+     * @param index specifies the axis index.
+     * @return unwrapped value.
+     */
+    public double getUnwrappedValue(int index)
+    {
+        return unwrappedValues[index];
+    }   //getUnwrappedValue
+
+    /**
+     * This method returns the rate of change of the indexed unwrapped value between the
+     * last two samples. It doesn't allocate any memory.
+     *
+     * @param index specifies the axis index.
+     * @return rate of change in value units per second.
+     */
+    public double getRate(int index)
+    {
+        return rates[index];
+    }   //getRate
+
+    /**
+     * This method returns the timestamp of the last sample of the indexed axis.
+     *
+     * @param index specifies the axis index.
+     * @return timestamp of the last sample.
+     */
+    public double getTimestamp(int index)
+    {
+        return prevTimestamps[index];
+    }   //getTimestamp
+
+    /**
+     * This method returns the number of crossovers of the indexed axis.
+     *
+     * @param index specifies the axis index.
+     * @return number of crossovers, negative if crossed the low end.
+     */
+    public int getNumCrossovers(int index)
+    {
+        return numCrossovers[index];
+    }   //getNumCrossovers
+
     /**
      * This method returns the indexed unwrapped data.
      *
@@ -213,10 +391,7 @@ public class TrcDataUnwrapper implements TrcTaskMgr.Task
     {
         final String funcName = "getUnwrappedData";
         TrcSensor.SensorData data =
-                new TrcSensor.SensorData(prevData[index].timestamp, prevData[index].value);
-
-        data.value = (valueRangeHighs[index] - valueRangeLows[index])*numCrossovers[index] +
-                     ((Double)data.value - valueRangeLows[index]);
+                new TrcSensor.SensorData(prevTimestamps[index], unwrappedValues[index]);
 
         if (debugEnabled)
         {
@@ -272,25 +447,12 @@ public class TrcDataUnwrapper implements TrcTaskMgr.Task
         for (int i = 0; i < numAxes; i++)
         {
             TrcSensor.SensorData data = sensor.getData(i, dataType);
-            if (Math.abs((Double)data.value - (Double)prevData[i].value) >
-                (valueRangeHighs[i] - valueRangeLows[i])/2.0)
-            {
-                if ((Double)data.value > (Double)prevData[i].value)
-                {
-                    numCrossovers[i]--;
-                }
-                else
-                {
-                    numCrossovers[i]++;
-                }
-            }
-            prevData[i] = data;
+            unwrap(i, data.timestamp, (Double)data.value);
         }
 
         if (debugEnabled)
         {
-            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.TASK,
-                               "! (numCrossovers=%d)", numCrossovers);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.TASK);
         }
     }   //preContinuousTask
 
@@ -23,8 +23,19 @@
 
 package trclib;
 
+/**
+ * This class is the base class of all data filters. A filter takes one data sample at a time
+ * and returns the filtered value. Filters may be used on their own or attached to a TrcSensor
+ * axis. Multiple filters can be combined into a pipeline with TrcFilterChain.
+ */
 public abstract class TrcFilter
 {
+    /**
+     * This method is called to filter the given data sample.
+     *
+     * @param data specifies the data sample to be filtered.
+     * @return filtered data.
+     */
     public abstract double filterData(double data);
 
     private static final String moduleName = "TrcFilter";
@@ -51,4 +62,16 @@ public abstract class TrcFilter
         return instanceName;
     }   //toString
 
+    //
+    // The following methods can be overridden by a filter class that keeps state.
+    //
+
+    /**
+     * This method resets the filter state so that the next data sample starts afresh.
+     * The base class has no state so this method does nothing.
+     */
+    public void reset()
+    {
+    }   //reset
+
 }   //class TrcFilter
@@ -0,0 +1,143 @@
+/*
+ * Titan Robotics Framework Library
+ * Copyright (c) 2016 Titan Robotics Club (http://www.titanrobotics.net)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package trclib;
+
+/**
+ * This class implements a filter pipeline. It consists of an ordered list of filter stages.
+ * Each data sample is passed through every stage in order and the output of one stage becomes
+ * the input of the next. Since TrcFilterChain is itself a TrcFilter, it can be given to any
+ * TrcSensor axis that accepts a single filter. For example, a spike filter followed by a median
+ * filter followed by a low pass filter.
+ */
+public class TrcFilterChain extends TrcFilter
+{
+    private static final String moduleName = "TrcFilterChain";
+    private static final boolean debugEnabled = false;
+    private TrcDbgTrace dbgTrace = null;
+
+    private final TrcFilter[] stages;
+
+    /**
+     * Constructor: Creates an instance of the object.
+     *
+     * @param instanceName specifies the instance name.
+     * @param stages specifies the filter stages in the order they are applied.
+     */
+    public TrcFilterChain(String instanceName, TrcFilter... stages)
+    {
+        super(instanceName);
+
+        if (debugEnabled)
+        {
+            dbgTrace = new TrcDbgTrace(
+                    moduleName + "." + instanceName,
+                    false,
+                    TrcDbgTrace.TraceLevel.API,
+                    TrcDbgTrace.MsgLevel.INFO);
+        }
+
+        if (stages == null || stages.length == 0)
+        {
+            throw new IllegalArgumentException("Filter chain must have at least one stage.");
+        }
+
+        for (int i = 0; i < stages.length; i++)
+        {
+            if (stages[i] == null)
+            {
+                throw new NullPointerException("Filter stages cannot be null.");
+            }
+        }
+
+        this.stages = stages;
+    }   //TrcFilterChain
+
+    /**
+     * This method returns the number of stages in the chain.
+     *
+     * @return number of stages.
+     */
+    public int getNumStages()
+    {
+        return stages.length;
+    }   //getNumStages
+
+    /**
+     * This method returns the filter of the specified stage.
+     *
+     * @param index specifies the stage index.
+     * @return filter of the stage.
+     */
+    public TrcFilter getStage(int index)
+    {
+        return stages[index];
+    }   //getStage
+
+    //
+    // Overrides TrcFilter methods.
+    //
+
+    /**
+     * This method resets all the stages in the chain.
+     */
+    @Override
+    public void reset()
+    {
+        for (int i = 0; i < stages.length; i++)
+        {
+            stages[i].reset();
+        }
+    }   //reset
+
+    //
+    // Implements TrcFilter abstract methods.
+    //
+
+    /**
+     * This method passes the data sample through all the stages in order.
+     *
+     * @param data specifies the data sample to be filtered.
+     * @return filtered data from the last stage.
+     */
+    @Override
+    public double filterData(double data)
+    {
+        final String funcName = "filterData";
+        double value = data;
+
+        for (int i = 0; i < stages.length; i++)
+        {
+            value = stages[i].filterData(value);
+        }
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API, "data=%f", data);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API, "=%f", value);
+        }
+
+        return value;
+    }   //filterData
+
+}   //class TrcFilterChain
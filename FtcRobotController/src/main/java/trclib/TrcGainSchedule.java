@@ -0,0 +1,186 @@
+/*
+ * Titan Robotics Framework Library
+ * Copyright (c) 2016 Titan Robotics Club (http://www.titanrobotics.net)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package trclib;
+
+/**
+ * This class implements a PID gain schedule. It is a table of kP, kI, kD and kF entries
+ * sorted by a schedule key, such as the error magnitude, the setpoint or an external variable
+ * like the load on a mechanism. The gains for a key between two entries are linearly
+ * interpolated, and the gains for a key outside the table are those of the nearest entry.
+ * The entries are kept in primitive arrays and looked up with a binary search. The gains of
+ * the last lookup are kept in the object, so a lookup does not allocate memory.
+ */
+public class TrcGainSchedule
+{
+    private final double[] keys;
+    private final double[] kPs;
+    private final double[] kIs;
+    private final double[] kDs;
+    private final double[] kFs;
+    private double kP;
+    private double kI;
+    private double kD;
+    private double kF;
+
+    /**
+     * Constructor: Creates an instance of the object.
+     *
+     * @param keys specifies the schedule keys in ascending order.
+     * @param kPs specifies the kP of each entry.
+     * @param kIs specifies the kI of each entry.
+     * @param kDs specifies the kD of each entry.
+     * @param kFs specifies the kF of each entry.
+     */
+    public TrcGainSchedule(double[] keys, double[] kPs, double[] kIs, double[] kDs, double[] kFs)
+    {
+        if (keys.length == 0 || kPs.length != keys.length || kIs.length != keys.length ||
+            kDs.length != keys.length || kFs.length != keys.length)
+        {
+            throw new IllegalArgumentException(
+                    "Gain schedule must have the same non-zero number of keys and gains.");
+        }
+
+        for (int i = 1; i < keys.length; i++)
+        {
+            if (keys[i] <= keys[i - 1])
+            {
+                throw new IllegalArgumentException("Schedule keys must be in ascending order.");
+            }
+        }
+
+        this.keys = keys.clone();
+        this.kPs = kPs.clone();
+        this.kIs = kIs.clone();
+        this.kDs = kDs.clone();
+        this.kFs = kFs.clone();
+        update(keys[0]);
+    }   //TrcGainSchedule
+
+    /**
+     * This method looks up the gains for the given schedule key. The gains are then
+     * available from getKp, getKi, getKd and getKf.
+     *
+     * @param key specifies the schedule key.
+     */
+    public void update(double key)
+    {
+        int last = keys.length - 1;
+
+        if (key <= keys[0])
+        {
+            setGains(0, 0, 0.0);
+        }
+        else if (key >= keys[last])
+        {
+            setGains(last, last, 0.0);
+        }
+        else
+        {
+            //
+            // Find the last entry with a key less than or equal to the given key.
+            //
+            int low = 0;
+            int high = last;
+            while (high - low > 1)
+            {
+                int mid = (low + high) >>> 1;
+                if (keys[mid] <= key)
+                {
+                    low = mid;
+                }
+                else
+                {
+                    high = mid;
+                }
+            }
+            setGains(low, high, (key - keys[low])/(keys[high] - keys[low]));
+        }
+    }   //update
+
+    /**
+     * This method returns the number of entries in the schedule.
+     *
+     * @return number of entries.
+     */
+    public int getNumEntries()
+    {
+        return keys.length;
+    }   //getNumEntries
+
+    /**
+     * This method returns kP of the last lookup.
+     *
+     * @return kP.
+     */
+    public double getKp()
+    {
+        return kP;
+    }   //getKp
+
+    /**
+     * This method returns kI of the last lookup.
+     *
+     * @return kI.
+     */
+    public double getKi()
+    {
+        return kI;
+    }   //getKi
+
+    /**
+     * This method returns kD of the last lookup.
+     *
+     * @return kD.
+     */
+    public double getKd()
+    {
+        return kD;
+    }   //getKd
+
+    /**
+     * This method returns kF of the last lookup.
+     *
+     * @return kF.
+     */
+    public double getKf()
+    {
+        return kF;
+    }   //getKf
+
+    /**
+     * This method interpolates the gains between two entries.
+     *
+     * @param low specifies the index of the lower entry.
+     * @param high specifies the index of the upper entry.
+     * @param fraction specifies the position of the key between the two entries (0.0 to 1.0).
+     */
+    private void setGains(int low, int high, double fraction)
+    {
+        kP = kPs[low] + (kPs[high] - kPs[low])*fraction;
+        kI = kIs[low] + (kIs[high] - kIs[low])*fraction;
+        kD = kDs[low] + (kDs[high] - kDs[low])*fraction;
+        kF = kFs[low] + (kFs[high] - kFs[low])*fraction;
+    }   //setGains
+
+}   //class TrcGainSchedule
@@ -253,6 +253,29 @@ public abstract class TrcGyro extends TrcSensor implements HalGyro,
         }
     }   //setEnabled
 
+    /**
+     * This method sets the integration method used by the built-in integrator.
+     * It has no effect if the gyro doesn't use the built-in integrator.
+     *
+     * @param method specifies the integration method.
+     */
+    public void setIntegrationMethod(TrcDataIntegrator.IntegrationMethod method)
+    {
+        final String funcName = "setIntegrationMethod";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API,
+                                "method=%s", method.toString());
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        if (dataIntegrator != null)
+        {
+            dataIntegrator.setIntegrationMethod(method);
+        }
+    }   //setIntegrationMethod
+
     /**
      * This method inverts the x-axis. This is useful if the orientation of
      * the gyro x-axis is such that the data goes the wrong direction.
@@ -559,6 +582,27 @@ public abstract class TrcGyro extends TrcSensor implements HalGyro,
         return data;
     }   //getZRotationRate
 
+    /**
+     * This method returns the rotation rate on the z-axis as a primitive. The timestamp of the
+     * rate can be read with getZRotationRateTimestamp.
+     *
+     * @return Z rotation rate.
+     */
+    public double getZRotationRateValue()
+    {
+        return getDataValue(zIndex, DataType.ROTATION_RATE);
+    }   //getZRotationRateValue
+
+    /**
+     * This method returns the timestamp of the rate last returned by getZRotationRateValue.
+     *
+     * @return timestamp of the Z rotation rate.
+     */
+    public double getZRotationRateTimestamp()
+    {
+        return getDataTimestamp(zIndex);
+    }   //getZRotationRateTimestamp
+
     /**
      * This method returns the heading of the x-axis. If there is an integrator,
      * we call the integrator to get the heading. Else if we have an unwrapper,
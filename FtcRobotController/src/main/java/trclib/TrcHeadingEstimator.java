@@ -0,0 +1,426 @@
+/*
+ * Titan Robotics Framework Library
+ * Copyright (c) 2016 Titan Robotics Club (http://www.titanrobotics.net)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package trclib;
+
+/**
+ * This class implements a heading estimator that fuses several heading sources with a two
+ * state Kalman filter. The state is the heading and the gyro bias, both in degrees (per
+ * second for the bias). The gyro Z rotation rate drives the prediction step, so the estimate
+ * responds to turns without the lag of the integrated heading. The wheel based rotation from
+ * TrcDriveBase and, optionally, a magnetometer are used as heading measurements that correct
+ * the drift and let the filter learn the gyro bias. Each source is optional except the gyro.
+ * The estimator runs as a pre-continuous task so the heading is updated once per loop.
+ */
+public class TrcHeadingEstimator implements TrcTaskMgr.Task
+{
+    private static final String moduleName = "TrcHeadingEstimator";
+    private static final boolean debugEnabled = false;
+    private TrcDbgTrace dbgTrace = null;
+
+    private static final int HEADING = 0;
+    private static final int BIAS = 1;
+
+    private final String instanceName;
+    private final TrcGyro gyro;
+    private final double headingNoise;
+    private final double biasNoise;
+    private final TrcLinearKalmanFilter kalman;
+    //
+    // Preallocated model matrices.
+    //
+    private final double[] f = {1.0, 0.0, 0.0, 1.0};
+    private final double[] u = {0.0, 0.0};
+    private final double[] q = {0.0, 0.0, 0.0, 0.0};
+    private final double[] h = {1.0, 0.0};
+    private final double[] initialState = {0.0, 0.0};
+    private final double[] initialCovariance = {0.0, 0.0, 0.0, 0.0};
+
+    private TrcDriveBase driveBase = null;
+    private double wheelScale = 1.0;
+    private double wheelVariance = 0.0;
+    private double wheelRef = 0.0;
+
+    private TrcSensor magnetometer = null;
+    private boolean magInverted = false;
+    private double magVariance = 0.0;
+    private double magRef = 0.0;
+
+    private double prevTime = 0.0;
+    private double turnRate = 0.0;
+    private boolean enabled = false;
+
+    /**
+     * Constructor: Creates an instance of the object.
+     *
+     * @param instanceName specifies the instance name.
+     * @param gyro specifies the gyro providing the Z rotation rate.
+     * @param headingNoise specifies the heading process noise in degrees squared per second.
+     *                     This reflects how much the gyro rate is trusted.
+     * @param biasNoise specifies the bias process noise in (degrees per second) squared per
+     *                  second. This reflects how fast the gyro bias may wander.
+     */
+    public TrcHeadingEstimator(
+            final String instanceName, TrcGyro gyro, double headingNoise, double biasNoise)
+    {
+        if (debugEnabled)
+        {
+            dbgTrace = new TrcDbgTrace(
+                    moduleName + "." + instanceName,
+                    false,
+                    TrcDbgTrace.TraceLevel.API,
+                    TrcDbgTrace.MsgLevel.INFO);
+        }
+
+        if (gyro == null)
+        {
+            throw new NullPointerException("gyro cannot be null.");
+        }
+
+        this.instanceName = instanceName;
+        this.gyro = gyro;
+        this.headingNoise = headingNoise;
+        this.biasNoise = biasNoise;
+        kalman = new TrcLinearKalmanFilter(instanceName, 2);
+    }   //TrcHeadingEstimator
+
+    /**
+     * This method returns the instance name.
+     *
+     * @return instance name.
+     */
+    public String toString()
+    {
+        return instanceName;
+    }   //toString
+
+    /**
+     * This method sets the drive base as a heading source. The drive base rotate position is
+     * multiplied by the given scale to get the wheel heading in degrees.
+     *
+     * @param driveBase specifies the drive base, null to remove the source.
+     * @param degreesPerUnit specifies the degrees of heading per unit of rotate position.
+     * @param variance specifies the measurement noise variance of the wheel heading in
+     *                 degrees squared. Wheel slip during turns calls for a larger value.
+     */
+    public void setWheelSource(TrcDriveBase driveBase, double degreesPerUnit, double variance)
+    {
+        final String funcName = "setWheelSource";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API,
+                                "scale=%f,variance=%f", degreesPerUnit, variance);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        this.driveBase = driveBase;
+        this.wheelScale = degreesPerUnit;
+        this.wheelVariance = variance;
+        if (driveBase != null)
+        {
+            wheelRef = driveBase.getRotatePosition()*wheelScale - kalman.getState(HEADING);
+        }
+    }   //setWheelSource
+
+    /**
+     * This method sets a magnetometer as a heading source. The heading is computed from the
+     * x and y axes of the sensor and is taken relative to the reading at reset time.
+     *
+     * @param magnetometer specifies the magnetometer sensor, null to remove the source.
+     * @param inverted specifies true if the magnetometer heading goes the opposite direction
+     *                 of the gyro heading.
+     * @param variance specifies the measurement noise variance of the magnetometer heading in
+     *                 degrees squared.
+     */
+    public void setMagnetometerSource(TrcSensor magnetometer, boolean inverted, double variance)
+    {
+        final String funcName = "setMagnetometerSource";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API,
+                                "inverted=%s,variance=%f", Boolean.toString(inverted), variance);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        if (magnetometer != null && magnetometer.getNumAxes() < 2)
+        {
+            throw new IllegalArgumentException("Magnetometer must have at least 2 axes.");
+        }
+
+        this.magnetometer = magnetometer;
+        this.magInverted = inverted;
+        this.magVariance = variance;
+        if (magnetometer != null)
+        {
+            magRef = getMagHeading() - kalman.getState(HEADING);
+        }
+    }   //setMagnetometerSource
+
+    /**
+     * This method enables/disables the estimator task. The estimator is reset when enabled.
+     *
+     * @param enabled specifies true to enable, false to disable.
+     */
+    public void setEnabled(boolean enabled)
+    {
+        final String funcName = "setEnabled";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API,
+                                "enabled=%s", Boolean.toString(enabled));
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        if (enabled)
+        {
+            reset();
+            TrcTaskMgr.getInstance().registerTask(
+                    instanceName, this, TrcTaskMgr.TaskType.PRECONTINUOUS_TASK);
+        }
+        else
+        {
+            TrcTaskMgr.getInstance().unregisterTask(this, TrcTaskMgr.TaskType.PRECONTINUOUS_TASK);
+        }
+        this.enabled = enabled;
+    }   //setEnabled
+
+    /**
+     * This method checks if the estimator is enabled.
+     *
+     * @return true if enabled, false otherwise.
+     */
+    public boolean isEnabled()
+    {
+        return enabled;
+    }   //isEnabled
+
+    /**
+     * This method resets the heading to zero and takes the current readings of all sources
+     * as their new references.
+     */
+    public void reset()
+    {
+        final String funcName = "reset";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        initialState[HEADING] = 0.0;
+        initialState[BIAS] = kalman.getState(BIAS);
+        initialCovariance[0] = 0.0;
+        initialCovariance[3] = Math.max(kalman.getCovariance(BIAS, BIAS), biasNoise);
+        kalman.reset(initialState, initialCovariance);
+
+        if (driveBase != null)
+        {
+            wheelRef = driveBase.getRotatePosition()*wheelScale;
+        }
+
+        if (magnetometer != null)
+        {
+            magRef = getMagHeading();
+        }
+
+        gyro.getZRotationRateValue();
+        prevTime = gyro.getZRotationRateTimestamp();
+        turnRate = 0.0;
+    }   //reset
+
+    /**
+     * This method returns the estimated heading in degrees.
+     *
+     * @return estimated heading.
+     */
+    public double getHeading()
+    {
+        final String funcName = "getHeading";
+        double heading = kalman.getState(HEADING);
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API, "=%f", heading);
+        }
+
+        return heading;
+    }   //getHeading
+
+    /**
+     * This method returns the bias corrected turn rate in degrees per second.
+     *
+     * @return turn rate.
+     */
+    public double getTurnRate()
+    {
+        return turnRate;
+    }   //getTurnRate
+
+    /**
+     * This method returns the estimated gyro bias in degrees per second.
+     *
+     * @return gyro bias.
+     */
+    public double getGyroBias()
+    {
+        return kalman.getState(BIAS);
+    }   //getGyroBias
+
+    /**
+     * This method returns the variance of the heading estimate in degrees squared.
+     *
+     * @return heading variance.
+     */
+    public double getHeadingVariance()
+    {
+        return kalman.getCovariance(HEADING, HEADING);
+    }   //getHeadingVariance
+
+    /**
+     * This method computes the magnetometer heading in degrees from the x and y axes.
+     *
+     * @return magnetometer heading.
+     */
+    private double getMagHeading()
+    {
+        double x = magnetometer.getDataValue(0, null);
+        double y = magnetometer.getDataValue(1, null);
+        double heading = Math.toDegrees(Math.atan2(y, x));
+
+        return magInverted? -heading: heading;
+    }   //getMagHeading
+
+    /**
+     * This method wraps an angle to the range of -180 to 180 degrees.
+     *
+     * @param angle specifies the angle.
+     * @return wrapped angle.
+     */
+    private static double wrapAngle(double angle)
+    {
+        angle %= 360.0;
+        if (angle > 180.0)
+        {
+            angle -= 360.0;
+        }
+        else if (angle <= -180.0)
+        {
+            angle += 360.0;
+        }
+
+        return angle;
+    }   //wrapAngle
+
+    //
+    // Implements TrcTaskMgr.Task
+    //
+
+    @Override
+    public void startTask(TrcRobot.RunMode runMode)
+    {
+    }   //startTask
+
+    @Override
+    public void stopTask(TrcRobot.RunMode runMode)
+    {
+    }   //stopTask
+
+    @Override
+    public void prePeriodicTask(TrcRobot.RunMode runMode)
+    {
+    }   //prePeriodicTask
+
+    @Override
+    public void postPeriodicTask(TrcRobot.RunMode runMode)
+    {
+    }   //postPeriodicTask
+
+    /**
+     * This method is called periodically to run one predict/update cycle of the filter.
+     *
+     * @param runMode specifies the competition mode that is running.
+     */
+    @Override
+    public void preContinuousTask(TrcRobot.RunMode runMode)
+    {
+        final String funcName = "preContinuousTask";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.TASK,
+                                "mode=%s", runMode.toString());
+        }
+
+        double rate = gyro.getZRotationRateValue();
+        double timestamp = gyro.getZRotationRateTimestamp();
+        double dt = timestamp - prevTime;
+
+        if (dt > 0.0)
+        {
+            //
+            // heading' = heading + (rate - bias)*dt, bias' = bias.
+            //
+            f[1] = -dt;
+            u[HEADING] = rate*dt;
+            q[0] = headingNoise*dt;
+            q[3] = biasNoise*dt;
+            kalman.predict(f, u, q);
+            prevTime = timestamp;
+        }
+        turnRate = rate - kalman.getState(BIAS);
+
+        if (driveBase != null)
+        {
+            kalman.update(h, driveBase.getRotatePosition()*wheelScale - wheelRef, wheelVariance);
+        }
+
+        if (magnetometer != null)
+        {
+            //
+            // The magnetometer heading wraps around, so measure it relative to the current
+            // estimate to get the unwrapped value.
+            //
+            double heading = kalman.getState(HEADING);
+            double magHeading = wrapAngle(getMagHeading() - magRef);
+            kalman.update(h, heading + wrapAngle(magHeading - heading), magVariance);
+        }
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.TASK,
+                               "! (heading=%f,bias=%f)",
+                               kalman.getState(HEADING), kalman.getState(BIAS));
+        }
+    }   //preContinuousTask
+
+    @Override
+    public void postContinuousTask(TrcRobot.RunMode runMode)
+    {
+    }   //postContinuousTask
+
+}   //class TrcHeadingEstimator
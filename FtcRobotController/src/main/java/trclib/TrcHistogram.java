@@ -0,0 +1,212 @@
+/*
+ * Titan Robotics Framework Library
+ * Copyright (c) 2016 Titan Robotics Club (http://www.titanrobotics.net)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package trclib;
+
+/**
+ * This class implements a histogram with fixed bins. The bins are allocated when the
+ * histogram is created, so adding samples never allocates memory. Bin i counts the samples
+ * that are less than or equal to binLimits[i] and greater than the previous limit. An extra
+ * overflow bin counts the samples greater than the last limit. The count, mean, min and max
+ * of the samples are also kept.
+ */
+public class TrcHistogram
+{
+    private final double[] binLimits;
+    private final long[] binCounts;
+    private long count = 0;
+    private double sum = 0.0;
+    private double minValue = 0.0;
+    private double maxValue = 0.0;
+
+    /**
+     * Constructor: Creates an instance of the object.
+     *
+     * @param binLimits specifies the upper limits of the bins in ascending order.
+     */
+    public TrcHistogram(double... binLimits)
+    {
+        for (int i = 1; i < binLimits.length; i++)
+        {
+            if (binLimits[i] <= binLimits[i - 1])
+            {
+                throw new IllegalArgumentException("Bin limits must be in ascending order.");
+            }
+        }
+
+        this.binLimits = binLimits.clone();
+        this.binCounts = new long[binLimits.length + 1];
+    }   //TrcHistogram
+
+    /**
+     * This method adds a sample to the histogram.
+     *
+     * @param value specifies the sample value.
+     */
+    public void addSample(double value)
+    {
+        int bin = 0;
+
+        while (bin < binLimits.length && value > binLimits[bin])
+        {
+            bin++;
+        }
+        binCounts[bin]++;
+
+        if (count == 0)
+        {
+            minValue = maxValue = value;
+        }
+        else if (value < minValue)
+        {
+            minValue = value;
+        }
+        else if (value > maxValue)
+        {
+            maxValue = value;
+        }
+        count++;
+        sum += value;
+    }   //addSample
+
+    /**
+     * This method clears all samples.
+     */
+    public void reset()
+    {
+        for (int i = 0; i < binCounts.length; i++)
+        {
+            binCounts[i] = 0;
+        }
+        count = 0;
+        sum = 0.0;
+        minValue = 0.0;
+        maxValue = 0.0;
+    }   //reset
+
+    /**
+     * This method returns the number of bins including the overflow bin.
+     *
+     * @return number of bins.
+     */
+    public int getNumBins()
+    {
+        return binCounts.length;
+    }   //getNumBins
+
+    /**
+     * This method returns the upper limit of a bin.
+     *
+     * @param bin specifies the bin index.
+     * @return upper limit of the bin, positive infinity for the overflow bin.
+     */
+    public double getBinLimit(int bin)
+    {
+        return bin < binLimits.length? binLimits[bin]: Double.POSITIVE_INFINITY;
+    }   //getBinLimit
+
+    /**
+     * This method returns the number of samples in a bin.
+     *
+     * @param bin specifies the bin index.
+     * @return number of samples in the bin.
+     */
+    public long getBinCount(int bin)
+    {
+        return binCounts[bin];
+    }   //getBinCount
+
+    /**
+     * This method returns the number of samples.
+     *
+     * @return number of samples.
+     */
+    public long getCount()
+    {
+        return count;
+    }   //getCount
+
+    /**
+     * This method returns the mean of the samples.
+     *
+     * @return mean of the samples, zero if there is none.
+     */
+    public double getMean()
+    {
+        return count > 0? sum/count: 0.0;
+    }   //getMean
+
+    /**
+     * This method returns the smallest sample.
+     *
+     * @return smallest sample, zero if there is none.
+     */
+    public double getMin()
+    {
+        return minValue;
+    }   //getMin
+
+    /**
+     * This method returns the largest sample.
+     *
+     * @return largest sample, zero if there is none.
+     */
+    public double getMax()
+    {
+        return maxValue;
+    }   //getMax
+
+    /**
+     * This method returns an estimate of the given percentile. Since only the bin counts are
+     * kept, it returns the upper limit of the bin containing the percentile, capped by the
+     * largest sample.
+     *
+     * @param percentile specifies the percentile between 0.0 and 100.0.
+     * @return estimated percentile value, zero if there is no sample.
+     */
+    public double getPercentile(double percentile)
+    {
+        double value = 0.0;
+
+        if (count > 0)
+        {
+            long target = (long)Math.ceil(count*percentile/100.0);
+            long total = 0;
+            int bin = 0;
+
+            while (bin < binCounts.length - 1)
+            {
+                total += binCounts[bin];
+                if (total >= target)
+                {
+                    break;
+                }
+                bin++;
+            }
+            value = Math.min(getBinLimit(bin), maxValue);
+        }
+
+        return value;
+    }   //getPercentile
+
+}   //class TrcHistogram
@@ -23,10 +23,11 @@
 
 package trclib;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.LinkedList;
-import java.util.Queue;
 
+import hallib.HalDashboard;
 import hallib.HalUtil;
 
 /**
@@ -42,6 +43,51 @@ public abstract class TrcI2cDevice implements TrcTaskMgr.Task
     private static final boolean debugEnabled = false;
     private TrcDbgTrace dbgTrace = null;
 
+    //
+    // Initial size of the request pool and request queue, must be a power of 2. Both grow on
+    // demand, so this only determines how many requests can be outstanding before the first
+    // allocation.
+    //
+    private static final int INITIAL_QUEUE_SIZE = 16;
+
+    //
+    // Request priorities. Requests of higher priority are serviced first. Among requests of the
+    // same priority, the one with the earliest deadline is serviced first and requests without
+    // a deadline are serviced in the order they were queued. The exception is a queued write:
+    // it is a barrier, so no request queued after it is serviced before it, whatever its
+    // priority or deadline.
+    //
+    public static final int PRIORITY_LOW = 0;
+    public static final int PRIORITY_NORMAL = 1;
+    public static final int PRIORITY_HIGH = 2;
+
+    //
+    // Transaction statistics are kept for at most this many register ranges per device. The
+    // latency histograms use these bin limits in seconds.
+    //
+    private static final int MAX_STATS_RANGES = 16;
+    private static final double[] LATENCY_BIN_LIMITS =
+            {0.002, 0.005, 0.010, 0.020, 0.050, 0.100, 0.200, 0.500};
+    //
+    // Size of the shadow register cache, covering the whole 8-bit register address space.
+    //
+    private static final int NUM_REGISTERS = 256;
+    //
+    // Polling interval in msec of the blocking wait methods.
+    //
+    private static final long WAIT_POLL_INTERVAL = 1;
+    //
+    // Adaptive timeout: until enough transactions have been observed, the default timeout is
+    // used. After that, the timeout is the observed p99 completion latency times the margin,
+    // within the limits. A device is degraded after this many consecutive failed transactions.
+    //
+    private static final int ADAPTIVE_MIN_SAMPLES = 20;
+    private static final double ADAPTIVE_DEFAULT_TIMEOUT = 0.5;
+    private static final double ADAPTIVE_TIMEOUT_MARGIN = 2.0;
+    private static final double ADAPTIVE_MIN_TIMEOUT = 0.02;
+    private static final double ADAPTIVE_MAX_TIMEOUT = 0.5;
+    private static final int DEGRADED_FAILURE_COUNT = 5;
+
     /**
      * This method checks if the I2C port is ready for bus transaction.
      *
@@ -74,11 +120,13 @@ public abstract class TrcI2cDevice implements TrcTaskMgr.Task
     public abstract void sendWriteCommand(int regAddress, int length, byte[] data);
 
     /**
-     * This method retrieves the data read from the device.
+     * This method retrieves the data read from the device. The returned buffer is a read-only
+     * view that may be reused by subsequent calls. The data starts at index zero and the limit
+     * of the buffer is set to the number of bytes read.
      *
-     * @return byte array containing the data read.
+     * @return read-only buffer containing the data read.
      */
-    public abstract byte[] getData();
+    public abstract ByteBuffer getData();
 
     /**
      * The client of this class provides this interface if it wants to be
@@ -92,12 +140,13 @@ public abstract class TrcI2cDevice implements TrcTaskMgr.Task
          * @param regAddress specifies the starting register address.
          * @param length specifies the number of bytes read.
          * @param timestamp specified the timestamp of the data retrieved.
-         * @param data specifies the data byte array.
+         * @param data specifies the read-only data buffer. The buffer is reused after the
+         *             handler returns, so the handler must not keep a reference to it.
          * @param timedout specifies true if the operation was timed out, false otherwise.
          * @return true if the request should be repeated, false otherwise.
          */
         public boolean readCompletion(
-                int regAddress, int length, double timestamp, byte[] data, boolean timedout);
+                int regAddress, int length, double timestamp, ByteBuffer data, boolean timedout);
 
         /**
          * This method is called when the write operation has been completed.
@@ -141,7 +190,8 @@ public abstract class TrcI2cDevice implements TrcTaskMgr.Task
      * This class implements an I2C device request. It can be a read or write
      * request. This is implicitly indicated by the writeBuffer field. The
      * presence of a writeBuffer indicates it is a write request. It is a
-     * read request otherwise.
+     * read request otherwise. Request objects are recycled through a pool,
+     * so they are initialized by init() instead of the constructor.
      */
     private class Request
     {
@@ -150,10 +200,21 @@ public abstract class TrcI2cDevice implements TrcTaskMgr.Task
         private byte[] writeBuffer;
         private CompletionHandler handler;
         private double timeout;
+        private int priority;
+        private double deadline;
+        private double deadlineTime;
+        private double period;
+        private double startTime;
+        private double queuedTime;
+        private double retryTime;
+        private int retries;
+        private boolean cached;
         private boolean expired;
+        private boolean timedout;
+        private byte[] commandBuffer = new byte[2];
 
         /**
-         * Constructor: Create an instance of the object.
+         * This method initializes the request.
          *
          * @param regAddress specifies the register address.
          * @param length specifies the number of bytes to read or write.
@@ -161,27 +222,303 @@ public abstract class TrcI2cDevice implements TrcTaskMgr.Task
          * @param handler specifies the completion handler to call when done.
          *                Can be null if none needed.
          * @param timeout specifies the timeout time. It can be set to 0 if there is no timeout.
+         * @param priority specifies the request priority.
+         * @param deadline specifies the time in seconds after queuing by which the request must
+         *                 be started. It can be set to 0 if there is no deadline.
          */
-        public Request(
+        public void init(
                 int regAddress, int length, byte[] writeBuffer,
-                CompletionHandler handler, double timeout)
+                CompletionHandler handler, double timeout, int priority, double deadline)
         {
             this.regAddress = regAddress;
             this.length = length;
             this.writeBuffer = writeBuffer;
             this.handler = handler;
             this.timeout = timeout;
+            this.priority = priority;
+            this.deadline = deadline;
+            this.deadlineTime = 0.0;
+            this.period = 0.0;
+            this.startTime = 0.0;
+            this.retryTime = 0.0;
+            this.retries = 0;
+            this.cached = false;
             this.expired = false;
-        }   //Request
+            this.timedout = false;
+        }   //init
 
     }   //class Request
 
+    /**
+     * This class keeps the transaction statistics of a device or of one register range of a
+     * device. The time a request spends in the queue, waiting for the port to become ready
+     * (SEND_PORT_COMMAND) and waiting for the port command to complete
+     * (WAIT_PORT_COMMAND_COMPLETE) are kept in histograms. Together, they tell how old the
+     * data is when it is delivered to the completion handler.
+     */
+    public class TransactionStats
+    {
+        private final int regAddress;
+        private final int length;
+        private final TrcHistogram queueTime = new TrcHistogram(LATENCY_BIN_LIMITS);
+        private final TrcHistogram sendTime = new TrcHistogram(LATENCY_BIN_LIMITS);
+        private final TrcHistogram waitTime = new TrcHistogram(LATENCY_BIN_LIMITS);
+        private long transactionCount = 0;
+        private long timeoutCount = 0;
+        private long repollCount = 0;
+        private long timeoutRetryCount = 0;
+        private long byteCount = 0;
+        private double startTime = getCurrentTime();
+
+        /**
+         * Constructor: Creates an instance of the object.
+         *
+         * @param regAddress specifies the start of the register range, -1 for all registers.
+         * @param length specifies the length of the register range, 0 for all registers.
+         */
+        private TransactionStats(int regAddress, int length)
+        {
+            this.regAddress = regAddress;
+            this.length = length;
+        }   //TransactionStats
+
+        /**
+         * This method records a completed transaction.
+         *
+         * @param queued specifies the time spent in the queue in seconds.
+         * @param send specifies the time spent waiting for the port to become ready in seconds.
+         * @param wait specifies the time spent waiting for the command to complete in seconds,
+         *             negative if the command was never sent.
+         * @param timedout specifies true if the transaction timed out.
+         * @param repolls specifies the number of times the read data was polled again.
+         * @param bytes specifies the number of bytes transferred.
+         */
+        private void record(
+                double queued, double send, double wait, boolean timedout, int repolls, int bytes)
+        {
+            transactionCount++;
+            queueTime.addSample(queued);
+            sendTime.addSample(send);
+            if (wait >= 0.0)
+            {
+                waitTime.addSample(wait);
+            }
+
+            if (timedout)
+            {
+                timeoutCount++;
+            }
+            else
+            {
+                byteCount += bytes;
+            }
+            repollCount += repolls;
+        }   //record
+
+        /**
+         * This method records a timed out transaction that is retried under the retry policy.
+         * The retried transaction is recorded again when it completes.
+         */
+        private void recordTimeoutRetry()
+        {
+            timeoutRetryCount++;
+        }   //recordTimeoutRetry
+
+        /**
+         * This method clears the statistics.
+         */
+        public void reset()
+        {
+            queueTime.reset();
+            sendTime.reset();
+            waitTime.reset();
+            transactionCount = 0;
+            timeoutCount = 0;
+            repollCount = 0;
+            timeoutRetryCount = 0;
+            byteCount = 0;
+            startTime = getCurrentTime();
+        }   //reset
+
+        /**
+         * This method returns the start of the register range.
+         *
+         * @return register address, -1 for the statistics of the whole device.
+         */
+        public int getRegAddress()
+        {
+            return regAddress;
+        }   //getRegAddress
+
+        /**
+         * This method returns the length of the register range.
+         *
+         * @return range length, 0 for the statistics of the whole device.
+         */
+        public int getLength()
+        {
+            return length;
+        }   //getLength
+
+        /**
+         * This method returns the histogram of the time requests spent in the queue.
+         *
+         * @return queue time histogram in seconds.
+         */
+        public TrcHistogram getQueueTime()
+        {
+            return queueTime;
+        }   //getQueueTime
+
+        /**
+         * This method returns the histogram of the time spent waiting for the port to become
+         * ready before sending the command.
+         *
+         * @return send time histogram in seconds.
+         */
+        public TrcHistogram getSendTime()
+        {
+            return sendTime;
+        }   //getSendTime
+
+        /**
+         * This method returns the histogram of the time spent waiting for the command to
+         * complete.
+         *
+         * @return wait time histogram in seconds.
+         */
+        public TrcHistogram getWaitTime()
+        {
+            return waitTime;
+        }   //getWaitTime
+
+        /**
+         * This method returns the number of transactions.
+         *
+         * @return number of transactions.
+         */
+        public long getTransactionCount()
+        {
+            return transactionCount;
+        }   //getTransactionCount
+
+        /**
+         * This method returns the number of transactions that timed out.
+         *
+         * @return number of timeouts.
+         */
+        public long getTimeoutCount()
+        {
+            return timeoutCount;
+        }   //getTimeoutCount
+
+        /**
+         * This method returns the number of times the read data was not ready when the port
+         * became ready and had to be polled again.
+         *
+         * @return number of re-polls.
+         */
+        public long getRepollCount()
+        {
+            return repollCount;
+        }   //getRepollCount
+
+        /**
+         * This method returns the number of timed out transactions that were retried under the
+         * retry policy (see setRetryPolicy).
+         *
+         * @return number of timeout retries.
+         */
+        public long getTimeoutRetryCount()
+        {
+            return timeoutRetryCount;
+        }   //getTimeoutRetryCount
+
+        /**
+         * This method returns the number of bytes transferred by transactions that did not
+         * time out.
+         *
+         * @return number of bytes.
+         */
+        public long getByteCount()
+        {
+            return byteCount;
+        }   //getByteCount
+
+        /**
+         * This method returns the throughput since the statistics were reset.
+         *
+         * @return throughput in bytes per second.
+         */
+        public double getBytesPerSecond()
+        {
+            double elapsedTime = getCurrentTime() - startTime;
+
+            return elapsedTime > 0.0? byteCount/elapsedTime: 0.0;
+        }   //getBytesPerSecond
+
+        /**
+         * This method displays the statistics on two lines of the dashboard.
+         *
+         * @param lineNum specifies the first line number on the dashboard.
+         */
+        public void displayStats(int lineNum)
+        {
+            HalDashboard dashboard = HalDashboard.getInstance();
+
+            dashboard.displayPrintf(
+                    lineNum,
+                    "[%x,%d]: n=%d, timeout=%d, retry=%d, repoll=%d, %.0fB/s",
+                    regAddress, length, transactionCount, timeoutCount, timeoutRetryCount,
+                    repollCount, getBytesPerSecond());
+            dashboard.displayPrintf(
+                    lineNum + 1,
+                    "queue=%.1f/%.1f, send=%.1f/%.1f, wait=%.1f/%.1f ms (mean/p95)",
+                    queueTime.getMean()*1000.0, queueTime.getPercentile(95.0)*1000.0,
+                    sendTime.getMean()*1000.0, sendTime.getPercentile(95.0)*1000.0,
+                    waitTime.getMean()*1000.0, waitTime.getPercentile(95.0)*1000.0);
+        }   //displayStats
+
+    }   //class TransactionStats
+
     private String instanceName;
     private TrcStateMachine portCommandSM;
-    private Queue<Request> requestQueue = new LinkedList<Request>();
+    private Request[] requestPool = new Request[INITIAL_QUEUE_SIZE];
+    private int poolSize = 0;
+    private Request[] requestQueue = new Request[INITIAL_QUEUE_SIZE];
+    private int queueHead = 0;
+    private int queueSize = 0;
+    private ArrayList<Request> coalescedRequests = new ArrayList<Request>();
+    private ArrayList<Request> droppedRequests = new ArrayList<Request>();
+    private int droppedRequestCount = 0;
     private Request currRequest = null;
+    private int currRegAddress = 0;
+    private int currLength = 0;
     private double expiredTime = 0.0;
-    private byte[] dataRead = null;
+    private ByteBuffer dataRead = null;
+    private byte[] requestData = new byte[0];
+    private ByteBuffer requestDataView = ByteBuffer.wrap(requestData).asReadOnlyBuffer();
+    private int maxTransferLength = 0;
+    private int maxCoalescingGap = 0;
+    private double transactionStartTime = 0.0;
+    private double commandSentTime = 0.0;
+    private int transactionRepolls = 0;
+    private TransactionStats deviceStats = new TransactionStats(-1, 0);
+    private TransactionStats[] rangeStats = new TransactionStats[MAX_STATS_RANGES];
+    private int numRangeStats = 0;
+    private byte[] shadowRegisters = new byte[NUM_REGISTERS];
+    private boolean[] shadowValid = new boolean[NUM_REGISTERS];
+    private boolean[] shadowDirty = new boolean[NUM_REGISTERS];
+    private int numDirtyRegisters = 0;
+    private int suppressedWriteCount = 0;
+    private TrcHistogram serviceTime = new TrcHistogram(LATENCY_BIN_LIMITS);
+    private boolean adaptiveTimeoutEnabled = false;
+    private int maxRetries = 0;
+    private double initialBackoff = 0.0;
+    private double maxBackoff = 0.0;
+    private int retryCount = 0;
+    private int consecutiveFailures = 0;
+    private boolean degraded = false;
 
     /**
      * Constructor: Creates an instance of the object.
@@ -214,220 +551,1422 @@ public abstract class TrcI2cDevice implements TrcTaskMgr.Task
     }   //toString
 
     /**
-     * This method enables/disables the internal port command state machine and its task.
+     * This method returns the current time used for deadlines, timeouts, periodic reads and
+     * statistics. It is the robot time, a simulated device may override it to run on simulated
+     * time instead.
      *
-     * @param enabled specifies true to enable the state machine and task, false otherwise.
+     * @return current time in seconds.
      */
-    private void setEnabled(boolean enabled)
+    protected double getCurrentTime()
     {
-        if (enabled)
-        {
-            TrcTaskMgr.getInstance().registerTask(
-                    instanceName, this, TrcTaskMgr.TaskType.PRECONTINUOUS_TASK);
-            portCommandSM.start(PortCommandState.START);
-        }
-        else
-        {
-            portCommandSM.stop();
-            TrcTaskMgr.getInstance().unregisterTask(this, TrcTaskMgr.TaskType.PRECONTINUOUS_TASK);
-        }
-    }   //setEnabled
+        return HalUtil.getCurrentTime();
+    }   //getCurrentTime
 
     /**
-     * This method queues the read request.
+     * This method sets the maximum number of bytes the platform can read in one bus transaction.
+     * Pending read requests with adjacent or overlapping register ranges are merged into a single
+     * transaction as long as the merged range does not exceed this length. Setting it to zero
+     * disables read coalescing.
      *
-     * @param regAddress specifies the register address to read from.
-     * @param length specifies the number of bytes to read.
-     * @param handler specifies the completion handler to call when done.
-     *                Can be null if none needed.
-     * @param timeout specifies the timeout for the operation in seconds.
+     * @param length specifies the maximum transfer length in bytes, zero to disable coalescing.
      */
-    public void read(int regAddress, int length, CompletionHandler handler, double timeout)
+    public void setMaxTransferLength(int length)
     {
-        final String funcName = "read";
+        final String funcName = "setMaxTransferLength";
 
         if (debugEnabled)
         {
-            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API,
-                                "addr=%x,len=%d", regAddress, length);
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API, "length=%d", length);
             dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
         }
 
-        requestQueue.add(new Request(regAddress, length, null, handler, timeout));
-        //
-        // If the PortCommand state machine is not already active, start it.
-        //
-        if (!portCommandSM.isEnabled())
+        if (length < 0)
         {
-            setEnabled(true);
+            throw new IllegalArgumentException("Transfer length must not be negative.");
         }
-    }   //read
+
+        maxTransferLength = length;
+    }   //setMaxTransferLength
 
     /**
-     * This method queues the read request.
+     * This method returns the maximum number of bytes that can be read in one bus transaction.
      *
-     * @param regAddress specifies the register address to read from.
-     * @param length specifies the number of bytes to read.
-     * @param handler specifies the completion handler to call when done.
-     *                Can be null if none needed.
+     * @return maximum transfer length in bytes, zero if read coalescing is disabled.
      */
-    public void read(int regAddress, int length, CompletionHandler handler)
+    public int getMaxTransferLength()
     {
-        read(regAddress, length, handler, 0.0);
-    }   //read
+        final String funcName = "getMaxTransferLength";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API, "=%d", maxTransferLength);
+        }
+
+        return maxTransferLength;
+    }   //getMaxTransferLength
 
     /**
-     * This method queues the read request.
+     * This method sets the number of unrequested registers allowed between two read requests
+     * for them to still be merged into one transaction. By default, only adjacent or overlapping
+     * ranges are merged. A device should only allow a gap if reading the registers in the gap
+     * has no side effect (e.g. no clear-on-read status bits).
      *
-     * @param regAddress specifies the register address to read from.
-     * @param length specifies the number of bytes to read.
+     * @param gap specifies the maximum number of registers between two mergeable requests.
      */
-    public void read(int regAddress, int length)
+    public void setMaxCoalescingGap(int gap)
     {
-        read(regAddress, length, null, 0.0);
-    }   //read
+        final String funcName = "setMaxCoalescingGap";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API, "gap=%d", gap);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        if (gap < 0)
+        {
+            throw new IllegalArgumentException("Coalescing gap must not be negative.");
+        }
+
+        maxCoalescingGap = gap;
+    }   //setMaxCoalescingGap
 
     /**
-     * This method queues the write request.
+     * This method returns the number of requests dropped because they missed their deadlines.
      *
-     * @param regAddress specifies the register address to write to.
-     * @param length specifies the number of bytes to read.
-     * @param writeBuffer specifies the buffer containing the data to be written to the device.
-     * @param handler specifies the completion handler to call when done.
-     *                Can be null if none needed.
-     * @param timeout specifies the timeout for the operation in seconds.
+     * @return number of dropped requests.
      */
-    public void write(int regAddress, int length, byte[] writeBuffer,
-                      CompletionHandler handler, double timeout)
+    public int getDroppedRequestCount()
     {
-        final String funcName = "write";
+        final String funcName = "getDroppedRequestCount";
 
         if (debugEnabled)
         {
-            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API,
-                                "addr=%x,len=%d", regAddress, length);
-            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API, "=%d", droppedRequestCount);
         }
 
-        requestQueue.add(new Request(regAddress, length, writeBuffer, handler, timeout));
-        //
-        // If the PortCommand state machine is not already active, start it.
-        //
-        if (!portCommandSM.isEnabled())
-        {
-            setEnabled(true);
-        }
-    }   //write
+        return droppedRequestCount;
+    }   //getDroppedRequestCount
 
     /**
-     * This method queues the write request.
+     * This method returns the transaction statistics of the whole device.
      *
-     * @param regAddress specifies the register address to write to.
-     * @param length specifies the number of bytes to read.
-     * @param writeBuffer specifies the buffer containing the data to be written to the device.
-     * @param handler specifies the completion handler to call when done.
-     *                Can be null if none needed.
+     * @return transaction statistics of the device.
      */
-    public void write(int regAddress, int length, byte[] writeBuffer, CompletionHandler handler)
+    public TransactionStats getTransactionStats()
     {
-        write(regAddress, length, writeBuffer, handler, 0.0);
-    }   //write
+        return deviceStats;
+    }   //getTransactionStats
 
     /**
-     * This method queues the write request.
+     * This method returns the transaction statistics of a register range. Requests merged
+     * into a coalesced read are accounted to their own register range.
      *
-     * @param regAddress specifies the register address to write to.
-     * @param length specifies the number of bytes to read.
-     * @param writeBuffer specifies the buffer containing the data to be written to the device.
+     * @param regAddress specifies the start of the register range.
+     * @param length specifies the length of the register range.
+     * @return transaction statistics of the register range, null if it was never requested.
      */
-    public void write(int regAddress, int length, byte[] writeBuffer)
+    public TransactionStats getTransactionStats(int regAddress, int length)
     {
-        write(regAddress, length, writeBuffer, null, 0.0);
-    }   //write
+        for (int i = 0; i < numRangeStats; i++)
+        {
+            if (rangeStats[i].regAddress == regAddress && rangeStats[i].length == length)
+            {
+                return rangeStats[i];
+            }
+        }
+
+        return null;
+    }   //getTransactionStats
 
     /**
-     * This method sends a byte command to the device.
+     * This method returns the number of register ranges that have transaction statistics.
      *
-     * @param regAddress specifies the register address to write to.
-     * @param command specifies the command byte.
+     * @return number of register ranges.
      */
-    public void sendByteCommand(int regAddress, byte command)
+    public int getNumTransactionStats()
     {
-        final String funcName = "sendByteCommand";
-        byte[] data = new byte[1];
+        return numRangeStats;
+    }   //getNumTransactionStats
+
+    /**
+     * This method returns the transaction statistics of a register range by index.
+     *
+     * @param index specifies the index between 0 and getNumTransactionStats() - 1.
+     * @return transaction statistics of the register range.
+     */
+    public TransactionStats getTransactionStats(int index)
+    {
+        if (index < 0 || index >= numRangeStats)
+        {
+            throw new IndexOutOfBoundsException("Invalid stats index " + index + ".");
+        }
+
+        return rangeStats[index];
+    }   //getTransactionStats
 
-        data[0] = command;
-        write(regAddress, 1, data);
+    /**
+     * This method clears the transaction statistics of the device and all register ranges.
+     */
+    public void resetTransactionStats()
+    {
+        final String funcName = "resetTransactionStats";
 
         if (debugEnabled)
         {
-            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API, "command=%x", command);
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API);
             dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
         }
-    }   //sendByteCommand
+
+        deviceStats.reset();
+        for (int i = 0; i < numRangeStats; i++)
+        {
+            rangeStats[i].reset();
+        }
+    }   //resetTransactionStats
 
     /**
-     * This method sends a 16-bit command to the device.
+     * This method enables/disables adaptive timeouts. When enabled, requests queued without a
+     * timeout get a timeout derived from the completion latency observed on this device, so a
+     * wedged port can no longer stall the queue forever.
      *
-     * @param regAddress specifies the register address to write to.
-     * @param command specifies the 16-bit command.
+     * @param enabled specifies true to enable adaptive timeouts, false to disable.
      */
-    public void sendWordCommand(int regAddress, short command)
+    public void setAdaptiveTimeoutEnabled(boolean enabled)
     {
-        final String funcName = "sendWordCommand";
-        byte[] data = new byte[2];
-
-        data[0] = (byte)(command & 0xff);
-        data[1] = (byte)(command >> 8);
-        write(regAddress, 2, data);
+        final String funcName = "setAdaptiveTimeoutEnabled";
 
         if (debugEnabled)
         {
-            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API, "command=%x", command);
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API,
+                                "enabled=%s", Boolean.toString(enabled));
             dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
         }
-    }   //sendWordCommand
 
-    //
-    // Implements TrcTaskMgr.Task
-    //
+        adaptiveTimeoutEnabled = enabled;
+    }   //setAdaptiveTimeoutEnabled
 
-    @Override
-    public void startTask(TrcRobot.RunMode runMode)
+    /**
+     * This method returns the adaptive timeout. It is the p99 of the observed completion
+     * latency times a safety margin, clamped to sensible limits. A default is returned until
+     * enough transactions have completed, and the maximum is returned while degraded.
+     *
+     * @return adaptive timeout in seconds.
+     */
+    public double getAdaptiveTimeout()
     {
-    }   //startTask
+        final String funcName = "getAdaptiveTimeout";
+        double timeout = ADAPTIVE_DEFAULT_TIMEOUT;
 
-    @Override
-    public void stopTask(TrcRobot.RunMode runMode)
-    {
-    }   //stopTask
+        if (degraded)
+        {
+            //
+            // The learned latency no longer applies, give the device the most time to recover.
+            //
+            timeout = ADAPTIVE_MAX_TIMEOUT;
+        }
+        else if (serviceTime.getCount() >= ADAPTIVE_MIN_SAMPLES)
+        {
+            timeout = TrcUtil.limit(
+                    serviceTime.getPercentile(99.0)*ADAPTIVE_TIMEOUT_MARGIN,
+                    ADAPTIVE_MIN_TIMEOUT, ADAPTIVE_MAX_TIMEOUT);
+        }
 
-    @Override
-    public void prePeriodicTask(TrcRobot.RunMode runMode)
-    {
-    }   //prePeriodicTask
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API, "=%.3f", timeout);
+        }
+
+        return timeout;
+    }   //getAdaptiveTimeout
+
+    /**
+     * This method sets the retry policy for requests that time out. A timed out request is
+     * queued again after a backoff time that starts at initialBackoff and doubles on every
+     * retry up to maxBackoff. Its completion handler is only called with timedout set when it
+     * has run out of retries. Retries are skipped while the device is degraded.
+     *
+     * @param maxRetries specifies the maximum number of retries per request, 0 for none.
+     * @param initialBackoff specifies the backoff time of the first retry in seconds.
+     * @param maxBackoff specifies the maximum backoff time in seconds.
+     */
+    public void setRetryPolicy(int maxRetries, double initialBackoff, double maxBackoff)
+    {
+        final String funcName = "setRetryPolicy";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API,
+                                "maxRetries=%d,initBackoff=%.3f,maxBackoff=%.3f",
+                                maxRetries, initialBackoff, maxBackoff);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        if (maxRetries < 0 || initialBackoff < 0.0 || maxBackoff < initialBackoff)
+        {
+            throw new IllegalArgumentException("Invalid retry policy.");
+        }
+
+        this.maxRetries = maxRetries;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+    }   //setRetryPolicy
+
+    /**
+     * This method returns the number of times timed out requests have been retried.
+     *
+     * @return number of retries.
+     */
+    public int getTimeoutRetryCount()
+    {
+        final String funcName = "getTimeoutRetryCount";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API, "=%d", retryCount);
+        }
+
+        return retryCount;
+    }   //getTimeoutRetryCount
+
+    /**
+     * This method checks if the device is degraded. A device becomes degraded after several
+     * consecutive bus transactions have timed out, and recovers on the first transaction that
+     * completes. While degraded, timed out requests are not retried.
+     *
+     * @return true if the device is degraded, false otherwise.
+     */
+    public boolean isDegraded()
+    {
+        final String funcName = "isDegraded";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API,
+                               "=%s", Boolean.toString(degraded));
+        }
+
+        return degraded;
+    }   //isDegraded
+
+    /**
+     * This method writes a configuration register through the shadow register cache. If the
+     * cache already holds the same value, the write is suppressed. Otherwise the register is
+     * marked dirty and written before the next request is queued or serviced, together with
+     * the adjacent dirty registers in a single write transaction. Only registers that hold
+     * their value should be written this way. One-shot commands must use sendByteCommand.
+     *
+     * @param regAddress specifies the register address.
+     * @param value specifies the register value.
+     */
+    public void writeCachedRegister(int regAddress, byte value)
+    {
+        final String funcName = "writeCachedRegister";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API,
+                                "addr=%x,value=%x", regAddress, value);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        if (regAddress < 0 || regAddress >= NUM_REGISTERS)
+        {
+            throw new IllegalArgumentException("Invalid register address " + regAddress + ".");
+        }
+
+        if (shadowValid[regAddress] && shadowRegisters[regAddress] == value)
+        {
+            suppressedWriteCount++;
+        }
+        else
+        {
+            shadowRegisters[regAddress] = value;
+            shadowValid[regAddress] = true;
+            if (!shadowDirty[regAddress])
+            {
+                shadowDirty[regAddress] = true;
+                numDirtyRegisters++;
+            }
+
+            if (!portCommandSM.isEnabled())
+            {
+                setEnabled(true);
+            }
+        }
+    }   //writeCachedRegister
+
+    /**
+     * This method writes a 16-bit configuration register pair through the shadow register
+     * cache. The low byte is written to regAddress and the high byte to regAddress + 1.
+     *
+     * @param regAddress specifies the address of the low byte register.
+     * @param value specifies the 16-bit register value.
+     */
+    public void writeCachedRegister16(int regAddress, short value)
+    {
+        writeCachedRegister(regAddress, (byte)(value & 0xff));
+        writeCachedRegister(regAddress + 1, (byte)(value >> 8));
+    }   //writeCachedRegister16
+
+    /**
+     * This method invalidates the shadow register cache, so that the next cached write of every
+     * register goes to the device. Call this after the device has been reset or power cycled.
+     * Registers that are still waiting to be written are written anyway.
+     */
+    public void invalidateRegisterCache()
+    {
+        final String funcName = "invalidateRegisterCache";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        for (int i = 0; i < NUM_REGISTERS; i++)
+        {
+            if (!shadowDirty[i])
+            {
+                shadowValid[i] = false;
+            }
+        }
+    }   //invalidateRegisterCache
+
+    /**
+     * This method returns the number of cached register writes suppressed because the register
+     * already had the value.
+     *
+     * @return number of suppressed writes.
+     */
+    public int getSuppressedWriteCount()
+    {
+        final String funcName = "getSuppressedWriteCount";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API, "=%d", suppressedWriteCount);
+        }
+
+        return suppressedWriteCount;
+    }   //getSuppressedWriteCount
+
+    /**
+     * This method enables/disables the internal port command state machine and its task.
+     *
+     * @param enabled specifies true to enable the state machine and task, false otherwise.
+     */
+    private void setEnabled(boolean enabled)
+    {
+        if (enabled)
+        {
+            TrcTaskMgr.getInstance().registerTask(
+                    instanceName, this, TrcTaskMgr.TaskType.PRECONTINUOUS_TASK);
+            portCommandSM.start(PortCommandState.START);
+        }
+        else
+        {
+            portCommandSM.stop();
+            TrcTaskMgr.getInstance().unregisterTask(
+                    this, TrcTaskMgr.TaskType.PRECONTINUOUS_TASK);
+        }
+    }   //setEnabled
+
+    /**
+     * This method checks if a bus transaction is in progress on the port.
+     *
+     * @return true if a port command has been set up or sent, false otherwise.
+     */
+    boolean isTransactionPending()
+    {
+        Object state = portCommandSM.getState();
+
+        return portCommandSM.isEnabled() &&
+               (state == PortCommandState.SEND_PORT_COMMAND ||
+                state == PortCommandState.WAIT_PORT_COMMAND_COMPLETE);
+    }   //isTransactionPending
+
+    /**
+     * This method returns the number of requests waiting in the queue.
+     *
+     * @return number of queued requests.
+     */
+    int getQueueDepth()
+    {
+        return queueSize;
+    }   //getQueueDepth
+
+    /**
+     * This method queues the read request.
+     *
+     * @param regAddress specifies the register address to read from.
+     * @param length specifies the number of bytes to read.
+     * @param handler specifies the completion handler to call when done.
+     *                Can be null if none needed.
+     * @param timeout specifies the timeout for the operation in seconds.
+     * @param priority specifies the request priority (e.g. PRIORITY_NORMAL).
+     * @param deadline specifies the time in seconds by which the request must be started. If the
+     *                 deadline is missed, the request is dropped and the completion handler is
+     *                 called with timedout set to true. It can be set to 0 if there is no deadline.
+     */
+    public void read(int regAddress, int length, CompletionHandler handler, double timeout,
+                     int priority, double deadline)
+    {
+        final String funcName = "read";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API,
+                                "addr=%x,len=%d,pri=%d,deadline=%.3f",
+                                regAddress, length, priority, deadline);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        flushDirtyRegisters();
+        Request request = allocRequest();
+        request.init(regAddress, length, null, handler, timeout, priority, deadline);
+        queueRequest(request);
+    }   //read
+
+    /**
+     * This method queues the read request.
+     *
+     * @param regAddress specifies the register address to read from.
+     * @param length specifies the number of bytes to read.
+     * @param handler specifies the completion handler to call when done.
+     *                Can be null if none needed.
+     * @param timeout specifies the timeout for the operation in seconds.
+     */
+    public void read(int regAddress, int length, CompletionHandler handler, double timeout)
+    {
+        read(regAddress, length, handler, timeout, PRIORITY_NORMAL, 0.0);
+    }   //read
+
+    /**
+     * This method queues the read request.
+     *
+     * @param regAddress specifies the register address to read from.
+     * @param length specifies the number of bytes to read.
+     * @param handler specifies the completion handler to call when done.
+     *                Can be null if none needed.
+     */
+    public void read(int regAddress, int length, CompletionHandler handler)
+    {
+        read(regAddress, length, handler, 0.0);
+    }   //read
+
+    /**
+     * This method queues the read request.
+     *
+     * @param regAddress specifies the register address to read from.
+     * @param length specifies the number of bytes to read.
+     */
+    public void read(int regAddress, int length)
+    {
+        read(regAddress, length, null, 0.0);
+    }   //read
+
+    /**
+     * This method queues a periodic read request. The request is serviced once every period
+     * instead of being re-issued immediately on completion, so the port is free for other
+     * requests in between. The read keeps repeating as long as the completion handler returns
+     * true. If the port falls behind, missed periods are skipped rather than serviced in a burst.
+     *
+     * @param regAddress specifies the register address to read from.
+     * @param length specifies the number of bytes to read.
+     * @param handler specifies the completion handler to call when done.
+     * @param period specifies the read period in seconds.
+     * @param timeout specifies the timeout for the operation in seconds.
+     * @param priority specifies the request priority (e.g. PRIORITY_NORMAL).
+     */
+    public void readPeriodic(int regAddress, int length, CompletionHandler handler,
+                             double period, double timeout, int priority)
+    {
+        final String funcName = "readPeriodic";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API,
+                                "addr=%x,len=%d,period=%.3f,pri=%d",
+                                regAddress, length, period, priority);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        if (handler == null)
+        {
+            throw new IllegalArgumentException("Periodic read must have a completion handler.");
+        }
+
+        if (period <= 0.0)
+        {
+            throw new IllegalArgumentException("Read period must be positive.");
+        }
+
+        flushDirtyRegisters();
+        Request request = allocRequest();
+        request.init(regAddress, length, null, handler, timeout, priority, 0.0);
+        request.period = period;
+        queueRequest(request);
+    }   //readPeriodic
+
+    /**
+     * This method queues a periodic read request.
+     *
+     * @param regAddress specifies the register address to read from.
+     * @param length specifies the number of bytes to read.
+     * @param handler specifies the completion handler to call when done.
+     * @param period specifies the read period in seconds.
+     */
+    public void readPeriodic(int regAddress, int length, CompletionHandler handler, double period)
+    {
+        readPeriodic(regAddress, length, handler, period, 0.0, PRIORITY_NORMAL);
+    }   //readPeriodic
+
+    /**
+     * This method queues the write request.
+     *
+     * @param regAddress specifies the register address to write to.
+     * @param length specifies the number of bytes to read.
+     * @param writeBuffer specifies the buffer containing the data to be written to the device.
+     * @param handler specifies the completion handler to call when done.
+     *                Can be null if none needed.
+     * @param timeout specifies the timeout for the operation in seconds.
+     * @param priority specifies the request priority (e.g. PRIORITY_NORMAL).
+     * @param deadline specifies the time in seconds by which the request must be started. If the
+     *                 deadline is missed, the request is dropped and the completion handler is
+     *                 called with timedout set to true. It can be set to 0 if there is no deadline.
+     */
+    public void write(int regAddress, int length, byte[] writeBuffer,
+                      CompletionHandler handler, double timeout, int priority, double deadline)
+    {
+        final String funcName = "write";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API,
+                                "addr=%x,len=%d,pri=%d,deadline=%.3f",
+                                regAddress, length, priority, deadline);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        flushDirtyRegisters();
+        invalidateShadowRegisters(regAddress, length);
+        Request request = allocRequest();
+        request.init(regAddress, length, writeBuffer, handler, timeout, priority, deadline);
+        queueRequest(request);
+    }   //write
+
+    /**
+     * This method queues the write request.
+     *
+     * @param regAddress specifies the register address to write to.
+     * @param length specifies the number of bytes to read.
+     * @param writeBuffer specifies the buffer containing the data to be written to the device.
+     * @param handler specifies the completion handler to call when done.
+     *                Can be null if none needed.
+     * @param timeout specifies the timeout for the operation in seconds.
+     */
+    public void write(int regAddress, int length, byte[] writeBuffer,
+                      CompletionHandler handler, double timeout)
+    {
+        write(regAddress, length, writeBuffer, handler, timeout, PRIORITY_NORMAL, 0.0);
+    }   //write
+
+    /**
+     * This method queues the write request.
+     *
+     * @param regAddress specifies the register address to write to.
+     * @param length specifies the number of bytes to read.
+     * @param writeBuffer specifies the buffer containing the data to be written to the device.
+     * @param handler specifies the completion handler to call when done.
+     *                Can be null if none needed.
+     */
+    public void write(int regAddress, int length, byte[] writeBuffer, CompletionHandler handler)
+    {
+        write(regAddress, length, writeBuffer, handler, 0.0);
+    }   //write
+
+    /**
+     * This method queues the write request.
+     *
+     * @param regAddress specifies the register address to write to.
+     * @param length specifies the number of bytes to read.
+     * @param writeBuffer specifies the buffer containing the data to be written to the device.
+     */
+    public void write(int regAddress, int length, byte[] writeBuffer)
+    {
+        write(regAddress, length, writeBuffer, null, 0.0);
+    }   //write
+
+    /**
+     * This method sends a byte command to the device. Commands are one-shot requests, so they
+     * are queued with high priority and are not held up behind repeating reads.
+     *
+     * @param regAddress specifies the register address to write to.
+     * @param command specifies the command byte.
+     */
+    public void sendByteCommand(int regAddress, byte command)
+    {
+        final String funcName = "sendByteCommand";
+
+        flushDirtyRegisters();
+        invalidateShadowRegisters(regAddress, 1);
+        Request request = allocRequest();
+
+        request.commandBuffer[0] = command;
+        request.init(regAddress, 1, request.commandBuffer, null, 0.0, PRIORITY_HIGH, 0.0);
+        queueRequest(request);
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API, "command=%x", command);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+    }   //sendByteCommand
+
+    /**
+     * This method sends a 16-bit command to the device. Commands are queued with high priority.
+     *
+     * @param regAddress specifies the register address to write to.
+     * @param command specifies the 16-bit command.
+     */
+    public void sendWordCommand(int regAddress, short command)
+    {
+        final String funcName = "sendWordCommand";
+
+        flushDirtyRegisters();
+        invalidateShadowRegisters(regAddress, 2);
+        Request request = allocRequest();
+
+        request.commandBuffer[0] = (byte)(command & 0xff);
+        request.commandBuffer[1] = (byte)(command >> 8);
+        request.init(regAddress, 2, request.commandBuffer, null, 0.0, PRIORITY_HIGH, 0.0);
+        queueRequest(request);
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API, "command=%x", command);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+    }   //sendWordCommand
+
+    /**
+     * This method queues a read request and returns its future.
+     *
+     * @param regAddress specifies the register address to read from.
+     * @param length specifies the number of bytes to read.
+     * @param timeout specifies the timeout for the operation in seconds.
+     * @param event specifies the event to signal on completion, null if none needed.
+     * @return future of the read request.
+     */
+    public TrcI2cFuture readAsync(int regAddress, int length, double timeout, TrcEvent event)
+    {
+        TrcI2cFuture future = new TrcI2cFuture(regAddress, length, event);
+
+        read(regAddress, length, future, timeout);
+
+        return future;
+    }   //readAsync
+
+    /**
+     * This method queues a write request and returns its future.
+     *
+     * @param regAddress specifies the register address to write to.
+     * @param length specifies the number of bytes to write.
+     * @param writeBuffer specifies the buffer containing the data to be written to the device.
+     * @param timeout specifies the timeout for the operation in seconds.
+     * @param event specifies the event to signal on completion, null if none needed.
+     * @return future of the write request.
+     */
+    public TrcI2cFuture writeAsync(
+            int regAddress, int length, byte[] writeBuffer, double timeout, TrcEvent event)
+    {
+        TrcI2cFuture future = new TrcI2cFuture(regAddress, length, event);
+
+        write(regAddress, length, writeBuffer, future, timeout);
+
+        return future;
+    }   //writeAsync
+
+    /**
+     * This method queues a batch of read requests at once and returns their futures. Since
+     * they are all queued before any of them is serviced, adjacent ranges are coalesced into
+     * fewer bus transactions.
+     *
+     * @param regAddresses specifies the register addresses to read from.
+     * @param lengths specifies the number of bytes to read from each register address.
+     * @param timeout specifies the timeout of each read in seconds.
+     * @return futures of the read requests in the same order.
+     */
+    public TrcI2cFuture[] readAll(int[] regAddresses, int[] lengths, double timeout)
+    {
+        final String funcName = "readAll";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API,
+                                "count=%d,timeout=%.3f", regAddresses.length, timeout);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        if (regAddresses.length != lengths.length)
+        {
+            throw new IllegalArgumentException("Address and length arrays must be the same size.");
+        }
+
+        TrcI2cFuture[] futures = new TrcI2cFuture[regAddresses.length];
+        for (int i = 0; i < futures.length; i++)
+        {
+            futures[i] = readAsync(regAddresses[i], lengths[i], timeout, null);
+        }
+
+        return futures;
+    }   //readAll
+
+    /**
+     * This method blocks until all the futures have completed or the wait times out. It is
+     * meant for initialization code, when the task manager is not running yet, so it runs the
+     * port command state machine of this device itself while waiting. It must not be called
+     * from a task or a completion handler.
+     *
+     * @param futures specifies the futures of requests queued on this device.
+     * @param timeout specifies the maximum time to wait in seconds, 0 to wait forever.
+     * @return true if all requests completed without timing out, false otherwise.
+     */
+    public boolean waitForAll(TrcI2cFuture[] futures, double timeout)
+    {
+        final String funcName = "waitForAll";
+        double expiredTime = timeout > 0.0? HalUtil.getCurrentTime() + timeout: 0.0;
+        boolean done = false;
+        boolean success = true;
+
+        while (!done)
+        {
+            if (portCommandSM.isEnabled())
+            {
+                runPortCommand();
+            }
+
+            done = true;
+            for (int i = 0; i < futures.length; i++)
+            {
+                if (!futures[i].isDone())
+                {
+                    done = false;
+                    break;
+                }
+            }
+
+            if (!done)
+            {
+                if (expiredTime != 0.0 && HalUtil.getCurrentTime() > expiredTime)
+                {
+                    success = false;
+                    break;
+                }
+                HalUtil.sleep(WAIT_POLL_INTERVAL);
+            }
+        }
+
+        for (int i = 0; success && i < futures.length; i++)
+        {
+            success = futures[i].isSuccessful();
+        }
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API,
+                                "count=%d,timeout=%.3f", futures.length, timeout);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API,
+                               "=%s", Boolean.toString(success));
+        }
+
+        return success;
+    }   //waitForAll
+
+    /**
+     * This method blocks until the future has completed or the wait times out. See waitForAll.
+     *
+     * @param future specifies the future of a request queued on this device.
+     * @param timeout specifies the maximum time to wait in seconds, 0 to wait forever.
+     * @return true if the request completed without timing out, false otherwise.
+     */
+    public boolean waitForCompletion(TrcI2cFuture future, double timeout)
+    {
+        return waitForAll(new TrcI2cFuture[]{future}, timeout);
+    }   //waitForCompletion
+
+    /**
+     * This method queues write requests for all dirty registers in the shadow register cache.
+     * Adjacent dirty registers are combined into one write transaction up to the maximum
+     * transfer length. The writes are queued with high priority like commands.
+     */
+    private void flushDirtyRegisters()
+    {
+        int regAddress = 0;
+
+        while (numDirtyRegisters > 0 && regAddress < NUM_REGISTERS)
+        {
+            if (!shadowDirty[regAddress])
+            {
+                regAddress++;
+                continue;
+            }
+
+            int length = 0;
+            while (regAddress + length < NUM_REGISTERS && shadowDirty[regAddress + length] &&
+                   (maxTransferLength == 0 || length < maxTransferLength))
+            {
+                length++;
+            }
+
+            Request request = allocRequest();
+            if (request.commandBuffer.length < length)
+            {
+                request.commandBuffer = new byte[length];
+            }
+
+            for (int i = 0; i < length; i++)
+            {
+                request.commandBuffer[i] = shadowRegisters[regAddress + i];
+                shadowDirty[regAddress + i] = false;
+            }
+            numDirtyRegisters -= length;
+
+            request.init(regAddress, length, request.commandBuffer, null, 0.0, PRIORITY_HIGH, 0.0);
+            request.cached = true;
+            queueRequest(request);
+            regAddress += length;
+        }
+    }   //flushDirtyRegisters
+
+    /**
+     * This method invalidates a range of the shadow register cache, for example because the
+     * registers are written without going through the cache or a cached write has failed.
+     *
+     * @param regAddress specifies the start of the register range.
+     * @param length specifies the number of registers.
+     */
+    private void invalidateShadowRegisters(int regAddress, int length)
+    {
+        for (int i = Math.max(regAddress, 0); i < Math.min(regAddress + length, NUM_REGISTERS); i++)
+        {
+            shadowValid[i] = false;
+        }
+    }   //invalidateShadowRegisters
+
+    /**
+     * This method updates the valid entries of the shadow register cache with the register
+     * values just read from the device, so the cache follows registers changed by the device
+     * itself, e.g. after a reset. Dirty registers are left alone since they are yet to be
+     * written.
+     */
+    private void refreshShadowRegisters()
+    {
+        for (int i = 0; i < dataRead.limit() && currRegAddress + i < NUM_REGISTERS; i++)
+        {
+            int regAddress = currRegAddress + i;
 
-    @Override
-    public void postPeriodicTask(TrcRobot.RunMode runMode)
+            if (shadowValid[regAddress] && !shadowDirty[regAddress])
+            {
+                shadowRegisters[regAddress] = dataRead.get(i);
+            }
+        }
+    }   //refreshShadowRegisters
+
+    /**
+     * This method gets a request object from the pool, or creates a new one if the pool is empty.
+     *
+     * @return request object.
+     */
+    private Request allocRequest()
     {
-    }   //postPeriodicTask
+        return poolSize > 0? requestPool[--poolSize]: new Request();
+    }   //allocRequest
 
     /**
-     * This method is called periodically to run the PortCommand state machines.
+     * This method returns a completed request object to the pool.
      *
-     * @param runMode specifies the competition mode that is running.
+     * @param request specifies the request object to be recycled.
      */
-    @Override
-    public void preContinuousTask(TrcRobot.RunMode runMode)
+    private void freeRequest(Request request)
     {
-        final String funcName = "preContinuousTask";
+        request.writeBuffer = null;
+        request.handler = null;
+        if (poolSize == requestPool.length)
+        {
+            requestPool = Arrays.copyOf(requestPool, requestPool.length*2);
+        }
+        requestPool[poolSize++] = request;
+    }   //freeRequest
 
-        if (debugEnabled)
+    /**
+     * This method adds the request to the end of the queue and starts the PortCommand state
+     * machine if it is not already active.
+     *
+     * @param request specifies the request to be queued.
+     */
+    private void queueRequest(Request request)
+    {
+        if (queueSize == requestQueue.length)
         {
-            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.TASK,
-                                "runMode=%s", runMode.toString());
-            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.TASK);
+            //
+            // The ring buffer is full, double its size and unwrap the entries.
+            //
+            Request[] newQueue = new Request[requestQueue.length*2];
+            for (int i = 0; i < queueSize; i++)
+            {
+                newQueue[i] = getQueuedRequest(i);
+            }
+            requestQueue = newQueue;
+            queueHead = 0;
+        }
+        double currTime = getCurrentTime();
+        if (request.retryTime > 0.0)
+        {
+            //
+            // A retry keeps its schedule and deadline, it just waits for its backoff time.
+            //
+        }
+        else if (request.period > 0.0)
+        {
+            //
+            // Schedule the next period of a periodic request. A new request is due immediately.
+            // If we have fallen behind, skip the missed periods.
+            //
+            request.startTime = request.startTime == 0.0?
+                    currTime: Math.max(request.startTime + request.period, currTime);
+        }
+        if (request.retryTime == 0.0)
+        {
+            request.queuedTime = Math.max(request.startTime, currTime);
+            request.deadlineTime = request.deadline > 0.0?
+                    request.queuedTime + request.deadline: 0.0;
+        }
+        requestQueue[(queueHead + queueSize) & (requestQueue.length - 1)] = request;
+        queueSize++;
+        //
+        // If the PortCommand state machine is not already active, start it.
+        //
+        if (!portCommandSM.isEnabled())
+        {
+            setEnabled(true);
+        }
+    }   //queueRequest
+
+    /**
+     * This method checks if a queued request is due for service. Periodic requests are not due
+     * before their next period and retries are not due before their backoff time has passed.
+     *
+     * @param request specifies the queued request.
+     * @param currTime specifies the current time.
+     * @return true if the request is due, false otherwise.
+     */
+    private boolean isDue(Request request, double currTime)
+    {
+        return request.startTime <= currTime && request.retryTime <= currTime;
+    }   //isDue
+
+    /**
+     * This method returns the queued request at the specified position without removing it.
+     *
+     * @param index specifies the position in the queue, zero being the head of the queue.
+     * @return queued request.
+     */
+    private Request getQueuedRequest(int index)
+    {
+        return requestQueue[(queueHead + index) & (requestQueue.length - 1)];
+    }   //getQueuedRequest
+
+    /**
+     * This method removes the queued request at the specified position. Requests behind it are
+     * moved forward so that the queue order is preserved.
+     *
+     * @param index specifies the position in the queue, zero being the head of the queue.
+     * @return removed request, null if the queue is empty.
+     */
+    private Request removeQueuedRequest(int index)
+    {
+        Request request = null;
+
+        if (index < queueSize)
+        {
+            int mask = requestQueue.length - 1;
+
+            request = getQueuedRequest(index);
+            if (index == 0)
+            {
+                requestQueue[queueHead] = null;
+                queueHead = (queueHead + 1) & mask;
+            }
+            else
+            {
+                for (int i = index; i < queueSize - 1; i++)
+                {
+                    requestQueue[(queueHead + i) & mask] = requestQueue[(queueHead + i + 1) & mask];
+                }
+                requestQueue[(queueHead + queueSize - 1) & mask] = null;
+            }
+            queueSize--;
+        }
+
+        return request;
+    }   //removeQueuedRequest
+
+    /**
+     * This method removes and returns the next request to be serviced. The request with the
+     * highest priority is selected. Among requests of the same priority, the one with the
+     * earliest deadline is selected, and requests without a deadline are selected in the order
+     * they were queued. Priorities and deadlines only reorder requests up to the first queued
+     * write: the scan stops at that write, so no request is ever serviced ahead of a write that
+     * was queued before it. The write itself may still be selected ahead of earlier reads.
+     * Periodic requests are not considered until they are due. Requests that have already
+     * missed their deadlines are removed from the queue and collected in droppedRequests.
+     *
+     * @return selected request, null if the queue is empty.
+     */
+    private Request selectNextRequest()
+    {
+        double currTime = getCurrentTime();
+        Request selected = null;
+        int selectedIndex = -1;
+
+        for (int i = 0; i < queueSize; i++)
+        {
+            Request request = getQueuedRequest(i);
+            boolean due = isDue(request, currTime);
+
+            if (due && request.deadlineTime != 0.0 && currTime > request.deadlineTime)
+            {
+                removeQueuedRequest(i);
+                i--;
+                droppedRequests.add(request);
+                continue;
+            }
+            else if (due &&
+                     (selected == null ||
+                      request.priority > selected.priority ||
+                      request.priority == selected.priority &&
+                      request.deadlineTime != 0.0 &&
+                      (selected.deadlineTime == 0.0 ||
+                       request.deadlineTime < selected.deadlineTime)))
+            {
+                selected = request;
+                selectedIndex = i;
+            }
+
+            if (request.writeBuffer != null)
+            {
+                //
+                // A write is a barrier, nothing queued after it may be serviced before it,
+                // even if the write itself is still waiting for its retry backoff.
+                //
+                break;
+            }
+        }
+
+        return selected == null? null: removeQueuedRequest(selectedIndex);
+    }   //selectNextRequest
+
+    /**
+     * This method notifies the completion handlers of the requests that missed their deadlines
+     * and returns them to the pool. Requests asking to be repeated are queued again with a new
+     * deadline.
+     */
+    private void completeDroppedRequests()
+    {
+        for (int i = 0; i < droppedRequests.size(); i++)
+        {
+            Request request = droppedRequests.get(i);
+
+            droppedRequestCount++;
+            request.expired = true;
+            completeRequest(request, null, getCurrentTime());
+        }
+        droppedRequests.clear();
+    }   //completeDroppedRequests
+
+    /**
+     * This method determines the bus transaction for the request selected for service. If it
+     * is a read request, other queued read requests with the same timeout whose register
+     * ranges are adjacent to or overlapping the transaction range are removed from the queue
+     * and merged into the same transaction. Periodic requests that are not yet due are left in
+     * the queue. The scan stops at the first write request so that reads are never moved ahead
+     * of a write.
+     *
+     * @param request specifies the request selected for service.
+     */
+    private void coalesceReads(Request request)
+    {
+        coalescedRequests.clear();
+        request.expired = false;
+        coalescedRequests.add(request);
+        currRegAddress = request.regAddress;
+        currLength = request.length;
+
+        if (request.writeBuffer == null && maxTransferLength > 0)
+        {
+            double currTime = getCurrentTime();
+            boolean merged;
+
+            do
+            {
+                merged = false;
+                for (int i = 0; i < queueSize; i++)
+                {
+                    Request req = getQueuedRequest(i);
+
+                    if (req.writeBuffer != null)
+                    {
+                        break;
+                    }
+
+                    if (isDue(req, currTime) &&
+                        req.timeout == request.timeout &&
+                        req.regAddress <= currRegAddress + currLength + maxCoalescingGap &&
+                        currRegAddress <= req.regAddress + req.length + maxCoalescingGap)
+                    {
+                        int startAddress = Math.min(currRegAddress, req.regAddress);
+                        int endAddress = Math.max(currRegAddress + currLength,
+                                                  req.regAddress + req.length);
+
+                        if (endAddress - startAddress <= maxTransferLength)
+                        {
+                            removeQueuedRequest(i);
+                            i--;
+                            req.expired = false;
+                            coalescedRequests.add(req);
+                            currRegAddress = startAddress;
+                            currLength = endAddress - startAddress;
+                            merged = true;
+                        }
+                    }
+                }
+            } while (merged);
+        }
+    }   //coalesceReads
+
+    /**
+     * This method marks all requests serviced by the current bus transaction as timed out.
+     * Unlike requests dropped for missing their deadline, these may be retried.
+     */
+    private void setExpired()
+    {
+        for (int i = 0; i < coalescedRequests.size(); i++)
+        {
+            Request request = coalescedRequests.get(i);
+
+            request.expired = true;
+            request.timedout = true;
+        }
+    }   //setExpired
+
+    /**
+     * This method calls the completion handler of the request. Read requests that ask to be
+     * repeated are put back to the queue, periodic ones scheduled for their next period. All
+     * others are returned to the pool.
+     *
+     * @param request specifies the completed request.
+     * @param data specifies the data read for a read request, null if none.
+     * @param timestamp specifies the timestamp of the data.
+     */
+    private void completeRequest(Request request, ByteBuffer data, double timestamp)
+    {
+        boolean repeat = false;
+
+        if (request.timedout && !degraded && request.retries < maxRetries)
+        {
+            //
+            // Retry the timed out request after a backoff time that doubles on each retry.
+            // Requests dropped for missing their deadline are not retried, the deadline has
+            // passed and would only be missed again.
+            //
+            double backoff = Math.min(initialBackoff*(1 << request.retries), maxBackoff);
+
+            request.retries++;
+            request.retryTime = getCurrentTime() + backoff;
+            request.expired = false;
+            request.timedout = false;
+            retryCount++;
+            recordTimeoutRetry(request);
+            queueRequest(request);
+            return;
+        }
+        request.retries = 0;
+        request.retryTime = 0.0;
+        request.timedout = false;
+
+        if (request.cached && request.expired)
+        {
+            //
+            // The cached write may not have reached the device, make sure it is written again.
+            //
+            invalidateShadowRegisters(request.regAddress, request.length);
+        }
+
+        if (request.handler != null)
+        {
+            if (request.writeBuffer == null)
+            {
+                if (data != null)
+                {
+                    data.rewind();
+                }
+
+                if (request.handler.readCompletion(
+                        request.regAddress, request.length, timestamp, data, request.expired))
+                {
+                    //
+                    // Repeat this read request.
+                    //
+                    queueRequest(request);
+                    repeat = true;
+                }
+            }
+            else
+            {
+                request.handler.writeCompletion(
+                        request.regAddress, request.length, request.expired);
+            }
+        }
+
+        if (!repeat)
+        {
+            freeRequest(request);
+        }
+    }   //completeRequest
+
+    /**
+     * This method records a timeout retry of the request for the device and for the register
+     * range of the request.
+     *
+     * @param request specifies the request being retried.
+     */
+    private void recordTimeoutRetry(Request request)
+    {
+        TransactionStats stats = getTransactionStats(request.regAddress, request.length);
+
+        deviceStats.recordTimeoutRetry();
+        if (stats != null)
+        {
+            stats.recordTimeoutRetry();
+        }
+    }   //recordTimeoutRetry
+
+    /**
+     * This method records the statistics of the current bus transaction for the device and for
+     * the register range of every request serviced by it. Statistics of new register ranges are
+     * only kept while there is room for them.
+     */
+    private void recordTransactionStats()
+    {
+        double currTime = getCurrentTime();
+        double send = (commandSentTime > 0.0? commandSentTime: currTime) - transactionStartTime;
+        double wait = commandSentTime > 0.0? currTime - commandSentTime: -1.0;
+
+        deviceStats.record(
+                transactionStartTime - currRequest.queuedTime, send, wait, currRequest.expired,
+                transactionRepolls,
+                currRequest.writeBuffer == null? currLength: currRequest.length);
+
+        for (int i = 0; i < coalescedRequests.size(); i++)
+        {
+            Request request = coalescedRequests.get(i);
+            TransactionStats stats = getTransactionStats(request.regAddress, request.length);
+
+            if (stats == null && numRangeStats < rangeStats.length)
+            {
+                stats = new TransactionStats(request.regAddress, request.length);
+                rangeStats[numRangeStats++] = stats;
+            }
+
+            if (stats != null)
+            {
+                stats.record(
+                        transactionStartTime - request.queuedTime, send, wait, request.expired,
+                        transactionRepolls, request.length);
+            }
+        }
+
+        if (currRequest.expired)
+        {
+            consecutiveFailures++;
+            if (consecutiveFailures >= DEGRADED_FAILURE_COUNT)
+            {
+                degraded = true;
+            }
+        }
+        else
+        {
+            serviceTime.addSample(currTime - transactionStartTime);
+            consecutiveFailures = 0;
+            degraded = false;
+        }
+    }   //recordTransactionStats
+
+    /**
+     * This method calls the completion handlers of all requests serviced by the current bus
+     * transaction. For a coalesced read, each handler receives only the portion of the data
+     * covering its own register range.
+     */
+    private void completeRequests()
+    {
+        double timestamp = getCurrentTime();
+
+        if (currRequest.writeBuffer == null && !currRequest.expired && dataRead != null)
+        {
+            refreshShadowRegisters();
+        }
+
+        for (int i = 0; i < coalescedRequests.size(); i++)
+        {
+            Request request = coalescedRequests.get(i);
+            ByteBuffer data = dataRead;
+
+            if (coalescedRequests.size() > 1)
+            {
+                int offset = request.regAddress - currRegAddress;
+
+                if (request.expired || dataRead == null ||
+                    dataRead.limit() < offset + request.length)
+                {
+                    data = null;
+                }
+                else
+                {
+                    if (requestData.length < request.length)
+                    {
+                        requestData = new byte[request.length];
+                        requestDataView = ByteBuffer.wrap(requestData).asReadOnlyBuffer();
+                    }
+
+                    for (int j = 0; j < request.length; j++)
+                    {
+                        requestData[j] = dataRead.get(offset + j);
+                    }
+                    requestDataView.clear();
+                    requestDataView.limit(request.length);
+                    data = requestDataView;
+                }
+            }
+            completeRequest(request, data, timestamp);
         }
+        coalescedRequests.clear();
+    }   //completeRequests
+
+    /**
+     * This method runs one step of the PortCommand state machine. It is called by the device
+     * task.
+     */
+    void runPortCommand()
+    {
+        final String funcName = "runPortCommand";
 
         if (portCommandSM.isReady())
         {
@@ -436,29 +1975,46 @@ public abstract class TrcI2cDevice implements TrcTaskMgr.Task
             {
                 case START:
                     //
-                    // Dequeue a request from the beginning of the queue.
+                    // Queue the dirty cached registers, then dequeue the most urgent request
+                    // and drop the ones that missed their deadlines.
                     //
-                    currRequest = requestQueue.poll();
+                    flushDirtyRegisters();
+                    currRequest = selectNextRequest();
+                    completeDroppedRequests();
                     if (currRequest == null)
                     {
                         //
-                        // There is no request in the queue, we are done.
+                        // There is no request in the queue, we are done. But if a dropped
+                        // request has been queued again or a periodic request is not yet due,
+                        // stay here to service it.
                         //
-                        portCommandSM.setState(PortCommandState.DONE);
+                        if (queueSize == 0)
+                        {
+                            portCommandSM.setState(PortCommandState.DONE);
+                        }
                         break;
                     }
                     else
                     {
+                        coalesceReads(currRequest);
                         if (debugEnabled)
                         {
-                            dbgTrace.traceInfo(funcName, "%s", state.toString());
+                            dbgTrace.traceInfo(funcName, "%s: %d request(s) in transaction.",
+                                               state.toString(), coalescedRequests.size());
                         }
+                        transactionStartTime = getCurrentTime();
+                        commandSentTime = 0.0;
+                        transactionRepolls = 0;
                         expiredTime = currRequest.timeout;
+                        if (expiredTime == 0.0 && adaptiveTimeoutEnabled)
+                        {
+                            expiredTime = getAdaptiveTimeout();
+                        }
+
                         if (expiredTime != 0.0)
                         {
-                            expiredTime += HalUtil.getCurrentTime();
+                            expiredTime += transactionStartTime;
                         }
-                        currRequest.expired = false;
                         portCommandSM.setState(PortCommandState.SEND_PORT_COMMAND);
                         state = (PortCommandState)portCommandSM.getState();
                     }
@@ -474,8 +2030,7 @@ public abstract class TrcI2cDevice implements TrcTaskMgr.Task
                         if (debugEnabled)
                         {
                             dbgTrace.traceInfo(funcName, "%s: Request(addr=%x,len=%d,%s)",
-                                               state.toString(), currRequest.regAddress,
-                                               currRequest.length,
+                                               state.toString(), currRegAddress, currLength,
                                                currRequest.writeBuffer == null? "read": "write");
                         }
 
@@ -485,7 +2040,7 @@ public abstract class TrcI2cDevice implements TrcTaskMgr.Task
                             //
                             // It's a read request, setup a read command.
                             //
-                            sendReadCommand(currRequest.regAddress, currRequest.length);
+                            sendReadCommand(currRegAddress, currLength);
                         }
                         else
                         {
@@ -496,11 +2051,12 @@ public abstract class TrcI2cDevice implements TrcTaskMgr.Task
                                              currRequest.length,
                                              currRequest.writeBuffer);
                         }
+                        commandSentTime = getCurrentTime();
                         portCommandSM.setState(PortCommandState.WAIT_PORT_COMMAND_COMPLETE);
                     }
-                    else if (expiredTime != 0.0 && HalUtil.getCurrentTime() > expiredTime)
+                    else if (expiredTime != 0.0 && getCurrentTime() > expiredTime)
                     {
-                        currRequest.expired = true;
+                        setExpired();
                         portCommandSM.setState(PortCommandState.PORT_COMMAND_COMPLETED);
                         if (debugEnabled)
                         {
@@ -538,7 +2094,7 @@ public abstract class TrcI2cDevice implements TrcTaskMgr.Task
                             // buffer length against the requested length. If it's not ready,
                             // remain in this state until we have valid data or timed out.
                             //
-                            if (dataRead.length == currRequest.length)
+                            if (dataRead.limit() == currLength)
                             {
                                 //
                                 // We have valid data, the request is completed.
@@ -547,14 +2103,14 @@ public abstract class TrcI2cDevice implements TrcTaskMgr.Task
                                 if (debugEnabled)
                                 {
                                     dbgTrace.traceInfo(
-                                            funcName, "%s: read command completed. %s",
-                                            state.toString(), Arrays.toString(dataRead));
+                                            funcName, "%s: read command completed (len=%d).",
+                                            state.toString(), dataRead.limit());
                                 }
                             }
-                            else if (dataRead.length != currRequest.length &&
-                                     expiredTime != 0.0 && HalUtil.getCurrentTime() > expiredTime)
+                            else if (dataRead.limit() != currLength &&
+                                     expiredTime != 0.0 && getCurrentTime() > expiredTime)
                             {
-                                currRequest.expired = true;
+                                setExpired();
                                 portCommandSM.setState(PortCommandState.PORT_COMMAND_COMPLETED);
                                 if (debugEnabled)
                                 {
@@ -562,11 +2118,18 @@ public abstract class TrcI2cDevice implements TrcTaskMgr.Task
                                             funcName, "%s: Port command timed out.", state.toString());
                                 }
                             }
+                            else
+                            {
+                                //
+                                // The data is not ready yet, poll it again next time.
+                                //
+                                transactionRepolls++;
+                            }
                         }
                     }
-                    else if (expiredTime != 0.0 && HalUtil.getCurrentTime() > expiredTime)
+                    else if (expiredTime != 0.0 && getCurrentTime() > expiredTime)
                     {
-                        currRequest.expired = true;
+                        setExpired();
                         portCommandSM.setState(PortCommandState.PORT_COMMAND_COMPLETED);
                         if (debugEnabled)
                         {
@@ -578,7 +2141,7 @@ public abstract class TrcI2cDevice implements TrcTaskMgr.Task
 
                 case PORT_COMMAND_COMPLETED:
                     //
-                    // The port command is complete, call completion handler if any.
+                    // The port command is complete, call completion handlers if any.
                     //
                     if (debugEnabled)
                     {
@@ -587,27 +2150,8 @@ public abstract class TrcI2cDevice implements TrcTaskMgr.Task
                                 state.toString(), Boolean.toString(currRequest.expired));
                     }
 
-                    if (currRequest.handler != null)
-                    {
-                        if (currRequest.writeBuffer == null)
-                        {
-                            if (currRequest.handler.readCompletion(
-                                    currRequest.regAddress, currRequest.length,
-                                    HalUtil.getCurrentTime(), dataRead, currRequest.expired))
-                            {
-                                //
-                                // Repeat this read request.
-                                //
-                                requestQueue.add(currRequest);
-                            }
-                        }
-                        else
-                        {
-                            currRequest.handler.writeCompletion(
-                                    currRequest.regAddress, currRequest.length,
-                                    currRequest.expired);
-                        }
-                    }
+                    recordTransactionStats();
+                    completeRequests();
                     portCommandSM.setState(PortCommandState.START);
                     break;
 
@@ -624,6 +2168,50 @@ public abstract class TrcI2cDevice implements TrcTaskMgr.Task
                     break;
             }
         }
+    }   //runPortCommand
+
+    //
+    // Implements TrcTaskMgr.Task
+    //
+
+    @Override
+    public void startTask(TrcRobot.RunMode runMode)
+    {
+    }   //startTask
+
+    @Override
+    public void stopTask(TrcRobot.RunMode runMode)
+    {
+    }   //stopTask
+
+    @Override
+    public void prePeriodicTask(TrcRobot.RunMode runMode)
+    {
+    }   //prePeriodicTask
+
+    @Override
+    public void postPeriodicTask(TrcRobot.RunMode runMode)
+    {
+    }   //postPeriodicTask
+
+    /**
+     * This method is called periodically to run the PortCommand state machines.
+     *
+     * @param runMode specifies the competition mode that is running.
+     */
+    @Override
+    public void preContinuousTask(TrcRobot.RunMode runMode)
+    {
+        final String funcName = "preContinuousTask";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.TASK,
+                                "runMode=%s", runMode.toString());
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.TASK);
+        }
+
+        runPortCommand();
     }   //preContinuousTask
 
     @Override
@@ -0,0 +1,206 @@
+/*
+ * Titan Robotics Framework Library
+ * Copyright (c) 2016 Titan Robotics Club (http://www.titanrobotics.net)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package trclib;
+
+import java.nio.ByteBuffer;
+
+import hallib.HalUtil;
+
+/**
+ * This class implements the pending result of an I2C read or write request issued with
+ * TrcI2cDevice.readAsync or TrcI2cDevice.writeAsync. It is the completion handler of the
+ * request. When the request completes, the data read is copied into the future and the event
+ * of the future is signaled. The caller can either wait on the event in a state machine or
+ * block on TrcI2cDevice.waitForCompletion, which is meant for initialization code.
+ */
+public class TrcI2cFuture implements TrcI2cDevice.CompletionHandler
+{
+    private final int regAddress;
+    private final int length;
+    private final TrcEvent event;
+    private byte[] data = null;
+    private double timestamp = 0.0;
+    private boolean done = false;
+    private boolean timedout = false;
+
+    /**
+     * Constructor: Creates an instance of the object.
+     *
+     * @param regAddress specifies the register address of the request.
+     * @param length specifies the number of bytes of the request.
+     * @param event specifies the event to signal on completion, null to create one.
+     */
+    public TrcI2cFuture(int regAddress, int length, TrcEvent event)
+    {
+        this.regAddress = regAddress;
+        this.length = length;
+        this.event = event != null? event: new TrcEvent("I2cFuture");
+        this.event.clear();
+    }   //TrcI2cFuture
+
+    /**
+     * This method returns the register address of the request.
+     *
+     * @return register address.
+     */
+    public int getRegAddress()
+    {
+        return regAddress;
+    }   //getRegAddress
+
+    /**
+     * This method returns the length of the request.
+     *
+     * @return number of bytes requested.
+     */
+    public int getLength()
+    {
+        return length;
+    }   //getLength
+
+    /**
+     * This method returns the event that is signaled when the request completes.
+     *
+     * @return completion event.
+     */
+    public TrcEvent getEvent()
+    {
+        return event;
+    }   //getEvent
+
+    /**
+     * This method checks if the request has completed, successfully or not.
+     *
+     * @return true if completed, false otherwise.
+     */
+    public boolean isDone()
+    {
+        return done;
+    }   //isDone
+
+    /**
+     * This method checks if the request has timed out.
+     *
+     * @return true if timed out, false otherwise.
+     */
+    public boolean isTimedout()
+    {
+        return timedout;
+    }   //isTimedout
+
+    /**
+     * This method checks if the request has completed successfully.
+     *
+     * @return true if completed without timing out, false otherwise.
+     */
+    public boolean isSuccessful()
+    {
+        return done && !timedout;
+    }   //isSuccessful
+
+    /**
+     * This method returns the timestamp of the data read.
+     *
+     * @return timestamp of the data.
+     */
+    public double getTimestamp()
+    {
+        return timestamp;
+    }   //getTimestamp
+
+    /**
+     * This method returns the data read by a successful read request.
+     *
+     * @return read-only buffer of the data read, null if not available.
+     */
+    public ByteBuffer getData()
+    {
+        return data != null? ByteBuffer.wrap(data).asReadOnlyBuffer(): null;
+    }   //getData
+
+    /**
+     * This method returns a byte of the data read as an unsigned value.
+     *
+     * @param index specifies the index of the byte from the start of the request.
+     * @return unsigned byte value.
+     * @throws IllegalStateException if the read has not completed successfully.
+     */
+    public int getByte(int index)
+    {
+        if (data == null)
+        {
+            throw new IllegalStateException("No data available.");
+        }
+
+        return TrcUtil.bytesToInt(data[index]);
+    }   //getByte
+
+    //
+    // Implements TrcI2cDevice.CompletionHandler interface.
+    //
+
+    /**
+     * This method is called when the read operation has been completed.
+     *
+     * @param regAddress specifies the starting register address.
+     * @param length specifies the number of bytes read.
+     * @param timestamp specified the timestamp of the data retrieved.
+     * @param data specifies the read-only data buffer.
+     * @param timedout specifies true if the operation was timed out, false otherwise.
+     * @return false, a future is never repeated.
+     */
+    @Override
+    public boolean readCompletion(
+            int regAddress, int length, double timestamp, ByteBuffer data, boolean timedout)
+    {
+        if (!timedout && data != null)
+        {
+            this.data = new byte[data.remaining()];
+            data.get(this.data);
+        }
+        this.timestamp = timestamp;
+        this.timedout = timedout;
+        done = true;
+        event.set(true);
+
+        return false;
+    }   //readCompletion
+
+    /**
+     * This method is called when the write operation has been completed.
+     *
+     * @param regAddress specifies the starting register address.
+     * @param length specifies the number of bytes written.
+     * @param timedout specifies true if the operation was timed out, false otherwise.
+     */
+    @Override
+    public void writeCompletion(int regAddress, int length, boolean timedout)
+    {
+        this.timestamp = HalUtil.getCurrentTime();
+        this.timedout = timedout;
+        done = true;
+        event.set(true);
+    }   //writeCompletion
+
+}   //class TrcI2cFuture
@@ -0,0 +1,394 @@
+/*
+ * Titan Robotics Framework Library
+ * Copyright (c) 2016 Titan Robotics Club (http://www.titanrobotics.net)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package trclib;
+
+import java.util.ArrayList;
+
+/**
+ * This class monitors the I2C devices connected to the same controller module (e.g. a Core
+ * Device Interface module). It runs one task that samples each attached device in every loop
+ * and keeps per-port utilization and queue depth statistics. It does not change how the
+ * devices are serviced: each device still runs its own task and steps its own port command
+ * state machine.
+ */
+public class TrcI2cPortMonitor implements TrcTaskMgr.Task
+{
+    private static final String moduleName = "TrcI2cPortMonitor";
+    private static final boolean debugEnabled = false;
+    private TrcDbgTrace dbgTrace = null;
+
+    /**
+     * This class keeps an attached device and its statistics.
+     */
+    private static class DeviceEntry
+    {
+        TrcI2cDevice device;
+        long cycles = 0;
+        long busyCycles = 0;
+        long totalQueueDepth = 0;
+        int maxQueueDepth = 0;
+    }   //class DeviceEntry
+
+    private final String instanceName;
+    private ArrayList<DeviceEntry> entries = new ArrayList<DeviceEntry>();
+    private long cycles = 0;
+    private long activePorts = 0;
+
+    /**
+     * Constructor: Creates an instance of the object.
+     *
+     * @param instanceName specifies the instance name, typically the name of the module.
+     */
+    public TrcI2cPortMonitor(final String instanceName)
+    {
+        if (debugEnabled)
+        {
+            dbgTrace = new TrcDbgTrace(
+                    moduleName + "." + instanceName,
+                    false,
+                    TrcDbgTrace.TraceLevel.API,
+                    TrcDbgTrace.MsgLevel.INFO);
+        }
+
+        this.instanceName = instanceName;
+    }   //TrcI2cPortMonitor
+
+    /**
+     * This method returns the instance name.
+     *
+     * @return instance name.
+     */
+    public String toString()
+    {
+        return instanceName;
+    }   //toString
+
+    /**
+     * This method attaches a device to the monitor.
+     *
+     * @param device specifies the device connected to the module.
+     */
+    public void addDevice(TrcI2cDevice device)
+    {
+        final String funcName = "addDevice";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API,
+                                "device=%s", device.toString());
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        if (findEntry(device) != null)
+        {
+            throw new IllegalStateException(device.toString() + " is already attached.");
+        }
+
+        DeviceEntry entry = new DeviceEntry();
+        entry.device = device;
+        entries.add(entry);
+
+        if (entries.size() == 1)
+        {
+            TrcTaskMgr.getInstance().registerTask(
+                    instanceName, this, TrcTaskMgr.TaskType.POSTCONTINUOUS_TASK);
+        }
+    }   //addDevice
+
+    /**
+     * This method detaches a device from the monitor.
+     *
+     * @param device specifies the device to detach.
+     */
+    public void removeDevice(TrcI2cDevice device)
+    {
+        final String funcName = "removeDevice";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API,
+                                "device=%s", device.toString());
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        DeviceEntry entry = findEntry(device);
+        if (entry != null)
+        {
+            entries.remove(entry);
+
+            if (entries.isEmpty())
+            {
+                TrcTaskMgr.getInstance().unregisterTask(
+                        this, TrcTaskMgr.TaskType.POSTCONTINUOUS_TASK);
+            }
+        }
+    }   //removeDevice
+
+    /**
+     * This method returns the fraction of loops in which the port of the device had a bus
+     * transaction in progress.
+     *
+     * @param device specifies the attached device.
+     * @return port utilization between 0.0 and 1.0.
+     */
+    public double getPortUtilization(TrcI2cDevice device)
+    {
+        final String funcName = "getPortUtilization";
+        DeviceEntry entry = getEntry(device);
+        double utilization = entry.cycles > 0? (double)entry.busyCycles/entry.cycles: 0.0;
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API,
+                                "device=%s", device.toString());
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API, "=%.3f", utilization);
+        }
+
+        return utilization;
+    }   //getPortUtilization
+
+    /**
+     * This method returns the current number of requests queued on the device.
+     *
+     * @param device specifies the attached device.
+     * @return current queue depth.
+     */
+    public int getQueueDepth(TrcI2cDevice device)
+    {
+        final String funcName = "getQueueDepth";
+        int depth = getEntry(device).device.getQueueDepth();
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API,
+                                "device=%s", device.toString());
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API, "=%d", depth);
+        }
+
+        return depth;
+    }   //getQueueDepth
+
+    /**
+     * This method returns the average number of requests queued on the device per loop.
+     *
+     * @param device specifies the attached device.
+     * @return average queue depth.
+     */
+    public double getAverageQueueDepth(TrcI2cDevice device)
+    {
+        final String funcName = "getAverageQueueDepth";
+        DeviceEntry entry = getEntry(device);
+        double depth = entry.cycles > 0? (double)entry.totalQueueDepth/entry.cycles: 0.0;
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API,
+                                "device=%s", device.toString());
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API, "=%.3f", depth);
+        }
+
+        return depth;
+    }   //getAverageQueueDepth
+
+    /**
+     * This method returns the maximum number of requests queued on the device.
+     *
+     * @param device specifies the attached device.
+     * @return maximum queue depth.
+     */
+    public int getMaxQueueDepth(TrcI2cDevice device)
+    {
+        final String funcName = "getMaxQueueDepth";
+        int depth = getEntry(device).maxQueueDepth;
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API,
+                                "device=%s", device.toString());
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API, "=%d", depth);
+        }
+
+        return depth;
+    }   //getMaxQueueDepth
+
+    /**
+     * This method returns the average number of ports with a bus transaction in progress per
+     * loop. It measures how well the ports of the module are kept busy in parallel.
+     *
+     * @return average number of active ports.
+     */
+    public double getAverageActivePorts()
+    {
+        final String funcName = "getAverageActivePorts";
+        double ports = cycles > 0? (double)activePorts/cycles: 0.0;
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API, "=%.3f", ports);
+        }
+
+        return ports;
+    }   //getAverageActivePorts
+
+    /**
+     * This method clears all statistics.
+     */
+    public void resetStatistics()
+    {
+        final String funcName = "resetStatistics";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        for (int i = 0; i < entries.size(); i++)
+        {
+            DeviceEntry entry = entries.get(i);
+
+            entry.cycles = 0;
+            entry.busyCycles = 0;
+            entry.totalQueueDepth = 0;
+            entry.maxQueueDepth = 0;
+        }
+        cycles = 0;
+        activePorts = 0;
+    }   //resetStatistics
+
+    /**
+     * This method returns the entry of an attached device.
+     *
+     * @param device specifies the device.
+     * @return device entry, null if the device is not attached.
+     */
+    private DeviceEntry findEntry(TrcI2cDevice device)
+    {
+        for (int i = 0; i < entries.size(); i++)
+        {
+            DeviceEntry entry = entries.get(i);
+
+            if (entry.device == device)
+            {
+                return entry;
+            }
+        }
+
+        return null;
+    }   //findEntry
+
+    /**
+     * This method returns the entry of an attached device.
+     *
+     * @param device specifies the device.
+     * @return device entry.
+     * @throws IllegalArgumentException if the device is not attached.
+     */
+    private DeviceEntry getEntry(TrcI2cDevice device)
+    {
+        DeviceEntry entry = findEntry(device);
+
+        if (entry == null)
+        {
+            throw new IllegalArgumentException(device.toString() + " is not attached.");
+        }
+
+        return entry;
+    }   //getEntry
+
+    //
+    // Implements TrcTaskMgr.Task
+    //
+
+    @Override
+    public void startTask(TrcRobot.RunMode runMode)
+    {
+    }   //startTask
+
+    @Override
+    public void stopTask(TrcRobot.RunMode runMode)
+    {
+    }   //stopTask
+
+    @Override
+    public void prePeriodicTask(TrcRobot.RunMode runMode)
+    {
+    }   //prePeriodicTask
+
+    @Override
+    public void postPeriodicTask(TrcRobot.RunMode runMode)
+    {
+    }   //postPeriodicTask
+
+    @Override
+    public void preContinuousTask(TrcRobot.RunMode runMode)
+    {
+    }   //preContinuousTask
+
+    /**
+     * This method is called periodically after the device tasks have run to update the
+     * statistics of all attached devices.
+     *
+     * @param runMode specifies the competition mode that is running.
+     */
+    @Override
+    public void postContinuousTask(TrcRobot.RunMode runMode)
+    {
+        final String funcName = "postContinuousTask";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.TASK,
+                                "runMode=%s", runMode.toString());
+        }
+
+        for (int i = 0; i < entries.size(); i++)
+        {
+            DeviceEntry entry = entries.get(i);
+            TrcI2cDevice device = entry.device;
+            int queueDepth = device.getQueueDepth();
+
+            entry.cycles++;
+            entry.totalQueueDepth += queueDepth;
+            if (queueDepth > entry.maxQueueDepth)
+            {
+                entry.maxQueueDepth = queueDepth;
+            }
+
+            if (device.isTransactionPending())
+            {
+                entry.busyCycles++;
+                activePorts++;
+            }
+        }
+        cycles++;
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.TASK);
+        }
+    }   //postContinuousTask
+
+}   //class TrcI2cPortMonitor
@@ -60,6 +60,16 @@ public class TrcIIRFilter extends TrcFilter
         this(instanceName, 0.9);
     }   //TrcIIRFilter
 
+    //
+    // Overrides TrcFilter methods.
+    //
+
+    @Override
+    public void reset()
+    {
+        filteredData = 0.0;
+    }   //reset
+
     //
     // Implements TrcFilter abstract methods.
     //
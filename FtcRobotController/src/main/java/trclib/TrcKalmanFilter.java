@@ -60,6 +60,18 @@ public class TrcKalmanFilter extends TrcFilter
         this(instanceName, 0.022, 0.617);
     }   //TrcKalmanFilter
 
+    //
+    // Overrides TrcFilter methods.
+    //
+
+    @Override
+    public void reset()
+    {
+        prevP = 0.0;
+        prevXEst = 0.0;
+        initialized = false;
+    }   //reset
+
     //
     // Implements TrcFilter abstract methods.
     //
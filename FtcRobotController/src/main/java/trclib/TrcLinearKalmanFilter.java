@@ -0,0 +1,308 @@
+/*
+ * Titan Robotics Framework Library
+ * Copyright (c) 2016 Titan Robotics Club (http://www.titanrobotics.net)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package trclib;
+
+/**
+ * This class implements a small multi-dimensional linear Kalman filter. Unlike TrcKalmanFilter
+ * which filters a single scalar with fixed noise parameters, this class keeps an N element
+ * state vector and its N x N covariance matrix. The caller supplies the state transition and
+ * process noise matrices to predict() on every step, so they can depend on the elapsed time.
+ * Measurements are applied one scalar at a time with update(). Applying independent scalar
+ * measurements in sequence is equivalent to a single update with a diagonal measurement noise
+ * matrix, and it avoids any matrix inversion. It also lets the caller apply only the
+ * measurements that are available on a given step.
+ *
+ * All matrices are stored row-major in flat primitive arrays. The filter preallocates its own
+ * scratch storage, so predict() and update() don't generate any garbage.
+ */
+public class TrcLinearKalmanFilter
+{
+    private static final String moduleName = "TrcLinearKalmanFilter";
+    private static final boolean debugEnabled = false;
+    private TrcDbgTrace dbgTrace = null;
+
+    private final String instanceName;
+    private final int numStates;
+    private final double[] x;
+    private final double[] p;
+    private final double[] tmpState;
+    private final double[] tmpMatrix;
+    private final double[] pht;
+
+    /**
+     * Constructor: Creates an instance of the object.
+     *
+     * @param instanceName specifies the instance name.
+     * @param numStates specifies the number of elements in the state vector.
+     */
+    public TrcLinearKalmanFilter(String instanceName, int numStates)
+    {
+        if (debugEnabled)
+        {
+            dbgTrace = new TrcDbgTrace(
+                    moduleName + "." + instanceName,
+                    false,
+                    TrcDbgTrace.TraceLevel.API,
+                    TrcDbgTrace.MsgLevel.INFO);
+        }
+
+        if (numStates <= 0)
+        {
+            throw new IllegalArgumentException("Filter must have at least one state.");
+        }
+
+        this.instanceName = instanceName;
+        this.numStates = numStates;
+        x = new double[numStates];
+        p = new double[numStates*numStates];
+        tmpState = new double[numStates];
+        tmpMatrix = new double[numStates*numStates];
+        pht = new double[numStates];
+    }   //TrcLinearKalmanFilter
+
+    /**
+     * This method returns the instance name.
+     *
+     * @return instance name.
+     */
+    public String toString()
+    {
+        return instanceName;
+    }   //toString
+
+    /**
+     * This method returns the number of states.
+     *
+     * @return number of states.
+     */
+    public int getNumStates()
+    {
+        return numStates;
+    }   //getNumStates
+
+    /**
+     * This method sets the state vector and the covariance matrix.
+     *
+     * @param initialState specifies the initial state vector (N elements).
+     * @param initialCovariance specifies the initial covariance matrix (N x N elements).
+     */
+    public void reset(double[] initialState, double[] initialCovariance)
+    {
+        final String funcName = "reset";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        checkLength(initialState, numStates, "initialState");
+        checkLength(initialCovariance, numStates*numStates, "initialCovariance");
+        System.arraycopy(initialState, 0, x, 0, numStates);
+        System.arraycopy(initialCovariance, 0, p, 0, p.length);
+    }   //reset
+
+    /**
+     * This method returns an element of the state vector.
+     *
+     * @param index specifies the state index.
+     * @return state value.
+     */
+    public double getState(int index)
+    {
+        return x[index];
+    }   //getState
+
+    /**
+     * This method sets an element of the state vector without touching the covariance.
+     *
+     * @param index specifies the state index.
+     * @param value specifies the new state value.
+     */
+    public void setState(int index, double value)
+    {
+        x[index] = value;
+    }   //setState
+
+    /**
+     * This method returns an element of the covariance matrix.
+     *
+     * @param row specifies the row index.
+     * @param col specifies the column index.
+     * @return covariance value.
+     */
+    public double getCovariance(int row, int col)
+    {
+        return p[row*numStates + col];
+    }   //getCovariance
+
+    /**
+     * This method performs the prediction step: x = F*x + u, P = F*P*F' + Q.
+     *
+     * @param f specifies the state transition matrix (N x N elements).
+     * @param u specifies the control contribution to add to the state (N elements), can be
+     *          null if none.
+     * @param q specifies the process noise covariance matrix (N x N elements).
+     */
+    public void predict(double[] f, double[] u, double[] q)
+    {
+        final String funcName = "predict";
+        int n = numStates;
+
+        checkLength(f, n*n, "f");
+        checkLength(q, n*n, "q");
+        if (u != null)
+        {
+            checkLength(u, n, "u");
+        }
+        //
+        // x = F*x + u
+        //
+        for (int i = 0; i < n; i++)
+        {
+            double sum = u != null? u[i]: 0.0;
+            for (int k = 0; k < n; k++)
+            {
+                sum += f[i*n + k]*x[k];
+            }
+            tmpState[i] = sum;
+        }
+        System.arraycopy(tmpState, 0, x, 0, n);
+        //
+        // tmp = F*P
+        //
+        for (int i = 0; i < n; i++)
+        {
+            for (int j = 0; j < n; j++)
+            {
+                double sum = 0.0;
+                for (int k = 0; k < n; k++)
+                {
+                    sum += f[i*n + k]*p[k*n + j];
+                }
+                tmpMatrix[i*n + j] = sum;
+            }
+        }
+        //
+        // P = tmp*F' + Q
+        //
+        for (int i = 0; i < n; i++)
+        {
+            for (int j = 0; j < n; j++)
+            {
+                double sum = q[i*n + j];
+                for (int k = 0; k < n; k++)
+                {
+                    sum += tmpMatrix[i*n + k]*f[j*n + k];
+                }
+                p[i*n + j] = sum;
+            }
+        }
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API, "=%f", x[0]);
+        }
+    }   //predict
+
+    /**
+     * This method applies a scalar measurement z = H*x + v where v has variance r.
+     *
+     * @param h specifies the measurement row (N elements).
+     * @param z specifies the measured value.
+     * @param r specifies the measurement noise variance.
+     * @return the innovation (measured value minus predicted measurement).
+     */
+    public double update(double[] h, double z, double r)
+    {
+        final String funcName = "update";
+        int n = numStates;
+
+        checkLength(h, n, "h");
+        //
+        // pht = P*H', s = H*P*H' + r
+        //
+        double predicted = 0.0;
+        double s = r;
+        for (int i = 0; i < n; i++)
+        {
+            double sum = 0.0;
+            for (int k = 0; k < n; k++)
+            {
+                sum += p[i*n + k]*h[k];
+            }
+            pht[i] = sum;
+            predicted += h[i]*x[i];
+            s += h[i]*sum;
+        }
+
+        double innovation = z - predicted;
+        if (s > 0.0)
+        {
+            //
+            // K = pht/s, x = x + K*innovation, P = P - K*(H*P). Since P is symmetric, H*P is
+            // the transpose of pht.
+            //
+            for (int i = 0; i < n; i++)
+            {
+                x[i] += pht[i]*innovation/s;
+            }
+
+            for (int i = 0; i < n; i++)
+            {
+                double k = pht[i]/s;
+                for (int j = 0; j < n; j++)
+                {
+                    p[i*n + j] -= k*pht[j];
+                }
+            }
+        }
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API, "z=%f,r=%f", z, r);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API, "=%f", innovation);
+        }
+
+        return innovation;
+    }   //update
+
+    /**
+     * This method checks if the given array has the expected length.
+     *
+     * @param array specifies the array to check.
+     * @param length specifies the expected length.
+     * @param name specifies the name of the array for the error message.
+     */
+    private void checkLength(double[] array, int length, String name)
+    {
+        if (array == null || array.length != length)
+        {
+            throw new IllegalArgumentException(
+                    String.format("%s must be an array of %d elements.", name, length));
+        }
+    }   //checkLength
+
+}   //class TrcLinearKalmanFilter
@@ -0,0 +1,278 @@
+/*
+ * Titan Robotics Framework Library
+ * Copyright (c) 2016 Titan Robotics Club (http://www.titanrobotics.net)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package trclib;
+
+import java.util.Random;
+
+/**
+ * This class implements a running median filter. It keeps the last N data samples in a ring
+ * buffer and also keeps them sorted in an indexable skiplist, so each new sample costs
+ * O(log N) to remove the oldest sample, insert the newest one and look up the median.
+ * All storage, including the skiplist nodes, is preallocated in primitive arrays when the
+ * filter is created, so filtering doesn't generate any garbage. A median filter is very good
+ * at rejecting occasional bogus samples such as the zero readings from the Lego ultrasonic
+ * sensor without smearing real step changes.
+ */
+public class TrcMedianFilter extends TrcFilter
+{
+    private static final String moduleName = "TrcMedianFilter";
+    private static final boolean debugEnabled = false;
+    private TrcDbgTrace dbgTrace = null;
+
+    private final double[] window;
+    private int nextIndex;
+    private int count;
+    //
+    // Indexable skiplist. Nodes 0 to windowSize - 1 hold the samples, node HEAD is the list
+    // head and node NIL marks the end of the list on every level. Each node has a fixed
+    // height drawn when the filter is created. Since samples with the same value are
+    // interchangeable, removing a sample simply unlinks the first node with that value and
+    // that node is then reused for the next insertion.
+    //
+    private final int maxLevels;
+    private final int head;
+    private final int nil;
+    private final double[] nodeValues;
+    private final int[] nodeLevels;
+    private final int[][] nextNodes;
+    private final int[][] widths;
+    private final int[] chain;
+    private final int[] stepsAtLevel;
+
+    /**
+     * Constructor: Creates an instance of the object.
+     *
+     * @param instanceName specifies the instance name.
+     * @param windowSize specifies the number of samples to take the median of.
+     */
+    public TrcMedianFilter(String instanceName, int windowSize)
+    {
+        super(instanceName);
+
+        if (debugEnabled)
+        {
+            dbgTrace = new TrcDbgTrace(
+                    moduleName + "." + instanceName,
+                    false,
+                    TrcDbgTrace.TraceLevel.API,
+                    TrcDbgTrace.MsgLevel.INFO);
+        }
+
+        if (windowSize <= 0)
+        {
+            throw new IllegalArgumentException("Window size must be greater than zero.");
+        }
+
+        window = new double[windowSize];
+
+        int levels = 1;
+        while ((1 << levels) < windowSize)
+        {
+            levels++;
+        }
+        maxLevels = levels;
+        head = windowSize;
+        nil = windowSize + 1;
+        nodeValues = new double[windowSize + 2];
+        nodeLevels = new int[windowSize + 2];
+        nextNodes = new int[maxLevels][windowSize + 2];
+        widths = new int[maxLevels][windowSize + 2];
+        chain = new int[maxLevels];
+        stepsAtLevel = new int[maxLevels];
+        //
+        // Draw the node heights with a fixed seed so the filter behaves the same on every run.
+        //
+        Random random = new Random(windowSize);
+        for (int i = 0; i < windowSize; i++)
+        {
+            int height = 1;
+            while (height < maxLevels && random.nextBoolean())
+            {
+                height++;
+            }
+            nodeLevels[i] = height;
+        }
+        nodeLevels[head] = maxLevels;
+        nodeLevels[nil] = maxLevels;
+
+        reset();
+    }   //TrcMedianFilter
+
+    /**
+     * This method inserts a value into the skiplist using the given free node.
+     *
+     * @param value specifies the value to insert.
+     * @param node specifies the free node to hold the value.
+     */
+    private void insert(double value, int node)
+    {
+        int curr = head;
+
+        for (int level = maxLevels - 1; level >= 0; level--)
+        {
+            stepsAtLevel[level] = 0;
+            while (nextNodes[level][curr] != nil && nodeValues[nextNodes[level][curr]] <= value)
+            {
+                stepsAtLevel[level] += widths[level][curr];
+                curr = nextNodes[level][curr];
+            }
+            chain[level] = curr;
+        }
+
+        nodeValues[node] = value;
+        int height = nodeLevels[node];
+        int steps = 0;
+        for (int level = 0; level < height; level++)
+        {
+            int prev = chain[level];
+            nextNodes[level][node] = nextNodes[level][prev];
+            nextNodes[level][prev] = node;
+            widths[level][node] = widths[level][prev] - steps;
+            widths[level][prev] = steps + 1;
+            steps += stepsAtLevel[level];
+        }
+
+        for (int level = height; level < maxLevels; level++)
+        {
+            widths[level][chain[level]]++;
+        }
+    }   //insert
+
+    /**
+     * This method removes a node with the given value from the skiplist.
+     *
+     * @param value specifies the value to remove.
+     * @return the node that was unlinked and is now free.
+     */
+    private int remove(double value)
+    {
+        int curr = head;
+
+        for (int level = maxLevels - 1; level >= 0; level--)
+        {
+            while (nextNodes[level][curr] != nil && nodeValues[nextNodes[level][curr]] < value)
+            {
+                curr = nextNodes[level][curr];
+            }
+            chain[level] = curr;
+        }
+
+        int node = nextNodes[0][chain[0]];
+        int height = nodeLevels[node];
+        for (int level = 0; level < height; level++)
+        {
+            int prev = chain[level];
+            widths[level][prev] += widths[level][node] - 1;
+            nextNodes[level][prev] = nextNodes[level][node];
+        }
+
+        for (int level = height; level < maxLevels; level++)
+        {
+            widths[level][chain[level]]--;
+        }
+
+        return node;
+    }   //remove
+
+    /**
+     * This method returns the value at the given rank in the sorted skiplist.
+     *
+     * @param rank specifies the zero-based rank.
+     * @return value at the rank.
+     */
+    private double getValueAt(int rank)
+    {
+        int curr = head;
+        int remaining = rank + 1;
+
+        for (int level = maxLevels - 1; level >= 0; level--)
+        {
+            while (widths[level][curr] <= remaining)
+            {
+                remaining -= widths[level][curr];
+                curr = nextNodes[level][curr];
+            }
+        }
+
+        return nodeValues[curr];
+    }   //getValueAt
+
+    //
+    // Overrides TrcFilter methods.
+    //
+
+    @Override
+    public void reset()
+    {
+        nextIndex = 0;
+        count = 0;
+        for (int level = 0; level < maxLevels; level++)
+        {
+            nextNodes[level][head] = nil;
+            widths[level][head] = 1;
+        }
+    }   //reset
+
+    //
+    // Implements TrcFilter abstract methods.
+    //
+
+    @Override
+    public double filterData(double data)
+    {
+        final String funcName = "filterData";
+        int node;
+
+        if (count < window.length)
+        {
+            node = count;
+            count++;
+        }
+        else
+        {
+            node = remove(window[nextIndex]);
+        }
+        window[nextIndex] = data;
+        insert(data, node);
+
+        nextIndex++;
+        if (nextIndex == window.length)
+        {
+            nextIndex = 0;
+        }
+
+        double median = (count & 1) != 0?
+                getValueAt(count/2):
+                (getValueAt(count/2 - 1) + getValueAt(count/2))/2.0;
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API, "data=%f", data);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API, "=%f", median);
+        }
+
+        return median;
+    }   //filterData
+
+}   //class TrcMedianFilter
@@ -0,0 +1,369 @@
+/*
+ * Titan Robotics Framework Library
+ * Copyright (c) 2016 Titan Robotics Club (http://www.titanrobotics.net)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package trclib;
+
+import hallib.HalUtil;
+
+/**
+ * This class generates a motion profile from one position to another, starting and ending at
+ * rest. The profile is trapezoidal: it accelerates at the maximum acceleration up to the
+ * maximum velocity, cruises, then decelerates to a stop at the end position. If the move is
+ * too short to reach the maximum velocity, the profile becomes triangular. If a maximum jerk
+ * is given, the trapezoidal profile is averaged over a window of maxAcceleration/maxJerk
+ * seconds. This turns it into an S-curve profile, which takes one window longer. The averaged
+ * acceleration changes by the trapezoid's acceleration change over the window, so the jerk
+ * stays within maxJerk only if the deceleration does not start within one window of the end
+ * of the acceleration. The trapezoid is therefore given a cruise of at least one window: for
+ * moves too short for that at the maximum velocity, the peak velocity is lowered. The profile
+ * is evaluated in closed form at any time, so it can be sampled online at whatever rate the
+ * control loop runs.
+ */
+public class TrcMotionProfile
+{
+    private final double maxVelocity;
+    private final double maxAcceleration;
+    private final double jerkTime;
+
+    private double startPos = 0.0;
+    private double distance = 0.0;
+    private double direction = 1.0;
+    private double startTime = 0.0;
+    private double peakVelocity = 0.0;
+    private double accelTime = 0.0;
+    private double cruiseEndTime = 0.0;
+    private double trapezoidTime = 0.0;
+    private double accelEndIntegral = 0.0;
+    private double cruiseEndIntegral = 0.0;
+    private double endIntegral = 0.0;
+
+    private double position = 0.0;
+    private double velocity = 0.0;
+    private double acceleration = 0.0;
+    private boolean done = true;
+
+    /**
+     * Constructor: Creates an instance of the object.
+     *
+     * @param maxVelocity specifies the maximum velocity in position units per second.
+     * @param maxAcceleration specifies the maximum acceleration in position units per second
+     *                        squared.
+     * @param maxJerk specifies the maximum jerk in position units per second cubed, or zero
+     *                for a trapezoidal profile.
+     */
+    public TrcMotionProfile(double maxVelocity, double maxAcceleration, double maxJerk)
+    {
+        if (maxVelocity <= 0.0 || maxAcceleration <= 0.0 || maxJerk < 0.0)
+        {
+            throw new IllegalArgumentException("Invalid motion profile limits.");
+        }
+
+        this.maxVelocity = maxVelocity;
+        this.maxAcceleration = maxAcceleration;
+        this.jerkTime = maxJerk > 0.0? maxAcceleration/maxJerk: 0.0;
+    }   //TrcMotionProfile
+
+    /**
+     * Constructor: Creates an instance of the object for a trapezoidal profile.
+     *
+     * @param maxVelocity specifies the maximum velocity in position units per second.
+     * @param maxAcceleration specifies the maximum acceleration in position units per second
+     *                        squared.
+     */
+    public TrcMotionProfile(double maxVelocity, double maxAcceleration)
+    {
+        this(maxVelocity, maxAcceleration, 0.0);
+    }   //TrcMotionProfile
+
+    /**
+     * This method starts a new profile at the given time.
+     *
+     * @param startPos specifies the start position.
+     * @param endPos specifies the end position.
+     * @param startTime specifies the start time in seconds.
+     */
+    public void start(double startPos, double endPos, double startTime)
+    {
+        this.startPos = startPos;
+        this.distance = Math.abs(endPos - startPos);
+        this.direction = endPos >= startPos? 1.0: -1.0;
+        this.startTime = startTime;
+
+        double cruiseVelocity = maxVelocity;
+        if (jerkTime > 0.0)
+        {
+            //
+            // Limit the peak velocity to the one that cruises for exactly one jerk window, i.e.
+            // distance/v - v/maxAcceleration = jerkTime.
+            //
+            cruiseVelocity = Math.min(
+                    maxVelocity,
+                    0.5*maxAcceleration*(Math.sqrt(jerkTime*jerkTime +
+                                                   4.0*distance/maxAcceleration) - jerkTime));
+        }
+
+        if (cruiseVelocity > 0.0 && distance*maxAcceleration >= cruiseVelocity*cruiseVelocity)
+        {
+            accelTime = cruiseVelocity/maxAcceleration;
+            peakVelocity = cruiseVelocity;
+            cruiseEndTime = accelTime + (distance - peakVelocity*accelTime)/peakVelocity;
+        }
+        else
+        {
+            accelTime = Math.sqrt(distance/maxAcceleration);
+            peakVelocity = maxAcceleration*accelTime;
+            cruiseEndTime = accelTime;
+        }
+        trapezoidTime = cruiseEndTime + accelTime;
+        //
+        // Integrals of the trapezoidal position at the segment boundaries, used to average
+        // the position over the jerk window.
+        //
+        double cruiseTime = cruiseEndTime - accelTime;
+        accelEndIntegral = maxAcceleration*accelTime*accelTime*accelTime/6.0;
+        cruiseEndIntegral = accelEndIntegral +
+                            0.5*maxAcceleration*accelTime*accelTime*cruiseTime +
+                            0.5*peakVelocity*cruiseTime*cruiseTime;
+        endIntegral = cruiseEndIntegral + distance*accelTime - accelEndIntegral;
+
+        position = startPos;
+        velocity = 0.0;
+        acceleration = 0.0;
+        done = distance == 0.0;
+    }   //start
+
+    /**
+     * This method starts a new profile now.
+     *
+     * @param startPos specifies the start position.
+     * @param endPos specifies the end position.
+     */
+    public void start(double startPos, double endPos)
+    {
+        start(startPos, endPos, HalUtil.getCurrentTime());
+    }   //start
+
+    /**
+     * This method evaluates the profile at the given time. The results are available from
+     * getPosition, getVelocity and getAcceleration.
+     *
+     * @param currTime specifies the time in seconds.
+     */
+    public void update(double currTime)
+    {
+        double t = currTime - startTime;
+        double dist;
+        double vel;
+        double accel;
+
+        if (jerkTime > 0.0)
+        {
+            dist = (trapezoidIntegral(t) - trapezoidIntegral(t - jerkTime))/jerkTime;
+            vel = (trapezoidPosition(t) - trapezoidPosition(t - jerkTime))/jerkTime;
+            accel = (trapezoidVelocity(t) - trapezoidVelocity(t - jerkTime))/jerkTime;
+        }
+        else
+        {
+            dist = trapezoidPosition(t);
+            vel = trapezoidVelocity(t);
+            accel = t < accelTime? maxAcceleration:
+                    t < cruiseEndTime? 0.0:
+                    t < trapezoidTime? -maxAcceleration: 0.0;
+        }
+
+        done = t >= getDuration();
+        if (done)
+        {
+            dist = distance;
+            vel = 0.0;
+            accel = 0.0;
+        }
+
+        position = startPos + direction*dist;
+        velocity = direction*vel;
+        acceleration = direction*accel;
+    }   //update
+
+    /**
+     * This method evaluates the profile now.
+     */
+    public void update()
+    {
+        update(HalUtil.getCurrentTime());
+    }   //update
+
+    /**
+     * This method returns the duration of the current profile.
+     *
+     * @return duration in seconds.
+     */
+    public double getDuration()
+    {
+        return distance == 0.0? 0.0: trapezoidTime + jerkTime;
+    }   //getDuration
+
+    /**
+     * This method checks if the profile has reached the end position.
+     *
+     * @return true if the profile is done, false otherwise.
+     */
+    public boolean isDone()
+    {
+        return done;
+    }   //isDone
+
+    /**
+     * This method returns the profile position at the last update.
+     *
+     * @return profile position.
+     */
+    public double getPosition()
+    {
+        return position;
+    }   //getPosition
+
+    /**
+     * This method returns the profile velocity at the last update.
+     *
+     * @return profile velocity.
+     */
+    public double getVelocity()
+    {
+        return velocity;
+    }   //getVelocity
+
+    /**
+     * This method returns the profile acceleration at the last update.
+     *
+     * @return profile acceleration.
+     */
+    public double getAcceleration()
+    {
+        return acceleration;
+    }   //getAcceleration
+
+    /**
+     * This method returns the distance travelled by the trapezoidal profile.
+     *
+     * @param t specifies the time since the start of the profile.
+     * @return distance travelled.
+     */
+    private double trapezoidPosition(double t)
+    {
+        double dist;
+
+        if (t <= 0.0)
+        {
+            dist = 0.0;
+        }
+        else if (t < accelTime)
+        {
+            dist = 0.5*maxAcceleration*t*t;
+        }
+        else if (t < cruiseEndTime)
+        {
+            dist = 0.5*maxAcceleration*accelTime*accelTime + peakVelocity*(t - accelTime);
+        }
+        else if (t < trapezoidTime)
+        {
+            dist = distance - 0.5*maxAcceleration*(trapezoidTime - t)*(trapezoidTime - t);
+        }
+        else
+        {
+            dist = distance;
+        }
+
+        return dist;
+    }   //trapezoidPosition
+
+    /**
+     * This method returns the velocity of the trapezoidal profile.
+     *
+     * @param t specifies the time since the start of the profile.
+     * @return velocity.
+     */
+    private double trapezoidVelocity(double t)
+    {
+        double vel;
+
+        if (t <= 0.0 || t >= trapezoidTime)
+        {
+            vel = 0.0;
+        }
+        else if (t < accelTime)
+        {
+            vel = maxAcceleration*t;
+        }
+        else if (t < cruiseEndTime)
+        {
+            vel = peakVelocity;
+        }
+        else
+        {
+            vel = maxAcceleration*(trapezoidTime - t);
+        }
+
+        return vel;
+    }   //trapezoidVelocity
+
+    /**
+     * This method returns the integral of the trapezoidal distance from the start of the
+     * profile.
+     *
+     * @param t specifies the time since the start of the profile.
+     * @return integral of the distance.
+     */
+    private double trapezoidIntegral(double t)
+    {
+        double integral;
+
+        if (t <= 0.0)
+        {
+            integral = 0.0;
+        }
+        else if (t < accelTime)
+        {
+            integral = maxAcceleration*t*t*t/6.0;
+        }
+        else if (t < cruiseEndTime)
+        {
+            double dt = t - accelTime;
+            integral = accelEndIntegral + 0.5*maxAcceleration*accelTime*accelTime*dt +
+                       0.5*peakVelocity*dt*dt;
+        }
+        else if (t < trapezoidTime)
+        {
+            double remaining = trapezoidTime - t;
+            integral = cruiseEndIntegral + distance*(t - cruiseEndTime) -
+                       maxAcceleration*(accelTime*accelTime*accelTime -
+                                        remaining*remaining*remaining)/6.0;
+        }
+        else
+        {
+            integral = endIntegral + distance*(t - trapezoidTime);
+        }
+
+        return integral;
+    }   //trapezoidIntegral
+
+}   //class TrcMotionProfile
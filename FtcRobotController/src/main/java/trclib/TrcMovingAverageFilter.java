@@ -0,0 +1,129 @@
+/*
+ * Titan Robotics Framework Library
+ * Copyright (c) 2016 Titan Robotics Club (http://www.titanrobotics.net)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package trclib;
+
+/**
+ * This class implements a moving average filter. It keeps the last N data samples in a ring
+ * buffer together with their running sum, so each new sample costs O(1) regardless of the
+ * window size. Until the window is full, the average is taken over the samples received so
+ * far. The running sum is recomputed from the buffer every time the ring wraps around so that
+ * floating point rounding errors don't accumulate.
+ */
+public class TrcMovingAverageFilter extends TrcFilter
+{
+    private static final String moduleName = "TrcMovingAverageFilter";
+    private static final boolean debugEnabled = false;
+    private TrcDbgTrace dbgTrace = null;
+
+    private final double[] window;
+    private int nextIndex;
+    private int count;
+    private double sum;
+
+    /**
+     * Constructor: Creates an instance of the object.
+     *
+     * @param instanceName specifies the instance name.
+     * @param windowSize specifies the number of samples to average.
+     */
+    public TrcMovingAverageFilter(String instanceName, int windowSize)
+    {
+        super(instanceName);
+
+        if (debugEnabled)
+        {
+            dbgTrace = new TrcDbgTrace(
+                    moduleName + "." + instanceName,
+                    false,
+                    TrcDbgTrace.TraceLevel.API,
+                    TrcDbgTrace.MsgLevel.INFO);
+        }
+
+        if (windowSize <= 0)
+        {
+            throw new IllegalArgumentException("Window size must be greater than zero.");
+        }
+
+        window = new double[windowSize];
+        reset();
+    }   //TrcMovingAverageFilter
+
+    //
+    // Overrides TrcFilter methods.
+    //
+
+    @Override
+    public void reset()
+    {
+        nextIndex = 0;
+        count = 0;
+        sum = 0.0;
+    }   //reset
+
+    //
+    // Implements TrcFilter abstract methods.
+    //
+
+    @Override
+    public double filterData(double data)
+    {
+        final String funcName = "filterData";
+
+        if (count < window.length)
+        {
+            count++;
+        }
+        else
+        {
+            sum -= window[nextIndex];
+        }
+        window[nextIndex] = data;
+        sum += data;
+
+        nextIndex++;
+        if (nextIndex == window.length)
+        {
+            nextIndex = 0;
+            //
+            // Resync the running sum once per revolution.
+            //
+            sum = 0.0;
+            for (int i = 0; i < window.length; i++)
+            {
+                sum += window[i];
+            }
+        }
+
+        double average = sum/count;
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API, "data=%f", data);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API, "=%f", average);
+        }
+
+        return average;
+    }   //filterData
+
+}   //class TrcMovingAverageFilter
@@ -0,0 +1,574 @@
+/*
+ * Titan Robotics Framework Library
+ * Copyright (c) 2016 Titan Robotics Club (http://www.titanrobotics.net)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package trclib;
+
+import hallib.HalUtil;
+
+/**
+ * This class implements a relay feedback (Astrom-Hagglund) PID autotuner. It replaces the
+ * PID controller with a relay that drives the axis with +amplitude while the input is below
+ * the starting position and -amplitude while it is above, with some hysteresis. This puts the
+ * axis into a controlled oscillation. After the first few cycles have settled, the tuner
+ * measures the amplitude and period of the oscillation over several cycles and derives the
+ * ultimate gain and period of the axis. Recommended PID gains are then computed from these
+ * with the chosen tuning rule.
+ *
+ * The recommended gains are for a controller in time normalized mode, so kI is per second and
+ * kD is in seconds. For a controller not in that mode, multiply kI by the loop period and
+ * divide kD by it.
+ *
+ * The tuner runs as a task when started with start(). On a desktop JVM, it can instead be
+ * stepped against a simulated plant by calling update() with the simulated time.
+ */
+public class TrcPidAutoTuner implements TrcTaskMgr.Task
+{
+    private static final String moduleName = "TrcPidAutoTuner";
+    private static final boolean debugEnabled = false;
+    private TrcDbgTrace dbgTrace = null;
+
+    /**
+     * This interface is implemented by the axis driven by the relay.
+     */
+    public interface RelayOutput
+    {
+        /**
+         * This method is called to set the output power of the axis.
+         *
+         * @param output specifies the output power.
+         */
+        void setRelayOutput(double output);
+
+    }   //interface RelayOutput
+
+    public enum TuningRule
+    {
+        ZIEGLER_NICHOLS,
+        SOME_OVERSHOOT,
+        NO_OVERSHOOT
+    }   //enum TuningRule
+
+    public enum DriveAxis
+    {
+        X,
+        Y,
+        TURN
+    }   //enum DriveAxis
+
+    //
+    // The oscillation takes a couple of cycles to settle from the starting position, those
+    // cycles are not measured.
+    //
+    private static final int SETTLING_CYCLES = 2;
+    private static final int DEF_MEASURE_CYCLES = 4;
+
+    private final String instanceName;
+    private final TrcPidController pidCtrl;
+    private final RelayOutput relayOutput;
+    private final double relayAmplitude;
+    private final double hysteresis;
+    private int measureCycles = DEF_MEASURE_CYCLES;
+
+    private boolean active = false;
+    private boolean done = false;
+    private boolean successful = false;
+    private TrcEvent notifyEvent = null;
+    private double expiredTime = 0.0;
+    private double center = 0.0;
+    private double relaySign = 1.0;
+    private double lastRiseTime = 0.0;
+    private double cycleMax = 0.0;
+    private double cycleMin = 0.0;
+    private int cycles = 0;
+    private int measuredCycles = 0;
+    private double totalPeriod = 0.0;
+    private double totalAmplitude = 0.0;
+    private double ultimateGain = 0.0;
+    private double ultimatePeriod = 0.0;
+
+    /**
+     * Constructor: Creates an instance of the object.
+     *
+     * @param instanceName specifies the instance name.
+     * @param pidCtrl specifies the PID controller of the axis, it provides the input and
+     *                receives the recommended gains.
+     * @param relayOutput specifies the output of the axis.
+     * @param relayAmplitude specifies the relay output amplitude. It is negative if a
+     *                       positive output decreases the input.
+     * @param hysteresis specifies the hysteresis of the relay in input units.
+     */
+    public TrcPidAutoTuner(
+            final String instanceName, TrcPidController pidCtrl, RelayOutput relayOutput,
+            double relayAmplitude, double hysteresis)
+    {
+        if (debugEnabled)
+        {
+            dbgTrace = new TrcDbgTrace(
+                    moduleName + "." + instanceName,
+                    false,
+                    TrcDbgTrace.TraceLevel.API,
+                    TrcDbgTrace.MsgLevel.INFO);
+        }
+
+        if (relayAmplitude == 0.0 || hysteresis < 0.0)
+        {
+            throw new IllegalArgumentException("Invalid relay amplitude or hysteresis.");
+        }
+
+        this.instanceName = instanceName;
+        this.pidCtrl = pidCtrl;
+        this.relayOutput = relayOutput;
+        this.relayAmplitude = relayAmplitude;
+        this.hysteresis = hysteresis;
+    }   //TrcPidAutoTuner
+
+    /**
+     * Constructor: Creates an instance of the object to tune a PID motor.
+     *
+     * @param instanceName specifies the instance name.
+     * @param pidCtrl specifies the PID controller of the PID motor.
+     * @param pidMotor specifies the PID motor.
+     * @param relayAmplitude specifies the relay output amplitude. It is negative if a
+     *                       positive output decreases the input.
+     * @param hysteresis specifies the hysteresis of the relay in input units.
+     */
+    public TrcPidAutoTuner(
+            final String instanceName, TrcPidController pidCtrl, final TrcPidMotor pidMotor,
+            double relayAmplitude, double hysteresis)
+    {
+        this(instanceName, pidCtrl,
+             new RelayOutput()
+             {
+                 @Override
+                 public void setRelayOutput(double output)
+                 {
+                     pidMotor.setPower(output);
+                 }
+             },
+             relayAmplitude, hysteresis);
+    }   //TrcPidAutoTuner
+
+    /**
+     * Constructor: Creates an instance of the object to tune an axis of a PID drive.
+     *
+     * @param instanceName specifies the instance name.
+     * @param pidCtrl specifies the PID controller of the drive axis.
+     * @param driveBase specifies the drive base.
+     * @param axis specifies the drive axis.
+     * @param relayAmplitude specifies the relay output amplitude. It is negative if a
+     *                       positive output decreases the input.
+     * @param hysteresis specifies the hysteresis of the relay in input units.
+     */
+    public TrcPidAutoTuner(
+            final String instanceName, TrcPidController pidCtrl, final TrcDriveBase driveBase,
+            final DriveAxis axis, double relayAmplitude, double hysteresis)
+    {
+        this(instanceName, pidCtrl,
+             new RelayOutput()
+             {
+                 @Override
+                 public void setRelayOutput(double output)
+                 {
+                     switch (axis)
+                     {
+                         case X:
+                             driveBase.mecanumDrive_Cartesian(output, 0.0, 0.0, false, 0.0);
+                             break;
+
+                         case Y:
+                             driveBase.arcadeDrive(output, 0.0);
+                             break;
+
+                         case TURN:
+                             driveBase.arcadeDrive(0.0, output);
+                             break;
+                     }
+                 }
+             },
+             relayAmplitude, hysteresis);
+    }   //TrcPidAutoTuner
+
+    /**
+     * This method returns the instance name.
+     *
+     * @return instance name.
+     */
+    @Override
+    public String toString()
+    {
+        return instanceName;
+    }   //toString
+
+    /**
+     * This method sets the number of oscillation cycles to measure.
+     *
+     * @param cycles specifies the number of cycles.
+     */
+    public void setMeasureCycles(int cycles)
+    {
+        if (cycles < 1)
+        {
+            throw new IllegalArgumentException("Must measure at least one cycle.");
+        }
+
+        measureCycles = cycles;
+    }   //setMeasureCycles
+
+    /**
+     * This method starts the tuner as a task. The axis oscillates around its current position.
+     *
+     * @param event specifies the event to signal when done, can be null.
+     * @param timeout specifies the timeout in seconds, zero for no timeout.
+     */
+    public void start(TrcEvent event, double timeout)
+    {
+        final String funcName = "start";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API,
+                                "event=%s,timeout=%f",
+                                event != null? event.toString(): "null", timeout);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        if (event != null)
+        {
+            event.clear();
+        }
+        notifyEvent = event;
+        start(HalUtil.getCurrentTime(), timeout);
+        setActive(true);
+    }   //start
+
+    /**
+     * This method starts the tuner without running it as a task. The caller must call update
+     * periodically, e.g. in a simulation.
+     *
+     * @param currTime specifies the current time in seconds.
+     * @param timeout specifies the timeout in seconds, zero for no timeout.
+     */
+    public void start(double currTime, double timeout)
+    {
+        center = pidCtrl.getCurrentInput();
+        expiredTime = timeout > 0.0? currTime + timeout: 0.0;
+        relaySign = 1.0;
+        lastRiseTime = currTime;
+        cycleMax = cycleMin = center;
+        cycles = 0;
+        measuredCycles = 0;
+        totalPeriod = 0.0;
+        totalAmplitude = 0.0;
+        ultimateGain = 0.0;
+        ultimatePeriod = 0.0;
+        done = false;
+        successful = false;
+        relayOutput.setRelayOutput(relaySign*relayAmplitude);
+    }   //start
+
+    /**
+     * This method cancels the tuner and stops the axis.
+     */
+    public void cancel()
+    {
+        final String funcName = "cancel";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        if (!done)
+        {
+            finish(false);
+        }
+    }   //cancel
+
+    /**
+     * This method runs one step of the relay and measures the oscillation.
+     *
+     * @param currTime specifies the current time in seconds.
+     */
+    public void update(double currTime)
+    {
+        if (done)
+        {
+            return;
+        }
+
+        double input = pidCtrl.getCurrentInput();
+        double error = center - input;
+        if (relayAmplitude < 0.0)
+        {
+            error = -error;
+        }
+
+        cycleMax = Math.max(cycleMax, input);
+        cycleMin = Math.min(cycleMin, input);
+
+        if (relaySign > 0.0 && error < -hysteresis)
+        {
+            relaySign = -1.0;
+        }
+        else if (relaySign < 0.0 && error > hysteresis)
+        {
+            //
+            // The relay switching back to positive starts a new cycle.
+            //
+            relaySign = 1.0;
+            cycles++;
+            if (cycles > SETTLING_CYCLES)
+            {
+                totalPeriod += currTime - lastRiseTime;
+                totalAmplitude += (cycleMax - cycleMin)/2.0;
+                measuredCycles++;
+            }
+            lastRiseTime = currTime;
+            cycleMax = cycleMin = input;
+        }
+
+        if (measuredCycles >= measureCycles)
+        {
+            double amplitude = totalAmplitude/measuredCycles;
+
+            if (amplitude > hysteresis)
+            {
+                ultimatePeriod = totalPeriod/measuredCycles;
+                ultimateGain = 4.0*Math.abs(relayAmplitude)/
+                               (Math.PI*Math.sqrt(amplitude*amplitude - hysteresis*hysteresis));
+            }
+            finish(ultimateGain > 0.0);
+        }
+        else if (expiredTime > 0.0 && currTime >= expiredTime)
+        {
+            finish(false);
+        }
+        else
+        {
+            relayOutput.setRelayOutput(relaySign*relayAmplitude);
+        }
+    }   //update
+
+    /**
+     * This method checks if the tuner is done.
+     *
+     * @return true if done, false otherwise.
+     */
+    public boolean isDone()
+    {
+        return done;
+    }   //isDone
+
+    /**
+     * This method checks if the tuner has measured the ultimate gain and period.
+     *
+     * @return true if successful, false if it timed out, was canceled or did not oscillate.
+     */
+    public boolean isSuccessful()
+    {
+        return successful;
+    }   //isSuccessful
+
+    /**
+     * This method returns the number of oscillation cycles completed so far.
+     *
+     * @return number of cycles.
+     */
+    public int getCycles()
+    {
+        return cycles;
+    }   //getCycles
+
+    /**
+     * This method returns the measured ultimate gain.
+     *
+     * @return ultimate gain, zero if not measured.
+     */
+    public double getUltimateGain()
+    {
+        return ultimateGain;
+    }   //getUltimateGain
+
+    /**
+     * This method returns the measured ultimate period.
+     *
+     * @return ultimate period in seconds, zero if not measured.
+     */
+    public double getUltimatePeriod()
+    {
+        return ultimatePeriod;
+    }   //getUltimatePeriod
+
+    /**
+     * This method returns the recommended proportional gain.
+     *
+     * @param rule specifies the tuning rule.
+     * @return recommended kP.
+     */
+    public double getKp(TuningRule rule)
+    {
+        return ultimateGain*(rule == TuningRule.ZIEGLER_NICHOLS? 0.6:
+                             rule == TuningRule.SOME_OVERSHOOT? 0.33: 0.2);
+    }   //getKp
+
+    /**
+     * This method returns the recommended integral gain.
+     *
+     * @param rule specifies the tuning rule.
+     * @return recommended kI, per second.
+     */
+    public double getKi(TuningRule rule)
+    {
+        double integralTime = ultimatePeriod/2.0;
+
+        return integralTime > 0.0? getKp(rule)/integralTime: 0.0;
+    }   //getKi
+
+    /**
+     * This method returns the recommended derivative gain.
+     *
+     * @param rule specifies the tuning rule.
+     * @return recommended kD, in seconds.
+     */
+    public double getKd(TuningRule rule)
+    {
+        double derivativeTime = ultimatePeriod/(rule == TuningRule.ZIEGLER_NICHOLS? 8.0: 3.0);
+
+        return getKp(rule)*derivativeTime;
+    }   //getKd
+
+    /**
+     * This method sets the recommended gains into the PID controller and puts it in time
+     * normalized mode, which the gains are computed for.
+     *
+     * @param rule specifies the tuning rule.
+     */
+    public void applyGains(TuningRule rule)
+    {
+        final String funcName = "applyGains";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API, "rule=%s", rule.toString());
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        if (!successful)
+        {
+            throw new IllegalStateException("No tuning result to apply.");
+        }
+
+        pidCtrl.setPID(getKp(rule), getKi(rule), getKd(rule), pidCtrl.getKf());
+        pidCtrl.setTimeNormalizedMode(true);
+    }   //applyGains
+
+    /**
+     * This method stops the axis and finishes the tuning.
+     *
+     * @param successful specifies true if the ultimate gain and period were measured.
+     */
+    private void finish(boolean successful)
+    {
+        relayOutput.setRelayOutput(0.0);
+        this.successful = successful;
+        done = true;
+
+        if (active)
+        {
+            setActive(false);
+        }
+
+        if (notifyEvent != null)
+        {
+            notifyEvent.set(true);
+            notifyEvent = null;
+        }
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceInfo("finish", "%s: Ku=%.3f, Tu=%.3f, successful=%s",
+                               instanceName, ultimateGain, ultimatePeriod,
+                               Boolean.toString(successful));
+        }
+    }   //finish
+
+    /**
+     * This method enables/disables the tuner task.
+     *
+     * @param active specifies true to run the tuner task, false otherwise.
+     */
+    private void setActive(boolean active)
+    {
+        TrcTaskMgr taskMgr = TrcTaskMgr.getInstance();
+
+        if (active)
+        {
+            taskMgr.registerTask(instanceName, this, TrcTaskMgr.TaskType.STOP_TASK);
+            taskMgr.registerTask(instanceName, this, TrcTaskMgr.TaskType.POSTCONTINUOUS_TASK);
+        }
+        else
+        {
+            taskMgr.unregisterTask(this, TrcTaskMgr.TaskType.STOP_TASK);
+            taskMgr.unregisterTask(this, TrcTaskMgr.TaskType.POSTCONTINUOUS_TASK);
+        }
+        this.active = active;
+    }   //setActive
+
+    //
+    // Implements TrcTaskMgr.Task
+    //
+
+    @Override
+    public void startTask(TrcRobot.RunMode runMode)
+    {
+    }   //startTask
+
+    @Override
+    public void stopTask(TrcRobot.RunMode runMode)
+    {
+        cancel();
+    }   //stopTask
+
+    @Override
+    public void prePeriodicTask(TrcRobot.RunMode runMode)
+    {
+    }   //prePeriodicTask
+
+    @Override
+    public void postPeriodicTask(TrcRobot.RunMode runMode)
+    {
+    }   //postPeriodicTask
+
+    @Override
+    public void preContinuousTask(TrcRobot.RunMode runMode)
+    {
+    }   //preContinuousTask
+
+    @Override
+    public void postContinuousTask(TrcRobot.RunMode runMode)
+    {
+        update(HalUtil.getCurrentTime());
+    }   //postContinuousTask
+
+}   //class TrcPidAutoTuner
@@ -37,6 +37,18 @@ public class TrcPidController
         public double getInput(TrcPidController pidCtrl);
     }   //interface PidInput
 
+    public interface ScheduleInput
+    {
+        public double getScheduleInput(TrcPidController pidCtrl);
+    }   //interface ScheduleInput
+
+    public enum ScheduleKey
+    {
+        ERROR_MAGNITUDE,
+        SETPOINT,
+        EXTERNAL
+    }   //enum ScheduleKey
+
     private HalDashboard dashboard;
     private double kP;
     private double kI;
@@ -56,10 +68,44 @@ public class TrcPidController
     private double maxOutput = 1.0;
 
     private double prevError = 0.0;
-    private double totalError = 0.0;
+    //
+    // The integral term is accumulated with the gain applied at each step (kI*error*dt) rather
+    // than as the total error scaled by the current kI. A change in kI, either by setPID or by
+    // a gain schedule, then only affects new error and does not rescale what has already been
+    // integrated, so the output does not jump.
+    //
+    private double integral = 0.0;
     private double settlingStartTime = 0.0;
     private double setPoint = 0.0;
     private double output = 0.0;
+    //
+    // In time normalized mode, the integral and derivative terms are scaled by the actual
+    // time between getOutput calls, so kI is per second and kD is in seconds. The derivative
+    // is taken on the input instead of the error so a new setpoint does not kick the output,
+    // and it is low-pass filtered with the derivative filter time constant.
+    //
+    private boolean timeNormalized = false;
+    private double derivativeTimeConstant = 0.0;
+    private double prevInput = 0.0;
+    private double prevTime = 0.0;
+    private double derivative = 0.0;
+    //
+    // When following a motion profile, the error is taken against the moving profile target
+    // instead of the final setpoint, and the profile velocity and acceleration are fed forward.
+    //
+    private double kV = 0.0;
+    private double kA = 0.0;
+    private boolean profiled = false;
+    private double profileTarget = 0.0;
+    private double profileVelocity = 0.0;
+    private double profileAcceleration = 0.0;
+    //
+    // With a gain schedule, the gains are looked up from the schedule on every getOutput call
+    // instead of using the fixed gains.
+    //
+    private TrcGainSchedule gainSchedule = null;
+    private ScheduleKey scheduleKey = ScheduleKey.ERROR_MAGNITUDE;
+    private ScheduleInput scheduleInput = null;
 
     public TrcPidController(
             final String instanceName,
@@ -182,6 +228,86 @@ public class TrcPidController
         }
     }   //setNoOscillation
 
+    public void setTimeNormalizedMode(boolean enabled)
+    {
+        final String funcName = "setTimeNormalizedMode";
+
+        this.timeNormalized = enabled;
+        prevTime = 0.0;
+        derivative = 0.0;
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API,
+                                "enabled=%s", Boolean.toString(enabled));
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+    }   //setTimeNormalizedMode
+
+    public void setDerivativeFilter(double timeConstant)
+    {
+        final String funcName = "setDerivativeFilter";
+
+        if (timeConstant < 0.0)
+        {
+            throw new IllegalArgumentException("Time constant must not be negative.");
+        }
+
+        this.derivativeTimeConstant = timeConstant;
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API,
+                                "timeConstant=%f", timeConstant);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+    }   //setDerivativeFilter
+
+    public void setMotionFeedforward(double kV, double kA)
+    {
+        final String funcName = "setMotionFeedforward";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(
+                    funcName, TrcDbgTrace.TraceLevel.API,
+                    "Kv=%f,Ka=%f", kV, kA);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        this.kV = kV;
+        this.kA = kA;
+    }   //setMotionFeedforward
+
+    public void setGainSchedule(
+            TrcGainSchedule schedule, ScheduleKey key, ScheduleInput scheduleInput)
+    {
+        final String funcName = "setGainSchedule";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(
+                    funcName, TrcDbgTrace.TraceLevel.API,
+                    "schedule=%s,key=%s",
+                    Boolean.toString(schedule != null), key.toString());
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        if (schedule != null && key == ScheduleKey.EXTERNAL && scheduleInput == null)
+        {
+            throw new IllegalArgumentException("External schedule key needs a schedule input.");
+        }
+
+        this.gainSchedule = schedule;
+        this.scheduleKey = key;
+        this.scheduleInput = scheduleInput;
+    }   //setGainSchedule
+
+    public void setGainSchedule(TrcGainSchedule schedule, ScheduleKey key)
+    {
+        setGainSchedule(schedule, key, null);
+    }   //setGainSchedule
+
     public double getKp()
     {
         final String funcName = "getKp";
@@ -404,8 +530,12 @@ public class TrcPidController
         {
             prevError = -prevError;
         }
-        totalError = 0.0;
+        integral = 0.0;
         settlingStartTime = HalUtil.getCurrentTime();
+        prevInput = input;
+        prevTime = settlingStartTime;
+        derivative = 0.0;
+        profiled = false;
 
         if (debugEnabled)
         {
@@ -413,6 +543,40 @@ public class TrcPidController
         }
     }   //setTarget
 
+    public void setProfiledTarget(double target, double velocity, double acceleration)
+    {
+        final String funcName = "setProfiledTarget";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(
+                    funcName, TrcDbgTrace.TraceLevel.API,
+                    "target=%f,vel=%f,accel=%f", target, velocity, acceleration);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        profiled = true;
+        profileTarget = target;
+        profileVelocity = velocity;
+        profileAcceleration = acceleration;
+    }   //setProfiledTarget
+
+    public double getCurrentInput()
+    {
+        final String funcName = "getCurrentInput";
+        double input = pidInput.getInput(this);
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API);
+            dbgTrace.traceExit(
+                    funcName, TrcDbgTrace.TraceLevel.API,
+                    "=%f", input);
+        }
+
+        return input;
+    }   //getCurrentInput
+
     public double getError()
     {
         final String funcName = "getError";
@@ -439,12 +603,20 @@ public class TrcPidController
         }
 
         prevError = 0.0;
-        totalError = 0.0;
+        integral = 0.0;
         setPoint = 0.0;
         output = 0.0;
+        prevTime = 0.0;
+        derivative = 0.0;
+        profiled = false;
     }   //reset
 
     public boolean isOnTarget()
+    {
+        return isOnTarget(HalUtil.getCurrentTime());
+    }   //isOnTarget
+
+    public boolean isOnTarget(double currTime)
     {
         final String funcName = "isOnTarget";
 
@@ -464,9 +636,9 @@ public class TrcPidController
         }
         else if (Math.abs(prevError) > tolerance)
         {
-            settlingStartTime = HalUtil.getCurrentTime();
+            settlingStartTime = currTime;
         }
-        else if (HalUtil.getCurrentTime() >= settlingStartTime + settlingTime)
+        else if (currTime >= settlingStartTime + settlingTime)
         {
             onTarget = true;
         }
@@ -482,42 +654,97 @@ public class TrcPidController
     }   //isOnTarget
 
     public double getOutput()
+    {
+        return getOutput(pidInput.getInput(this), HalUtil.getCurrentTime());
+    }   //getOutput
+
+    //
+    // This is for callers that update several controllers together. They sample each input
+    // once and pass one timestamp to all controllers, so the outputs are coherent.
+    //
+    public double getOutput(double input, double currTime)
     {
         final String funcName = "getOutput";
 
         if (debugEnabled)
         {
-            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API);
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API,
+                                "input=%f,time=%.3f", input, currTime);
         }
 
-        double error = setPoint - pidInput.getInput(this);
+        double error = (profiled? profileTarget: setPoint) - input;
+        double feedforward = profiled? kV*profileVelocity + kA*profileAcceleration: 0.0;
         if (inverted)
         {
             error = -error;
+            feedforward = -feedforward;
         }
 
-        if (kI != 0.0)
+        double gainP = kP;
+        double gainI = kI;
+        double gainD = kD;
+        double gainF = kF;
+        if (gainSchedule != null)
         {
-            double potentialGain = (totalError + error)*kI;
-            if (potentialGain >= maxOutput)
+            gainSchedule.update(
+                    scheduleKey == ScheduleKey.ERROR_MAGNITUDE? Math.abs(error):
+                    scheduleKey == ScheduleKey.SETPOINT? setPoint:
+                    scheduleInput.getScheduleInput(this));
+            gainP = gainSchedule.getKp();
+            gainI = gainSchedule.getKi();
+            gainD = gainSchedule.getKd();
+            gainF = gainSchedule.getKf();
+        }
+
+        double dt = 1.0;
+        if (timeNormalized)
+        {
+            //
+            // There is no elapsed time on the first call after the controller is reset, so
+            // only the proportional and feedforward terms apply.
+            //
+            dt = prevTime > 0.0? currTime - prevTime: 0.0;
+        }
+
+        if (gainI != 0.0 && dt > 0.0)
+        {
+            integral += gainI*error*dt;
+            if (integral > maxOutput)
             {
-                totalError = maxOutput/kI;
+                integral = maxOutput;
             }
-            else if (potentialGain > minOutput)
+            else if (integral < minOutput)
             {
-                totalError += error;
+                integral = minOutput;
             }
-            else
+        }
+
+        if (timeNormalized)
+        {
+            if (dt > 0.0)
             {
-                totalError = minOutput/kI;
+                double rate = (inverted? input - prevInput: prevInput - input)/dt;
+                derivative += (rate - derivative)*dt/(derivativeTimeConstant + dt);
             }
-        }
+            prevInput = input;
+            prevTime = currTime;
 
-        output =
-                kP*error +
-                kI*totalError +
-                kD*(error - prevError) +
-                kF*setPoint;
+            output =
+                    gainP*error +
+                    integral +
+                    gainD*derivative +
+                    gainF*setPoint +
+                    feedforward;
+        }
+        else
+        {
+            output =
+                    gainP*error +
+                    integral +
+                    gainD*(error - prevError) +
+                    gainF*setPoint +
+                    feedforward;
+        }
 
         prevError = error;
         if (output > maxOutput)
@@ -36,13 +36,18 @@ public class TrcPidDrive implements TrcTaskMgr.Task
     private static final int PIDDRIVEF_TURN_ONLY        = (1 << 2);
     private static final int PIDDRIVEF_SET_HEADING      = (1 << 3);
     private static final int PIDDRIVEF_CANCELED         = (1 << 4);
+    private static final int PIDDRIVEF_PROFILED         = (1 << 5);
 
     private String instanceName;
     private TrcDriveBase driveBase;
     private TrcPidController xPidCtrl;
     private TrcPidController yPidCtrl;
     private TrcPidController turnPidCtrl;
+    private TrcMotionProfile xProfile = null;
+    private TrcMotionProfile yProfile = null;
+    private TrcMotionProfile turnProfile = null;
     private TrcEvent notifyEvent;
+    private TrcEvent abortEvent = null;
     private double expiredTime;
     private int flags;
     private double manualX;
@@ -76,6 +81,28 @@ public class TrcPidDrive implements TrcTaskMgr.Task
         this.manualY = 0.0;
     }   //TrcPidDrive
 
+    public void setMotionProfiles(
+            TrcMotionProfile xProfile,
+            TrcMotionProfile yProfile,
+            TrcMotionProfile turnProfile)
+    {
+        final String funcName = "setMotionProfiles";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(
+                    funcName, TrcDbgTrace.TraceLevel.API,
+                    "x=%s,y=%s,turn=%s",
+                    Boolean.toString(xProfile != null), Boolean.toString(yProfile != null),
+                    Boolean.toString(turnProfile != null));
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        this.xProfile = xProfile;
+        this.yProfile = yProfile;
+        this.turnProfile = turnProfile;
+    }   //setMotionProfiles
+
     public void setTarget(
             double xTarget,
             double yTarget,
@@ -98,16 +125,19 @@ public class TrcPidDrive implements TrcTaskMgr.Task
         if (xPidCtrl != null)
         {
             xPidCtrl.setTarget(xTarget);
+            startProfile(xPidCtrl, xProfile);
         }
 
         if (yPidCtrl != null)
         {
             yPidCtrl.setTarget(yTarget);
+            startProfile(yPidCtrl, yProfile);
         }
 
         if (turnPidCtrl != null)
         {
             turnPidCtrl.setTarget(turnTarget);
+            startProfile(turnPidCtrl, turnProfile);
         }
 
         if (event != null)
@@ -132,6 +162,11 @@ public class TrcPidDrive implements TrcTaskMgr.Task
             flags |= PIDDRIVEF_TURN_ONLY;
         }
 
+        if (xProfile != null || yProfile != null || turnProfile != null)
+        {
+            flags |= PIDDRIVEF_PROFILED;
+        }
+
         setEnabled(true);
 
         if (debugEnabled)
@@ -214,6 +249,21 @@ public class TrcPidDrive implements TrcTaskMgr.Task
         }
     }   //setHeadingTarget
 
+    public void setAbortEvent(TrcEvent event)
+    {
+        final String funcName = "setAbortEvent";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(
+                    funcName, TrcDbgTrace.TraceLevel.API,
+                    "event=%s", event != null? event.toString(): "null");
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        abortEvent = event;
+    }   //setAbortEvent
+
     public boolean isEnabled()
     {
         final String funcName = "isEnabled";
@@ -270,6 +320,30 @@ public class TrcPidDrive implements TrcTaskMgr.Task
         return (flags & PIDDRIVEF_CANCELED) != 0;
     }   //isCanceled
 
+    private void startProfile(TrcPidController pidCtrl, TrcMotionProfile profile)
+    {
+        if (profile != null)
+        {
+            profile.start(pidCtrl.getCurrentInput(), pidCtrl.getTarget());
+        }
+    }   //startProfile
+
+    private boolean updateProfile(
+            TrcPidController pidCtrl, TrcMotionProfile profile, double currTime)
+    {
+        boolean done = true;
+
+        if (pidCtrl != null && profile != null)
+        {
+            profile.update(currTime);
+            pidCtrl.setProfiledTarget(
+                    profile.getPosition(), profile.getVelocity(), profile.getAcceleration());
+            done = profile.isDone();
+        }
+
+        return done;
+    }   //updateProfile
+
     private void stop()
     {
         final String funcName = "stop";
@@ -402,28 +476,64 @@ public class TrcPidDrive implements TrcTaskMgr.Task
                     "mode=%s", runMode.toString());
         }
 
-        double xPower =
-                (((flags & PIDDRIVEF_TURN_ONLY) != 0) || (xPidCtrl == null))?
-                0.0: xPidCtrl.getOutput();
-        double yPower =
-                (((flags & PIDDRIVEF_TURN_ONLY) != 0) || (yPidCtrl == null))?
-                0.0: yPidCtrl.getOutput();
-        double turnPower = (turnPidCtrl == null)? 0.0: turnPidCtrl.getOutput();
+        //
+        // Update all axes in one pass with a single timestamp. Each PID input is sampled once
+        // and the outputs and on-target states of all axes are computed from the same loop.
+        //
+        double currTime = HalUtil.getCurrentTime();
+        boolean turnOnly = (flags & PIDDRIVEF_TURN_ONLY) != 0;
+        //
+        // Move the PID targets along the motion profiles, if any. The operation is not done
+        // before all profiles have reached their final targets.
+        //
+        boolean profilesDone = true;
+        if ((flags & PIDDRIVEF_PROFILED) != 0)
+        {
+            profilesDone &= updateProfile(xPidCtrl, xProfile, currTime);
+            profilesDone &= updateProfile(yPidCtrl, yProfile, currTime);
+            profilesDone &= updateProfile(turnPidCtrl, turnProfile, currTime);
+        }
+
+        double xPower = 0.0;
+        double yPower = 0.0;
+        double turnPower = 0.0;
+        boolean xOnTarget = true;
+        boolean yOnTarget = true;
+        boolean turnOnTarget = true;
 
-        boolean expired =
-                expiredTime != 0.0 && HalUtil.getCurrentTime() >= expiredTime;
-        boolean xOnTarget = xPidCtrl == null || xPidCtrl.isOnTarget();
-        boolean yOnTarget = yPidCtrl == null || yPidCtrl.isOnTarget();
-        boolean turnOnTarget = turnPidCtrl == null || turnPidCtrl.isOnTarget();
+        if (xPidCtrl != null && !turnOnly)
+        {
+            xPower = xPidCtrl.getOutput(xPidCtrl.getCurrentInput(), currTime);
+            xOnTarget = xPidCtrl.isOnTarget(currTime);
+        }
+
+        if (yPidCtrl != null && !turnOnly)
+        {
+            yPower = yPidCtrl.getOutput(yPidCtrl.getCurrentInput(), currTime);
+            yOnTarget = yPidCtrl.isOnTarget(currTime);
+        }
+
+        if (turnPidCtrl != null)
+        {
+            turnPower = turnPidCtrl.getOutput(turnPidCtrl.getCurrentInput(), currTime);
+            turnOnTarget = turnPidCtrl.isOnTarget(currTime);
+        }
 
-        if ((flags & PIDDRIVEF_SET_HEADING) != 0)
+        boolean expired = expiredTime != 0.0 && currTime >= expiredTime;
+
+        if (abortEvent != null && abortEvent.isSignaled())
+        {
+            //
+            // A sensor we depend on has failed, stop instead of driving on bad data.
+            //
+            cancel();
+        }
+        else if ((flags & PIDDRIVEF_SET_HEADING) != 0)
         {
             driveBase.mecanumDrive_Cartesian(manualX, manualY, turnPower, false, 0.0);
         }
         else if (expired ||
-                 turnOnTarget &&
-                 ((flags & PIDDRIVEF_TURN_ONLY) != 0 ||
-                  xOnTarget && yOnTarget))
+                 profilesDone && turnOnTarget && (turnOnly || xOnTarget && yOnTarget))
         {
             if ((flags & PIDDRIVEF_HOLD_TARGET) == 0)
             {
@@ -69,6 +69,8 @@ public class TrcPidMotor implements TrcTaskMgr.Task
     private double stallMinPower = 0.0;
     private double stallTimeout = 0.0;
     private double resetTimeout = 0.0;
+    private TrcMotionProfile motionProfile = null;
+    private boolean profiled = false;
 
     /**
      * Constructor: Creates an instance of the object.
@@ -290,6 +292,28 @@ public class TrcPidMotor implements TrcTaskMgr.Task
         this.resetTimeout = resetTimeout;
     }   //setStallProtection
 
+    /**
+     * This method sets the motion profile for PID operations started by setTarget. The PID
+     * target then moves along the profile instead of jumping to the final target, and the
+     * profile velocity and acceleration are fed forward by the PID controller. PID power
+     * operations are not profiled.
+     *
+     * @param profile specifies the motion profile, null to disable profiling.
+     */
+    public void setMotionProfile(TrcMotionProfile profile)
+    {
+        final String funcName = "setMotionProfile";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API,
+                                "profile=%s", Boolean.toString(profile != null));
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        this.motionProfile = profile;
+    }   //setMotionProfile
+
     /**
      * This method starts a PID operation by setting the PID target.
      *
@@ -300,8 +324,10 @@ public class TrcPidMotor implements TrcTaskMgr.Task
      *                without the specified timeout, the operation will be canceled and the
      *                event will be signaled. If no timeout is specified, it should be set to
      *                zero.
+     * @param profiled specifies true to follow the motion profile if there is one.
      */
-    private void setTarget(double target, boolean holdTarget, TrcEvent event, double timeout)
+    private void setTarget(
+            double target, boolean holdTarget, TrcEvent event, double timeout, boolean profiled)
     {
         final String funcName = "setTarget";
 
@@ -327,6 +353,11 @@ public class TrcPidMotor implements TrcTaskMgr.Task
         // Set a new PID target.
         //
         pidCtrl.setTarget(target);
+        this.profiled = profiled && motionProfile != null;
+        if (this.profiled)
+        {
+            motionProfile.start(pidCtrl.getCurrentInput(), pidCtrl.getTarget());
+        }
 
         //
         // If a notification event is provided, clear it.
@@ -370,7 +401,7 @@ public class TrcPidMotor implements TrcTaskMgr.Task
      */
     public void setTarget(double target, TrcEvent event, double timeout)
     {
-        setTarget(target, false, event, timeout);
+        setTarget(target, false, event, timeout, true);
     }   //setTarget
 
     /**
@@ -381,7 +412,7 @@ public class TrcPidMotor implements TrcTaskMgr.Task
      */
     public void setTarget(double target, boolean holdTarget)
     {
-        setTarget(target, holdTarget, null, 0.0);
+        setTarget(target, holdTarget, null, 0.0, true);
     }   //setTarget
 
     /**
@@ -556,7 +587,7 @@ public class TrcPidMotor implements TrcTaskMgr.Task
                     //
                     // Hold target at current position.
                     //
-                    setTarget(motor1.getPosition()*positionScale, true, null, 0.0);
+                    setTarget(motor1.getPosition()*positionScale, true, null, 0.0, false);
                 }
                 else
                 {
@@ -573,7 +604,7 @@ public class TrcPidMotor implements TrcTaskMgr.Task
                 //
                 power = Math.abs(power);
                 pidCtrl.setOutputRange(-power, power);
-                setTarget(currTarget, holdTarget, null, 0.0);
+                setTarget(currTarget, holdTarget, null, 0.0, false);
             }
             prevTarget = currTarget;
         }
@@ -734,6 +765,7 @@ public class TrcPidMotor implements TrcTaskMgr.Task
         //
         setActive(false);
         pidCtrl.reset();
+        profiled = false;
 
         if (stopMotor)
         {
@@ -884,13 +916,26 @@ public class TrcPidMotor implements TrcTaskMgr.Task
         }
         else
         {
+            //
+            // If we are following a motion profile, move the PID target along the profile.
+            // We have not reached target before the profile is done.
+            //
+            boolean profileDone = true;
+            if (profiled)
+            {
+                motionProfile.update();
+                pidCtrl.setProfiledTarget(
+                        motionProfile.getPosition(), motionProfile.getVelocity(),
+                        motionProfile.getAcceleration());
+                profileDone = motionProfile.isDone();
+            }
             //
             // If we are not holding target and has reached target or
             // we set a timeout and it has expired, we are done with the
             // operation. Stop the motor and if there is a notification
             // event, signal it.
             //
-            if (!holdTarget && pidCtrl.isOnTarget() ||
+            if (!holdTarget && profileDone && pidCtrl.isOnTarget() ||
                 expiredTime != 0.0 && HalUtil.getCurrentTime() >= expiredTime)
             {
                 stop(true);
@@ -0,0 +1,237 @@
+/*
+ * Titan Robotics Framework Library
+ * Copyright (c) 2016 Titan Robotics Club (http://www.titanrobotics.net)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package trclib;
+
+/**
+ * This class implements a lock-free single producer single consumer queue of
+ * timestamped multi-axis sensor samples. It is intended for sensors that deliver
+ * data on their own thread (e.g. Android sensor callbacks) faster than the robot
+ * loop can poll them. The producer thread calls put() and the consumer thread
+ * drains the queue with peekTimestamp(), peekValue() and remove(). All storage is
+ * allocated up front so neither side allocates memory. If the queue is full, the
+ * new sample is dropped and counted. Only one thread may put and only one thread
+ * may consume.
+ */
+public class TrcSampleQueue
+{
+    private static final String moduleName = "TrcSampleQueue";
+    private static final boolean debugEnabled = false;
+    private TrcDbgTrace dbgTrace = null;
+
+    private final String instanceName;
+    private final int numAxes;
+    private final int capacity;
+    private final int mask;
+    private final double[] timestamps;
+    private final double[] values;
+    //
+    // head is only written by the producer and tail is only written by the consumer.
+    // The volatile write of head publishes the sample data written before it and the
+    // volatile write of tail releases the slot back to the producer.
+    //
+    private volatile long head = 0;
+    private volatile long tail = 0;
+    private volatile long droppedCount = 0;
+
+    /**
+     * Constructor: Creates an instance of the object.
+     *
+     * @param instanceName specifies the instance name.
+     * @param capacity specifies the minimum number of samples the queue can hold. It is
+     *                 rounded up to the next power of 2.
+     * @param numAxes specifies the number of axes in each sample.
+     */
+    public TrcSampleQueue(final String instanceName, int capacity, int numAxes)
+    {
+        if (debugEnabled)
+        {
+            dbgTrace = new TrcDbgTrace(moduleName + "." + instanceName,
+                                       false,
+                                       TrcDbgTrace.TraceLevel.API,
+                                       TrcDbgTrace.MsgLevel.INFO);
+        }
+
+        if (capacity <= 0 || capacity > (1 << 20))
+        {
+            throw new IllegalArgumentException("capacity must be between 1 and 2^20.");
+        }
+
+        if (numAxes <= 0)
+        {
+            throw new IllegalArgumentException("Queue must have at least one axis.");
+        }
+
+        int size = 1;
+        while (size < capacity)
+        {
+            size <<= 1;
+        }
+
+        this.instanceName = instanceName;
+        this.numAxes = numAxes;
+        this.capacity = size;
+        this.mask = size - 1;
+        timestamps = new double[size];
+        values = new double[size*numAxes];
+    }   //TrcSampleQueue
+
+    /**
+     * This method returns the instance name.
+     *
+     * @return instance name.
+     */
+    public String toString()
+    {
+        return instanceName;
+    }   //toString
+
+    /**
+     * This method returns the number of samples the queue can hold.
+     *
+     * @return queue capacity.
+     */
+    public int getCapacity()
+    {
+        return capacity;
+    }   //getCapacity
+
+    /**
+     * This method returns the number of axes in each sample.
+     *
+     * @return number of axes.
+     */
+    public int getNumAxes()
+    {
+        return numAxes;
+    }   //getNumAxes
+
+    /**
+     * This method returns the number of samples dropped because the queue was full.
+     *
+     * @return number of dropped samples.
+     */
+    public long getDroppedCount()
+    {
+        return droppedCount;
+    }   //getDroppedCount
+
+    /**
+     * This method is called by the producer to add a sample to the queue. If the values
+     * array has more elements than the number of axes, the extra elements are ignored.
+     *
+     * @param timestamp specifies the timestamp of the sample.
+     * @param sampleValues specifies the sample values, one for each axis.
+     * @return true if the sample is queued, false if the queue is full.
+     */
+    public boolean put(double timestamp, double[] sampleValues)
+    {
+        long h = head;
+        boolean success = h - tail < capacity;
+
+        if (success)
+        {
+            int slot = (int)h & mask;
+
+            timestamps[slot] = timestamp;
+            System.arraycopy(sampleValues, 0, values, slot*numAxes, numAxes);
+            head = h + 1;
+        }
+        else
+        {
+            droppedCount = droppedCount + 1;
+        }
+
+        return success;
+    }   //put
+
+    /**
+     * This method returns the number of samples in the queue. When called by the
+     * consumer, the queue has at least that many samples to remove.
+     *
+     * @return number of queued samples.
+     */
+    public int size()
+    {
+        return (int)(head - tail);
+    }   //size
+
+    /**
+     * This method checks if the queue is empty.
+     *
+     * @return true if the queue is empty, false otherwise.
+     */
+    public boolean isEmpty()
+    {
+        return head == tail;
+    }   //isEmpty
+
+    /**
+     * This method is called by the consumer to return the timestamp of the oldest sample.
+     * The queue must not be empty.
+     *
+     * @return timestamp of the oldest sample.
+     */
+    public double peekTimestamp()
+    {
+        return timestamps[(int)tail & mask];
+    }   //peekTimestamp
+
+    /**
+     * This method is called by the consumer to return the specified axis value of the
+     * oldest sample. The queue must not be empty.
+     *
+     * @param index specifies the axis index.
+     * @return axis value of the oldest sample.
+     */
+    public double peekValue(int index)
+    {
+        return values[((int)tail & mask)*numAxes + index];
+    }   //peekValue
+
+    /**
+     * This method is called by the consumer to remove the oldest sample. The queue must
+     * not be empty.
+     */
+    public void remove()
+    {
+        tail = tail + 1;
+    }   //remove
+
+    /**
+     * This method is called by the consumer to discard all queued samples.
+     */
+    public void clear()
+    {
+        final String funcName = "clear";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        tail = head;
+    }   //clear
+
+}   //class TrcSampleQueue
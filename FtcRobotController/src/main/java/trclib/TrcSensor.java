@@ -97,6 +97,10 @@ public abstract class TrcSensor
     private int signs[] = null;
     private double scales[] = null;
     private int processOptions = PROCESSOPTION_APPLY_ALL;
+    private double[] queuedTimestamps = null;
+    private double[] queuedValues = null;
+    private boolean[] hasQueuedData = null;
+    private double[] dataTimestamps = null;
 
     /**
      * Constructor: Creates an instance of the object.
@@ -149,6 +153,10 @@ public abstract class TrcSensor
         deadbands = new double[numAxes];
         signs = new int[numAxes];
         scales = new double[numAxes];
+        queuedTimestamps = new double[numAxes];
+        queuedValues = new double[numAxes];
+        hasQueuedData = new boolean[numAxes];
+        dataTimestamps = new double[numAxes];
         for (int i = 0; i < numAxes; i++)
         {
             zeroOffsets[i] = 0.0;
@@ -265,6 +273,9 @@ public abstract class TrcSensor
      * The data will go through a filter if a filter is supplied for the axis.
      * The calibration data will be applied to the sensor data if applicable.
      * The sign and scale will also be applied.
+     * If the data type has a sample queue and its samples are being processed by
+     * processQueuedSample, the last processed queued sample of the axis is returned
+     * instead, so the filter of the axis only ever sees each sample once.
      *
      * @param index specifies the axis index.
      * @param dataType specifies the data type object.
@@ -273,9 +284,111 @@ public abstract class TrcSensor
     public SensorData getData(int index, Object dataType)
     {
         final String funcName = "getData";
+        SensorData data;
 
-        SensorData data = getRawData(index, dataType);
-        double value = (Double)data.value;
+        if (hasQueuedData[index] && getSampleQueue(dataType) != null)
+        {
+            data = new SensorData(queuedTimestamps[index], queuedValues[index]);
+        }
+        else
+        {
+            data = getRawData(index, dataType);
+            data.value = processData(index, (Double)data.value);
+        }
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API, "index=%d", index);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API,
+                               "=(timestamp=%0.3f,value=%f", data.timestamp, data.value);
+        }
+
+        return data;
+    }   //getData
+
+    /**
+     * This method returns the processed data value for the specified axis and type. It is the
+     * same as getData except that the value is returned as a primitive and the timestamp is
+     * kept for getDataTimestamp. If the last processed queued sample of the axis is returned,
+     * nothing is allocated. Otherwise the cost is whatever getRawData of the platform sensor
+     * allocates.
+     *
+     * @param index specifies the axis index.
+     * @param dataType specifies the data type object.
+     * @return processed sensor data value for the axis.
+     */
+    public double getDataValue(int index, Object dataType)
+    {
+        final String funcName = "getDataValue";
+        double value;
+
+        if (hasQueuedData[index] && getSampleQueue(dataType) != null)
+        {
+            dataTimestamps[index] = queuedTimestamps[index];
+            value = queuedValues[index];
+        }
+        else
+        {
+            SensorData data = getRawData(index, dataType);
+            dataTimestamps[index] = data.timestamp;
+            value = processData(index, (Double)data.value);
+        }
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API, "index=%d", index);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API,
+                               "=(timestamp=%.3f,value=%f", dataTimestamps[index], value);
+        }
+
+        return value;
+    }   //getDataValue
+
+    /**
+     * This method returns the timestamp of the value last returned by getDataValue for the
+     * specified axis.
+     *
+     * @param index specifies the axis index.
+     * @return timestamp of the last data value.
+     */
+    public double getDataTimestamp(int index)
+    {
+        return dataTimestamps[index];
+    }   //getDataTimestamp
+
+    /**
+     * This method processes a raw sample drained from the sample queue the same way getData
+     * processes polled data. The value will go through the filter of the axis if there is
+     * one, the calibration data will be applied if applicable, and the sign and scale will
+     * also be applied. The processed sample is remembered and returned by getData from then
+     * on, so the queued samples and getData share the filter state without feeding it twice.
+     *
+     * @param index specifies the axis index.
+     * @param timestamp specifies the timestamp of the sample.
+     * @param value specifies the raw data value.
+     * @return processed data value.
+     */
+    public double processQueuedSample(int index, double timestamp, double value)
+    {
+        value = processData(index, value);
+        queuedTimestamps[index] = timestamp;
+        queuedValues[index] = value;
+        hasQueuedData[index] = true;
+
+        return value;
+    }   //processQueuedSample
+
+    /**
+     * This method processes a raw data value of the specified axis. The value will go through
+     * the filter of the axis if there is one, the calibration data will be applied if
+     * applicable, and the sign and scale will also be applied.
+     *
+     * @param index specifies the axis index.
+     * @param value specifies the raw data value.
+     * @return processed data value.
+     */
+    private double processData(int index, double value)
+    {
         //
         // Apply filter if necessary.
         //
@@ -301,17 +414,9 @@ public abstract class TrcSensor
         // Change sign and scale data if necessary.
         //
         value *= signs[index]*scales[index];
-        data.value = value;
 
-        if (debugEnabled)
-        {
-            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API, "index=%d", index);
-            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API,
-                               "=(timestamp=%0.3f,value=%f", data.timestamp, data.value);
-        }
-
-        return data;
-    }   //getData
+        return value;
+    }   //processData
 
     /**
      * This method calibrates the sensor by reading a number of sensor data samples,
@@ -408,4 +513,54 @@ public abstract class TrcSensor
         return false;
     }   //isCalibrating
 
+    /**
+     * This method returns the queue of raw samples of the specified data type if the
+     * sensor delivers its data asynchronously and buffers every sample. A consumer such
+     * as TrcDataIntegrator can then drain and process all samples taken since its last
+     * loop instead of just the latest one. The axes of the queued samples must match the
+     * axes of the sensor. The default implementation returns null, meaning the sensor
+     * data can only be polled.
+     *
+     * @param dataType specifies the data type.
+     * @return sample queue of the data type, null if not supported.
+     */
+    public TrcSampleQueue getSampleQueue(Object dataType)
+    {
+        return null;
+    }   //getSampleQueue
+
+    /**
+     * This method is called by a consumer of the sample queue, such as TrcDataIntegrator,
+     * when it starts or stops draining the queue of the specified data type. A sensor that
+     * buffers its samples should only do so while a consumer is attached, otherwise the queue
+     * fills up and drops samples nobody asked for. Stopping also forgets the queued samples
+     * processed so far, so getData goes back to polling. A subclass that overrides this method
+     * must call the super class method.
+     *
+     * @param dataType specifies the data type.
+     * @param enabled specifies true when a consumer attaches, false when it detaches.
+     */
+    public void setSampleQueueEnabled(Object dataType, boolean enabled)
+    {
+        if (!enabled)
+        {
+            for (int i = 0; i < numAxes; i++)
+            {
+                hasQueuedData[i] = false;
+            }
+        }
+    }   //setSampleQueueEnabled
+
+    /**
+     * This method forgets the last processed queued sample of the specified axis, so getData
+     * polls the axis until the next queued sample is processed. It is called when the consumer
+     * of the queue resets.
+     *
+     * @param index specifies the axis index.
+     */
+    public void clearQueuedSample(int index)
+    {
+        hasQueuedData[index] = false;
+    }   //clearQueuedSample
+
 }   //class TrcSensor
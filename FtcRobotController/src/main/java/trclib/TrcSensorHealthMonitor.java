@@ -0,0 +1,533 @@
+/*
+ * Titan Robotics Framework Library
+ * Copyright (c) 2016 Titan Robotics Club (http://www.titanrobotics.net)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package trclib;
+
+import java.util.ArrayList;
+
+import hallib.HalUtil;
+
+/**
+ * This class implements a sensor health monitor. Sensors are registered with the
+ * monitor by specifying a sensor data source and a data index. The monitor runs as a
+ * periodic task that polls every registered sensor each loop and checks for the
+ * following faults:
+ * - Stale: the sensor data timestamp has not changed for longer than a timeout, e.g.
+ *   an I2C port that stopped updating, or the sensor has produced no data at all within
+ *   the timeout after monitoring was enabled, e.g. an unplugged sensor.
+ * - Stuck: the sensor value has not moved by more than a tolerance for longer than a
+ *   time limit, e.g. a sensor that keeps returning the same reading.
+ * - Saturated: the sensor value has been pinned at or beyond its output limits for
+ *   longer than a time limit, e.g. a sonar that lost its echo.
+ * - Out of range: the sensor value is outside of its plausible range.
+ * All checks are disabled until configured. When the faults of a sensor change, the
+ * monitor calls the fault handler if there is one. The monitor also keeps the fault
+ * event signaled as long as any sensor has a fault, so that a consumer such as
+ * TrcPidDrive can abort instead of acting on bad data. The monitor runs as a
+ * pre-continuous task, so a fault is flagged before the post-continuous tasks of the
+ * same loop run. The statistics of each sensor are also kept in a TrcSensorStats.
+ */
+public class TrcSensorHealthMonitor implements TrcTaskMgr.Task
+{
+    private static final String moduleName = "TrcSensorHealthMonitor";
+    private static final boolean debugEnabled = false;
+    private TrcDbgTrace dbgTrace = null;
+
+    public static final int FAULT_STALE         = (1 << 0);
+    public static final int FAULT_STUCK         = (1 << 1);
+    public static final int FAULT_SATURATED     = (1 << 2);
+    public static final int FAULT_OUT_OF_RANGE  = (1 << 3);
+
+    /**
+     * This interface is implemented by the caller to be notified when the faults of a
+     * sensor change.
+     */
+    public interface FaultHandler
+    {
+        /**
+         * This method is called when the faults of a sensor change.
+         *
+         * @param monitor specifies the monitor that detected the change.
+         * @param sensorId specifies the ID of the sensor returned by addSensor.
+         * @param faults specifies the new fault flags, 0 if the sensor recovered.
+         */
+        public void sensorFaultEvent(TrcSensorHealthMonitor monitor, int sensorId, int faults);
+    }   //interface FaultHandler
+
+    /**
+     * This class keeps the configuration and the state of a monitored sensor.
+     */
+    private static class SensorEntry
+    {
+        TrcSensorDataSource sensor;
+        int dataIndex;
+        TrcSensorStats stats;
+        double staleTimeout = 0.0;
+        double stuckTime = 0.0;
+        double stuckTolerance = 0.0;
+        double saturationLow = 0.0;
+        double saturationHigh = 0.0;
+        double saturationTime = 0.0;
+        double rangeLow = 0.0;
+        double rangeHigh = 0.0;
+        boolean stuckEnabled = false;
+        boolean saturationEnabled = false;
+        boolean rangeEnabled = false;
+
+        boolean hasData = false;
+        double lastTimestamp = 0.0;
+        double lastUpdateTime = 0.0;
+        double refValue = 0.0;
+        double refTime = 0.0;
+        double saturationStartTime = -1.0;
+        int faults = 0;
+    }   //class SensorEntry
+
+    private final String instanceName;
+    private ArrayList<SensorEntry> entries = new ArrayList<SensorEntry>();
+    private FaultHandler faultHandler = null;
+    private TrcEvent faultEvent = null;
+    private boolean enabled = false;
+
+    /**
+     * Constructor: Creates an instance of the object.
+     *
+     * @param instanceName specifies the instance name.
+     * @param faultHandler specifies the fault handler, can be null if not needed.
+     * @param faultEvent specifies the event to be signaled while any sensor has a fault,
+     *                   can be null if not needed.
+     */
+    public TrcSensorHealthMonitor(
+            final String instanceName, FaultHandler faultHandler, TrcEvent faultEvent)
+    {
+        if (debugEnabled)
+        {
+            dbgTrace = new TrcDbgTrace(
+                    moduleName + "." + instanceName,
+                    false,
+                    TrcDbgTrace.TraceLevel.API,
+                    TrcDbgTrace.MsgLevel.INFO);
+        }
+
+        this.instanceName = instanceName;
+        this.faultHandler = faultHandler;
+        this.faultEvent = faultEvent;
+    }   //TrcSensorHealthMonitor
+
+    /**
+     * This method returns the instance name.
+     *
+     * @return instance name.
+     */
+    public String toString()
+    {
+        return instanceName;
+    }   //toString
+
+    /**
+     * This method registers a sensor with the monitor.
+     *
+     * @param name specifies the name of the sensor, used for the statistics.
+     * @param sensor specifies the sensor data source.
+     * @param dataIndex specifies the data index of the sensor data source.
+     * @return sensor ID to be used with the other methods.
+     */
+    public int addSensor(String name, TrcSensorDataSource sensor, int dataIndex)
+    {
+        final String funcName = "addSensor";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API,
+                                "name=%s,index=%d", name, dataIndex);
+        }
+
+        if (sensor == null)
+        {
+            throw new NullPointerException("Sensor cannot be null.");
+        }
+
+        SensorEntry entry = new SensorEntry();
+        entry.sensor = sensor;
+        entry.dataIndex = dataIndex;
+        entry.stats = new TrcSensorStats(name, null, dataIndex);
+        entry.lastUpdateTime = HalUtil.getCurrentTime();
+        entries.add(entry);
+        int sensorId = entries.size() - 1;
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API, "=%d", sensorId);
+        }
+
+        return sensorId;
+    }   //addSensor
+
+    /**
+     * This method sets the stale data timeout of a sensor.
+     *
+     * @param sensorId specifies the sensor ID.
+     * @param timeout specifies the time in seconds the data timestamp may stay unchanged,
+     *                0 to disable the check.
+     */
+    public void setStaleTimeout(int sensorId, double timeout)
+    {
+        entries.get(sensorId).staleTimeout = timeout;
+    }   //setStaleTimeout
+
+    /**
+     * This method enables stuck value detection of a sensor. Sensors with some noise
+     * never return exactly the same value for long, so a tolerance of 0 detects a sensor
+     * that is frozen.
+     *
+     * @param sensorId specifies the sensor ID.
+     * @param stuckTime specifies the time in seconds the value may stay within tolerance.
+     * @param tolerance specifies the change in value that is considered as moving.
+     */
+    public void setStuckDetection(int sensorId, double stuckTime, double tolerance)
+    {
+        SensorEntry entry = entries.get(sensorId);
+        entry.stuckTime = stuckTime;
+        entry.stuckTolerance = tolerance;
+        entry.stuckEnabled = stuckTime > 0.0;
+    }   //setStuckDetection
+
+    /**
+     * This method enables saturation detection of a sensor.
+     *
+     * @param sensorId specifies the sensor ID.
+     * @param low specifies the low output limit of the sensor.
+     * @param high specifies the high output limit of the sensor.
+     * @param saturationTime specifies the time in seconds the value may stay at the limits,
+     *                       0 to flag it immediately.
+     */
+    public void setSaturationLimits(int sensorId, double low, double high, double saturationTime)
+    {
+        if (low > high)
+        {
+            throw new IllegalArgumentException("low must not be greater than high.");
+        }
+
+        SensorEntry entry = entries.get(sensorId);
+        entry.saturationLow = low;
+        entry.saturationHigh = high;
+        entry.saturationTime = saturationTime;
+        entry.saturationEnabled = true;
+    }   //setSaturationLimits
+
+    /**
+     * This method enables range checking of a sensor.
+     *
+     * @param sensorId specifies the sensor ID.
+     * @param low specifies the lowest plausible value.
+     * @param high specifies the highest plausible value.
+     */
+    public void setValidRange(int sensorId, double low, double high)
+    {
+        if (low > high)
+        {
+            throw new IllegalArgumentException("low must not be greater than high.");
+        }
+
+        SensorEntry entry = entries.get(sensorId);
+        entry.rangeLow = low;
+        entry.rangeHigh = high;
+        entry.rangeEnabled = true;
+    }   //setValidRange
+
+    /**
+     * This method enables/disables the monitor. The state of all sensors is reset when
+     * enabled.
+     *
+     * @param enabled specifies true to enable, false to disable.
+     */
+    public void setEnabled(boolean enabled)
+    {
+        final String funcName = "setEnabled";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(
+                    funcName, TrcDbgTrace.TraceLevel.API,
+                    "enabled=%s", Boolean.toString(enabled));
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        this.enabled = enabled;
+        if (enabled)
+        {
+            double currTime = HalUtil.getCurrentTime();
+
+            for (int i = 0; i < entries.size(); i++)
+            {
+                SensorEntry entry = entries.get(i);
+                //
+                // Start the stale clock now, so a sensor that never produces a value is
+                // flagged stale too.
+                //
+                entry.hasData = false;
+                entry.lastUpdateTime = currTime;
+                entry.saturationStartTime = -1.0;
+                entry.faults = 0;
+                entry.stats.reset();
+            }
+
+            if (faultEvent != null)
+            {
+                faultEvent.clear();
+            }
+
+            TrcTaskMgr.getInstance().registerTask(
+                    instanceName, this, TrcTaskMgr.TaskType.PRECONTINUOUS_TASK);
+        }
+        else
+        {
+            TrcTaskMgr.getInstance().unregisterTask(this, TrcTaskMgr.TaskType.PRECONTINUOUS_TASK);
+        }
+    }   //setEnabled
+
+    /**
+     * This method checks if the monitor is enabled.
+     *
+     * @return true if enabled, false otherwise.
+     */
+    public boolean isEnabled()
+    {
+        return enabled;
+    }   //isEnabled
+
+    /**
+     * This method returns the fault flags of a sensor.
+     *
+     * @param sensorId specifies the sensor ID.
+     * @return fault flags, 0 if healthy.
+     */
+    public int getFaults(int sensorId)
+    {
+        return entries.get(sensorId).faults;
+    }   //getFaults
+
+    /**
+     * This method checks if any sensor has a fault.
+     *
+     * @return true if any sensor has a fault, false otherwise.
+     */
+    public boolean hasFaults()
+    {
+        for (int i = 0; i < entries.size(); i++)
+        {
+            if (entries.get(i).faults != 0)
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }   //hasFaults
+
+    /**
+     * This method returns the statistics of a sensor.
+     *
+     * @param sensorId specifies the sensor ID.
+     * @return sensor statistics.
+     */
+    public TrcSensorStats getStats(int sensorId)
+    {
+        return entries.get(sensorId).stats;
+    }   //getStats
+
+    /**
+     * This method checks a new sample of a sensor and returns its fault flags.
+     *
+     * @param entry specifies the sensor entry.
+     * @param currTime specifies the current time.
+     * @param timestamp specifies the timestamp of the sample.
+     * @param value specifies the sample value.
+     * @return fault flags.
+     */
+    private int checkSensor(SensorEntry entry, double currTime, double timestamp, double value)
+    {
+        int faults = 0;
+
+        if (!entry.hasData)
+        {
+            entry.hasData = true;
+            entry.lastTimestamp = timestamp;
+            entry.lastUpdateTime = currTime;
+            entry.refValue = value;
+            entry.refTime = currTime;
+        }
+        else if (timestamp != entry.lastTimestamp)
+        {
+            entry.lastTimestamp = timestamp;
+            entry.lastUpdateTime = currTime;
+        }
+        entry.stats.addSample(timestamp, value);
+
+        if (entry.staleTimeout > 0.0 && currTime - entry.lastUpdateTime > entry.staleTimeout)
+        {
+            faults |= FAULT_STALE;
+        }
+
+        if (entry.stuckEnabled)
+        {
+            if (Math.abs(value - entry.refValue) > entry.stuckTolerance)
+            {
+                entry.refValue = value;
+                entry.refTime = currTime;
+            }
+            else if (currTime - entry.refTime > entry.stuckTime)
+            {
+                faults |= FAULT_STUCK;
+            }
+        }
+
+        if (entry.saturationEnabled)
+        {
+            if (value <= entry.saturationLow || value >= entry.saturationHigh)
+            {
+                if (entry.saturationStartTime < 0.0)
+                {
+                    entry.saturationStartTime = currTime;
+                }
+
+                if (currTime - entry.saturationStartTime >= entry.saturationTime)
+                {
+                    faults |= FAULT_SATURATED;
+                }
+            }
+            else
+            {
+                entry.saturationStartTime = -1.0;
+            }
+        }
+
+        if (entry.rangeEnabled && (value < entry.rangeLow || value > entry.rangeHigh))
+        {
+            faults |= FAULT_OUT_OF_RANGE;
+        }
+
+        return faults;
+    }   //checkSensor
+
+    //
+    // Implements TrcTaskMgr.Task
+    //
+
+    @Override
+    public void startTask(TrcRobot.RunMode runMode)
+    {
+    }   //startTask
+
+    @Override
+    public void stopTask(TrcRobot.RunMode runMode)
+    {
+    }   //stopTask
+
+    @Override
+    public void prePeriodicTask(TrcRobot.RunMode runMode)
+    {
+    }   //prePeriodicTask
+
+    @Override
+    public void postPeriodicTask(TrcRobot.RunMode runMode)
+    {
+    }   //postPeriodicTask
+
+    /**
+     * This method is called periodically to check the health of all registered sensors.
+     *
+     * @param runMode specifies the competition mode that is running.
+     */
+    @Override
+    public void preContinuousTask(TrcRobot.RunMode runMode)
+    {
+        final String funcName = "preContinuousTask";
+        double currTime = HalUtil.getCurrentTime();
+        boolean anyFault = false;
+
+        for (int i = 0; i < entries.size(); i++)
+        {
+            SensorEntry entry = entries.get(i);
+            TrcSensor.SensorData data = entry.sensor.getSensorData(entry.dataIndex);
+            int faults = entry.faults;
+
+            if (data != null && data.value != null)
+            {
+                double value;
+                if (data.value instanceof Integer)
+                {
+                    value = (double)(Integer)data.value;
+                }
+                else if (data.value instanceof Double)
+                {
+                    value = (Double)data.value;
+                }
+                else
+                {
+                    throw new NumberFormatException(
+                            "Sensor data must be either integer or double.");
+                }
+
+                faults = checkSensor(entry, currTime, data.timestamp, value);
+            }
+            else if (entry.staleTimeout > 0.0 &&
+                     currTime - entry.lastUpdateTime > entry.staleTimeout)
+            {
+                faults |= FAULT_STALE;
+            }
+
+            if (faults != entry.faults)
+            {
+                entry.faults = faults;
+
+                if (debugEnabled)
+                {
+                    dbgTrace.traceInfo(
+                            funcName, "%s faults changed to %x", entry.stats.toString(), faults);
+                }
+
+                if (faultHandler != null)
+                {
+                    faultHandler.sensorFaultEvent(this, i, faults);
+                }
+            }
+
+            if (faults != 0)
+            {
+                anyFault = true;
+            }
+        }
+
+        if (faultEvent != null)
+        {
+            faultEvent.set(anyFault);
+        }
+    }   //preContinuousTask
+
+    @Override
+    public void postContinuousTask(TrcRobot.RunMode runMode)
+    {
+    }   //postContinuousTask
+
+}   //class TrcSensorHealthMonitor
@@ -0,0 +1,432 @@
+/*
+ * Titan Robotics Framework Library
+ * Copyright (c) 2016 Titan Robotics Club (http://www.titanrobotics.net)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package trclib;
+
+import hallib.HalDashboard;
+
+/**
+ * This class keeps streaming statistics of one data index of a sensor data source. It
+ * computes the running mean, variance, min and max of the sample values, and the
+ * sample rate and jitter (standard deviation of the interval between samples) from the
+ * sample timestamps. Each sample is processed in constant time without allocating
+ * memory using Welford's method. When enabled, it runs as a periodic task that polls
+ * the sensor. A sample is only counted if its timestamp is newer than the previous one,
+ * so polls that return stale data are counted separately. Alternatively, the caller can
+ * feed samples directly with addSample.
+ */
+public class TrcSensorStats implements TrcTaskMgr.Task
+{
+    private static final String moduleName = "TrcSensorStats";
+    private static final boolean debugEnabled = false;
+    private TrcDbgTrace dbgTrace = null;
+
+    private final String instanceName;
+    private TrcSensorDataSource sensor;
+    private int dataIndex;
+    private HalDashboard dashboard;
+    private boolean enabled = false;
+
+    private long sampleCount = 0;
+    private long staleCount = 0;
+    private double lastTimestamp = 0.0;
+    private double lastValue = 0.0;
+    private double mean = 0.0;
+    private double sumSquares = 0.0;
+    private double minValue = 0.0;
+    private double maxValue = 0.0;
+    private double meanInterval = 0.0;
+    private double intervalSumSquares = 0.0;
+    private double maxInterval = 0.0;
+
+    /**
+     * Constructor: Creates an instance of the object.
+     *
+     * @param instanceName specifies the instance name.
+     * @param sensor specifies the sensor data source to be monitored, can be null if the
+     *               samples are fed with addSample.
+     * @param dataIndex specifies the data index of the sensor data source.
+     */
+    public TrcSensorStats(final String instanceName, TrcSensorDataSource sensor, int dataIndex)
+    {
+        if (debugEnabled)
+        {
+            dbgTrace = new TrcDbgTrace(
+                    moduleName + "." + instanceName,
+                    false,
+                    TrcDbgTrace.TraceLevel.API,
+                    TrcDbgTrace.MsgLevel.INFO);
+        }
+
+        this.instanceName = instanceName;
+        this.sensor = sensor;
+        this.dataIndex = dataIndex;
+        dashboard = HalDashboard.getInstance();
+    }   //TrcSensorStats
+
+    /**
+     * This method returns the instance name.
+     *
+     * @return instance name.
+     */
+    public String toString()
+    {
+        return instanceName;
+    }   //toString
+
+    /**
+     * This method enables/disables the periodic task that polls the sensor. The
+     * statistics are reset when enabled.
+     *
+     * @param enabled specifies true to enable, false to disable.
+     */
+    public void setEnabled(boolean enabled)
+    {
+        final String funcName = "setEnabled";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(
+                    funcName, TrcDbgTrace.TraceLevel.API,
+                    "enabled=%s", Boolean.toString(enabled));
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        if (enabled && sensor == null)
+        {
+            throw new NullPointerException("Sensor cannot be null when polling.");
+        }
+
+        this.enabled = enabled;
+        if (enabled)
+        {
+            reset();
+            TrcTaskMgr.getInstance().registerTask(
+                    instanceName, this, TrcTaskMgr.TaskType.PRECONTINUOUS_TASK);
+        }
+        else
+        {
+            TrcTaskMgr.getInstance().unregisterTask(this, TrcTaskMgr.TaskType.PRECONTINUOUS_TASK);
+        }
+    }   //setEnabled
+
+    /**
+     * This method checks if the periodic task is enabled.
+     *
+     * @return true if enabled, false otherwise.
+     */
+    public boolean isEnabled()
+    {
+        return enabled;
+    }   //isEnabled
+
+    /**
+     * This method clears all statistics.
+     */
+    public void reset()
+    {
+        final String funcName = "reset";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        sampleCount = 0;
+        staleCount = 0;
+        lastTimestamp = 0.0;
+        lastValue = 0.0;
+        mean = 0.0;
+        sumSquares = 0.0;
+        minValue = 0.0;
+        maxValue = 0.0;
+        meanInterval = 0.0;
+        intervalSumSquares = 0.0;
+        maxInterval = 0.0;
+    }   //reset
+
+    /**
+     * This method adds a sample to the statistics. A sample that is not newer than the
+     * previous one is counted as stale and otherwise ignored.
+     *
+     * @param timestamp specifies the timestamp of the sample in seconds.
+     * @param value specifies the sample value.
+     */
+    public void addSample(double timestamp, double value)
+    {
+        if (sampleCount > 0 && timestamp <= lastTimestamp)
+        {
+            staleCount++;
+        }
+        else
+        {
+            sampleCount++;
+            if (sampleCount == 1)
+            {
+                mean = value;
+                minValue = value;
+                maxValue = value;
+            }
+            else
+            {
+                double delta = value - mean;
+                mean += delta/sampleCount;
+                sumSquares += delta*(value - mean);
+
+                if (value < minValue)
+                {
+                    minValue = value;
+                }
+                else if (value > maxValue)
+                {
+                    maxValue = value;
+                }
+                //
+                // There are sampleCount - 1 intervals.
+                //
+                double interval = timestamp - lastTimestamp;
+                long intervalCount = sampleCount - 1;
+                double intervalDelta = interval - meanInterval;
+                meanInterval += intervalDelta/intervalCount;
+                intervalSumSquares += intervalDelta*(interval - meanInterval);
+
+                if (interval > maxInterval)
+                {
+                    maxInterval = interval;
+                }
+            }
+            lastTimestamp = timestamp;
+            lastValue = value;
+        }
+    }   //addSample
+
+    /**
+     * This method returns the number of samples.
+     *
+     * @return number of samples.
+     */
+    public long getSampleCount()
+    {
+        return sampleCount;
+    }   //getSampleCount
+
+    /**
+     * This method returns the number of polls that returned a sample not newer than
+     * the previous one.
+     *
+     * @return number of stale samples.
+     */
+    public long getStaleCount()
+    {
+        return staleCount;
+    }   //getStaleCount
+
+    /**
+     * This method returns the timestamp of the last sample.
+     *
+     * @return timestamp of the last sample.
+     */
+    public double getLastTimestamp()
+    {
+        return lastTimestamp;
+    }   //getLastTimestamp
+
+    /**
+     * This method returns the value of the last sample.
+     *
+     * @return value of the last sample.
+     */
+    public double getLastValue()
+    {
+        return lastValue;
+    }   //getLastValue
+
+    /**
+     * This method returns the mean of the sample values.
+     *
+     * @return mean value.
+     */
+    public double getMean()
+    {
+        return mean;
+    }   //getMean
+
+    /**
+     * This method returns the sample variance of the sample values.
+     *
+     * @return variance, 0 if there are fewer than 2 samples.
+     */
+    public double getVariance()
+    {
+        return sampleCount > 1? sumSquares/(sampleCount - 1): 0.0;
+    }   //getVariance
+
+    /**
+     * This method returns the standard deviation of the sample values.
+     *
+     * @return standard deviation.
+     */
+    public double getStdDev()
+    {
+        return Math.sqrt(getVariance());
+    }   //getStdDev
+
+    /**
+     * This method returns the minimum sample value.
+     *
+     * @return minimum value.
+     */
+    public double getMin()
+    {
+        return minValue;
+    }   //getMin
+
+    /**
+     * This method returns the maximum sample value.
+     *
+     * @return maximum value.
+     */
+    public double getMax()
+    {
+        return maxValue;
+    }   //getMax
+
+    /**
+     * This method returns the mean interval between samples.
+     *
+     * @return mean interval in seconds, 0 if there are fewer than 2 samples.
+     */
+    public double getMeanInterval()
+    {
+        return meanInterval;
+    }   //getMeanInterval
+
+    /**
+     * This method returns the longest interval between samples.
+     *
+     * @return max interval in seconds.
+     */
+    public double getMaxInterval()
+    {
+        return maxInterval;
+    }   //getMaxInterval
+
+    /**
+     * This method returns the sample rate.
+     *
+     * @return sample rate in Hz, 0 if there are fewer than 2 samples.
+     */
+    public double getSampleRate()
+    {
+        return meanInterval > 0.0? 1.0/meanInterval: 0.0;
+    }   //getSampleRate
+
+    /**
+     * This method returns the jitter, which is the standard deviation of the interval
+     * between samples.
+     *
+     * @return jitter in seconds, 0 if there are fewer than 3 samples.
+     */
+    public double getJitter()
+    {
+        return sampleCount > 2? Math.sqrt(intervalSumSquares/(sampleCount - 2)): 0.0;
+    }   //getJitter
+
+    /**
+     * This method displays the statistics on the dashboard.
+     *
+     * @param lineNum specifies the starting line number on the dashboard. It uses two lines.
+     */
+    public void displayStats(int lineNum)
+    {
+        dashboard.displayPrintf(
+                lineNum,
+                "%s: n=%d, mean=%.2f, std=%.2f, min=%.2f, max=%.2f",
+                instanceName, sampleCount, getMean(), getStdDev(), minValue, maxValue);
+        dashboard.displayPrintf(
+                lineNum + 1,
+                "rate=%.1fHz, jitter=%.1fms, maxInterval=%.1fms, stale=%d",
+                getSampleRate(), getJitter()*1000.0, maxInterval*1000.0, staleCount);
+    }   //displayStats
+
+    //
+    // Implements TrcTaskMgr.Task
+    //
+
+    @Override
+    public void startTask(TrcRobot.RunMode runMode)
+    {
+    }   //startTask
+
+    @Override
+    public void stopTask(TrcRobot.RunMode runMode)
+    {
+    }   //stopTask
+
+    @Override
+    public void prePeriodicTask(TrcRobot.RunMode runMode)
+    {
+    }   //prePeriodicTask
+
+    @Override
+    public void postPeriodicTask(TrcRobot.RunMode runMode)
+    {
+    }   //postPeriodicTask
+
+    /**
+     * This method is called periodically to poll the sensor and update the statistics.
+     *
+     * @param runMode specifies the competition mode that is running.
+     */
+    @Override
+    public void preContinuousTask(TrcRobot.RunMode runMode)
+    {
+        TrcSensor.SensorData data = sensor.getSensorData(dataIndex);
+
+        if (data != null && data.value != null)
+        {
+            double sample;
+            if (data.value instanceof Integer)
+            {
+                sample = (double)(Integer)data.value;
+            }
+            else if (data.value instanceof Double)
+            {
+                sample = (Double)data.value;
+            }
+            else
+            {
+                throw new NumberFormatException("Sensor data must be either integer or double.");
+            }
+
+            addSample(data.timestamp, sample);
+        }
+    }   //preContinuousTask
+
+    @Override
+    public void postContinuousTask(TrcRobot.RunMode runMode)
+    {
+    }   //postContinuousTask
+
+}   //class TrcSensorStats
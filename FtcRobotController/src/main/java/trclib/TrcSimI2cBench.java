@@ -0,0 +1,319 @@
+/*
+ * Titan Robotics Framework Library
+ * Copyright (c) 2016 Titan Robotics Club (http://www.titanrobotics.net)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package trclib;
+
+import java.nio.ByteBuffer;
+
+/**
+ * This class runs the simulated I2C devices on a desktop JVM in simulated time. It creates
+ * the task manager and steps it at the robot loop rate, like the robot would, while the
+ * device models change their physical quantities. It prints how many requests were served by
+ * how many bus transactions, the data the requests returned and the transaction statistics,
+ * so the request queue, read coalescing and the models can be checked off the robot. It is
+ * run with "java trclib.TrcSimI2cBench" with trclib and hallib on the class path.
+ */
+public class TrcSimI2cBench implements TrcSimI2cDevice.Clock
+{
+    private static final double LOOP_INTERVAL = 0.02;   //in seconds.
+    private static final double LATENCY = 0.01;         //in seconds.
+    private static final double JITTER = 0.003;         //in seconds.
+    private static final double RUN_TIME = 4.0;         //in seconds.
+    //
+    // Maximum transfer length of the legacy module I2C port, like FtcI2cDevice.
+    //
+    private static final int MAX_TRANSFER_LENGTH = 26;
+    //
+    // Modern Robotics command register and the gyro command that resets the Z integrator.
+    //
+    private static final int MR_REG_COMMAND = 0x03;
+    private static final byte MR_CMD_RESET_Z_INTEGRATOR = 0x52;
+
+    private final TrcTaskMgr taskMgr = new TrcTaskMgr();
+    private double currTime = 0.0;
+
+    /**
+     * This class counts the reads it completes and keeps the first bytes of the last data.
+     */
+    private static class Counter implements TrcI2cDevice.CompletionHandler
+    {
+        private final boolean repeat;
+        private final int[] lastData = new int[8];
+        private long readCount = 0;
+        private long timeoutCount = 0;
+
+        /**
+         * Constructor: Creates an instance of the object.
+         *
+         * @param repeat specifies true to keep repeating the read, false otherwise.
+         */
+        Counter(boolean repeat)
+        {
+            this.repeat = repeat;
+        }   //Counter
+
+        @Override
+        public boolean readCompletion(
+                int regAddress, int length, double timestamp, ByteBuffer data, boolean timedout)
+        {
+            if (timedout)
+            {
+                timeoutCount++;
+            }
+            else
+            {
+                readCount++;
+                for (int i = 0; i < Math.min(data.remaining(), lastData.length); i++)
+                {
+                    lastData[i] = data.get(data.position() + i) & 0xff;
+                }
+            }
+
+            return repeat;
+        }   //readCompletion
+
+        @Override
+        public void writeCompletion(int regAddress, int length, boolean timedout)
+        {
+        }   //writeCompletion
+
+    }   //class Counter
+
+    /**
+     * This method runs all the benchmarks.
+     *
+     * @param args specifies the command line arguments, not used.
+     */
+    public static void main(String[] args)
+    {
+        TrcSimI2cBench bench = new TrcSimI2cBench();
+
+        bench.runColorSensor();
+        bench.runGyro();
+        bench.runDistanceSensor();
+    }   //main
+
+    /**
+     * This method returns the current simulated time.
+     *
+     * @return current time in seconds.
+     */
+    @Override
+    public double getCurrentTime()
+    {
+        return currTime;
+    }   //getCurrentTime
+
+    /**
+     * This method creates a simulated device on the simulated clock.
+     *
+     * @param instanceName specifies the instance name.
+     * @param model specifies the register map model of the device.
+     * @param randomSeed specifies the seed of the latency jitter.
+     * @return simulated device.
+     */
+    private TrcSimI2cDevice createDevice(
+            String instanceName, TrcSimI2cDevice.RegisterMap model, long randomSeed)
+    {
+        TrcSimI2cDevice device = new TrcSimI2cDevice(instanceName, model, randomSeed);
+
+        device.setClock(this);
+        device.setLatency(LATENCY, JITTER);
+        device.setMaxTransferLength(MAX_TRANSFER_LENGTH);
+
+        return device;
+    }   //createDevice
+
+    /**
+     * This method advances the simulated time by one robot loop and runs the device tasks.
+     */
+    private void step()
+    {
+        currTime += LOOP_INTERVAL;
+        taskMgr.executeTaskType(TrcTaskMgr.TaskType.PRECONTINUOUS_TASK, TrcRobot.RunMode.TEST_MODE);
+    }   //step
+
+    /**
+     * This method runs the device tasks for the given simulated time.
+     *
+     * @param duration specifies the simulated time in seconds.
+     */
+    private void run(double duration)
+    {
+        double endTime = currTime + duration;
+
+        while (currTime < endTime)
+        {
+            step();
+        }
+    }   //run
+
+    /**
+     * This method prints the statistics of a device.
+     *
+     * @param device specifies the device.
+     * @param numRequests specifies the number of requests queued on the device.
+     */
+    private void printStats(TrcSimI2cDevice device, long numRequests)
+    {
+        TrcI2cDevice.TransactionStats stats = device.getTransactionStats();
+
+        System.out.printf(
+                "%s: requests=%d, transactions=%d, timeouts=%d, dropped=%d, bytes/s=%.1f\n",
+                device.toString(), numRequests, device.getSimTransactionCount(),
+                stats.getTimeoutCount(), device.getDroppedRequestCount(),
+                stats.getBytesPerSecond());
+        System.out.printf(
+                "%s: queue=%.1f/%.1f ms, send=%.1f/%.1f ms, wait=%.1f/%.1f ms (mean/95%%)\n",
+                device.toString(),
+                stats.getQueueTime().getMean()*1000.0,
+                stats.getQueueTime().getPercentile(95.0)*1000.0,
+                stats.getSendTime().getMean()*1000.0,
+                stats.getSendTime().getPercentile(95.0)*1000.0,
+                stats.getWaitTime().getMean()*1000.0,
+                stats.getWaitTime().getPercentile(95.0)*1000.0);
+    }   //printStats
+
+    /**
+     * This method reads the color registers of the MR color sensor periodically, and each
+     * channel on its own as soon as the previous channel reads have completed. The single
+     * channel reads are queued together, so they are coalesced into one transaction. The
+     * simulated color changes halfway through.
+     */
+    private void runColorSensor()
+    {
+        TrcSimI2cModels.MRColorSensor model = new TrcSimI2cModels.MRColorSensor();
+        TrcSimI2cDevice device = createDevice("mrColor", model, 1);
+        Counter periodic = new Counter(true);
+        Counter channels = new Counter(false);
+        double changeTime = currTime + RUN_TIME/2.0;
+        double endTime = currTime + RUN_TIME;
+        long numRequests = 0;
+
+        model.setColor(10, 200, 20, 30, 250);
+        device.readPeriodic(0x04, 5, periodic, 0.05);
+        while (currTime < endTime)
+        {
+            if (changeTime > 0.0 && currTime >= changeTime)
+            {
+                model.setColor(3, 20, 30, 180, 190);
+                changeTime = 0.0;
+            }
+
+            if (channels.readCount + channels.timeoutCount == numRequests)
+            {
+                device.read(0x05, 1, channels);
+                device.read(0x06, 1, channels);
+                device.read(0x07, 1, channels);
+                numRequests += 3;
+            }
+            step();
+        }
+
+        System.out.printf(
+                "mrColor: periodic=%d, channels=%d, timeouts=%d, color=%d, rgb=[%d,%d,%d]\n",
+                periodic.readCount, channels.readCount,
+                periodic.timeoutCount + channels.timeoutCount, periodic.lastData[0],
+                periodic.lastData[1], periodic.lastData[2], periodic.lastData[3]);
+        printStats(device, numRequests + periodic.readCount);
+    }   //runColorSensor
+
+    /**
+     * This method reads the heading of the MR gyro every loop while it turns, and resets the
+     * Z integrator with a command write. The gyro then turns for half as long as before the
+     * reset, so the final heading is about half the heading before the reset.
+     */
+    private void runGyro()
+    {
+        TrcSimI2cModels.MRGyro model = new TrcSimI2cModels.MRGyro();
+        TrcSimI2cDevice device = createDevice("mrGyro", model, 2);
+        Counter heading = new Counter(true);
+
+        model.setTurnRate(45.0);
+        device.readPeriodic(0x04, 4, heading, LOOP_INTERVAL);
+        run(RUN_TIME/2.0);
+        int headingBeforeReset = heading.lastData[0] | (heading.lastData[1] << 8);
+
+        TrcI2cFuture reset = device.writeAsync(
+                MR_REG_COMMAND, 1, new byte[]{MR_CMD_RESET_Z_INTEGRATOR}, 0.0, null);
+        run(RUN_TIME/4.0);
+
+        System.out.printf(
+                "mrGyro: reads=%d, reset=%s, heading=%d before reset, %d at the end\n",
+                heading.readCount, Boolean.toString(reset.isSuccessful()), headingBeforeReset,
+                heading.lastData[0] | (heading.lastData[1] << 8));
+        printStats(device, heading.readCount + 1);
+    }   //runGyro
+
+    /**
+     * This method reads the ID registers of the ZX distance sensor in one batch, then polls
+     * the status register while the simulated object moves. Reading the status clears the
+     * data available flag, so each position is only reported once.
+     */
+    private void runDistanceSensor()
+    {
+        TrcSimI2cModels.ZXDistanceSensor model = new TrcSimI2cModels.ZXDistanceSensor();
+        TrcSimI2cDevice device = createDevice("zxDistance", model, 3);
+        Counter status = new Counter(true);
+        int numPositions = 0;
+
+        TrcI2cFuture[] ids = device.readAll(new int[]{0xfe, 0xff}, new int[]{1, 1}, 0.5);
+        while (!ids[0].isDone() || !ids[1].isDone())
+        {
+            step();
+        }
+        System.out.printf(
+                "zxDistance: regVersion=%d, model=%d, transactions=%d\n",
+                ids[0].getByte(0), ids[1].getByte(0), device.getSimTransactionCount());
+
+        double endTime = currTime + RUN_TIME;
+        long dataAvailable = 0;
+        long prevReadCount = 0;
+
+        device.readPeriodic(0x00, 1, status, LOOP_INTERVAL);
+        for (int loop = 0; currTime < endTime; loop++)
+        {
+            if (loop%10 == 0)
+            {
+                model.setPosition(loop%240, 120, 10, 10);
+                numPositions++;
+            }
+
+            step();
+            if (status.readCount != prevReadCount)
+            {
+                prevReadCount = status.readCount;
+                if ((status.lastData[0] & 0x01) != 0)
+                {
+                    dataAvailable++;
+                }
+            }
+        }
+
+        System.out.printf(
+                "zxDistance: positions=%d, dataAvailable=%d, statusReads=%d\n",
+                numPositions, dataAvailable, status.readCount);
+        printStats(device, status.readCount + 2);
+    }   //runDistanceSensor
+
+}   //class TrcSimI2cBench
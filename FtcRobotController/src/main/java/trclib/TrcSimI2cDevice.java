@@ -0,0 +1,411 @@
+/*
+ * Titan Robotics Framework Library
+ * Copyright (c) 2016 Titan Robotics Club (http://www.titanrobotics.net)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package trclib;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import hallib.HalUtil;
+
+/**
+ * This class implements a simulated I2C device. It implements the port methods of
+ * TrcI2cDevice against a register map model instead of real hardware, so the request queue,
+ * read coalescing and the protocol of a device can be exercised and benchmarked off the
+ * robot. Each bus transaction completes after a configurable latency with an optional random
+ * jitter. The register map is read when a read transaction completes and written when a
+ * write transaction completes, just like the real port. By default the device runs on robot
+ * time. A simulated clock can be set so a run is repeatable and independent of how fast the
+ * host executes it (see TrcSimI2cBench).
+ */
+public class TrcSimI2cDevice extends TrcI2cDevice
+{
+    private static final String moduleName = "TrcSimI2cDevice";
+    private static final boolean debugEnabled = false;
+    private TrcDbgTrace dbgTrace = null;
+
+    /**
+     * The client of this class provides this interface to run the device on simulated time.
+     */
+    public interface Clock
+    {
+        /**
+         * This method returns the current simulated time.
+         *
+         * @return current time in seconds.
+         */
+        public double getCurrentTime();
+
+    }   //interface Clock
+
+    /**
+     * This class implements the register map of a simulated device. By default, it behaves
+     * like a plain 256-byte memory. Device models extend it to update their registers over
+     * time and to give reads and writes side effects.
+     */
+    public static class RegisterMap
+    {
+        protected final byte[] registers = new byte[256];
+
+        /**
+         * This method is called before a transaction is applied to the register map so the
+         * model can update its registers to the current time.
+         *
+         * @param currTime specifies the current time in seconds.
+         */
+        public void update(double currTime)
+        {
+        }   //update
+
+        /**
+         * This method reads a register.
+         *
+         * @param regAddress specifies the register address.
+         * @return register value.
+         */
+        public byte readRegister(int regAddress)
+        {
+            return registers[regAddress & 0xff];
+        }   //readRegister
+
+        /**
+         * This method writes a register.
+         *
+         * @param regAddress specifies the register address.
+         * @param value specifies the value to write.
+         */
+        public void writeRegister(int regAddress, byte value)
+        {
+            registers[regAddress & 0xff] = value;
+        }   //writeRegister
+
+        /**
+         * This method sets a register without the side effects of writeRegister.
+         *
+         * @param regAddress specifies the register address.
+         * @param value specifies the register value, only the low byte is used.
+         */
+        public void setRegister(int regAddress, int value)
+        {
+            registers[regAddress & 0xff] = (byte)value;
+        }   //setRegister
+
+        /**
+         * This method sets a 16-bit little endian value into two consecutive registers.
+         *
+         * @param regAddress specifies the address of the low byte.
+         * @param value specifies the value, only the low 16 bits are used.
+         */
+        public void setRegister16(int regAddress, int value)
+        {
+            registers[regAddress & 0xff] = (byte)value;
+            registers[(regAddress + 1) & 0xff] = (byte)(value >> 8);
+        }   //setRegister16
+
+        /**
+         * This method returns a register value without the side effects of readRegister.
+         *
+         * @param regAddress specifies the register address.
+         * @return register value between 0 and 255.
+         */
+        public int getRegister(int regAddress)
+        {
+            return registers[regAddress & 0xff] & 0xff;
+        }   //getRegister
+
+    }   //class RegisterMap
+
+    private RegisterMap registerMap;
+    private Random random;
+    private Clock clock = null;
+    private double latency = 0.0;
+    private double jitter = 0.0;
+    private boolean busy = false;
+    private boolean writeMode = false;
+    private double completionTime = 0.0;
+    private int regAddress = 0;
+    private int length = 0;
+    private byte[] writeData = new byte[256];
+    private byte[] readData = new byte[256];
+    private ByteBuffer readDataView = ByteBuffer.wrap(readData).asReadOnlyBuffer();
+    private long transactionCount = 0;
+
+    /**
+     * Constructor: Creates an instance of the object.
+     *
+     * @param instanceName specifies the instance name.
+     * @param registerMap specifies the register map model of the device.
+     * @param randomSeed specifies the seed of the latency jitter, so runs are repeatable.
+     */
+    public TrcSimI2cDevice(String instanceName, RegisterMap registerMap, long randomSeed)
+    {
+        super(instanceName);
+
+        if (debugEnabled)
+        {
+            dbgTrace = new TrcDbgTrace(
+                    moduleName + "." + instanceName,
+                    false,
+                    TrcDbgTrace.TraceLevel.API,
+                    TrcDbgTrace.MsgLevel.INFO);
+        }
+
+        this.registerMap = registerMap;
+        this.random = new Random(randomSeed);
+    }   //TrcSimI2cDevice
+
+    /**
+     * Constructor: Creates an instance of the object.
+     *
+     * @param instanceName specifies the instance name.
+     * @param registerMap specifies the register map model of the device.
+     */
+    public TrcSimI2cDevice(String instanceName, RegisterMap registerMap)
+    {
+        this(instanceName, registerMap, 0);
+    }   //TrcSimI2cDevice
+
+    /**
+     * This method sets the latency of each bus transaction. The actual latency of a
+     * transaction is uniformly distributed between latency - jitter and latency + jitter,
+     * but never negative.
+     *
+     * @param latency specifies the mean transaction latency in seconds.
+     * @param jitter specifies the maximum deviation from the mean in seconds.
+     */
+    public void setLatency(double latency, double jitter)
+    {
+        final String funcName = "setLatency";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API,
+                                "latency=%.3f,jitter=%.3f", latency, jitter);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        if (latency < 0.0 || jitter < 0.0)
+        {
+            throw new IllegalArgumentException("Latency and jitter must not be negative.");
+        }
+
+        this.latency = latency;
+        this.jitter = jitter;
+    }   //setLatency
+
+    /**
+     * This method sets the clock the device runs on. The transaction latency, the request
+     * deadlines, timeouts and periodic reads, and the statistics all use this clock, so the
+     * statistics are reset. With a simulated clock, the device must be stepped by running the
+     * task manager while the clock advances: waitForAll and waitForCompletion wait in real
+     * time and do not advance the clock.
+     *
+     * @param clock specifies the simulated clock, null to run on robot time.
+     */
+    public void setClock(Clock clock)
+    {
+        final String funcName = "setClock";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API,
+                                "clock=%s", Boolean.toString(clock != null));
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        this.clock = clock;
+        resetTransactionStats();
+    }   //setClock
+
+    /**
+     * This method returns the register map model of the device.
+     *
+     * @return register map.
+     */
+    public RegisterMap getRegisterMap()
+    {
+        return registerMap;
+    }   //getRegisterMap
+
+    /**
+     * This method returns the number of bus transactions completed by the simulated port.
+     *
+     * @return number of transactions.
+     */
+    public long getSimTransactionCount()
+    {
+        return transactionCount;
+    }   //getSimTransactionCount
+
+    /**
+     * This method starts a simulated bus transaction.
+     *
+     * @param regAddress specifies the register address.
+     * @param length specifies the number of bytes to transfer.
+     * @param writeMode specifies true for a write transaction, false for a read.
+     */
+    private void startTransaction(int regAddress, int length, boolean writeMode)
+    {
+        double delay = latency;
+
+        if (jitter > 0.0)
+        {
+            delay = Math.max(latency + (2.0*random.nextDouble() - 1.0)*jitter, 0.0);
+        }
+
+        this.regAddress = regAddress;
+        this.length = length;
+        this.writeMode = writeMode;
+        completionTime = getCurrentTime() + delay;
+        busy = true;
+    }   //startTransaction
+
+    /**
+     * This method completes the pending transaction if its latency has elapsed.
+     */
+    private void checkTransaction()
+    {
+        if (busy)
+        {
+            double currTime = getCurrentTime();
+
+            if (currTime >= completionTime)
+            {
+                registerMap.update(currTime);
+                for (int i = 0; i < length; i++)
+                {
+                    if (writeMode)
+                    {
+                        registerMap.writeRegister(regAddress + i, writeData[i]);
+                    }
+                    else
+                    {
+                        readData[i] = registerMap.readRegister(regAddress + i);
+                    }
+                }
+                busy = false;
+                transactionCount++;
+            }
+        }
+    }   //checkTransaction
+
+    /**
+     * This method returns the current time of the simulated clock, or the robot time if no
+     * clock is set. The base class constructor calls it before the clock can be set, so it
+     * must not assume one.
+     *
+     * @return current time in seconds.
+     */
+    @Override
+    protected double getCurrentTime()
+    {
+        return clock != null? clock.getCurrentTime(): HalUtil.getCurrentTime();
+    }   //getCurrentTime
+
+    //
+    // Implements TrcI2cDevice abstract methods.
+    //
+
+    /**
+     * This method checks if the I2C port is ready for bus transaction.
+     *
+     * @return true if port is ready, false otherwise.
+     */
+    @Override
+    public boolean isPortReady()
+    {
+        checkTransaction();
+        return !busy;
+    }   //isPortReady
+
+    /**
+     * This method checks if the I2C port is in write mode.
+     *
+     * @return true if port is in write mode, false otherwise.
+     */
+    @Override
+    public boolean isPortInWriteMode()
+    {
+        return writeMode;
+    }   //isPortInWriteMode
+
+    /**
+     * This method sends a read command to the device.
+     *
+     * @param regAddress specifies the register address.
+     * @param length specifies the number of bytes to read.
+     */
+    @Override
+    public void sendReadCommand(int regAddress, int length)
+    {
+        final String funcName = "sendReadCommand";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API,
+                                "addr=%x,len=%d", regAddress, length);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        startTransaction(regAddress, Math.min(length, readData.length), false);
+    }   //sendReadCommand
+
+    /**
+     * This method sends a write command to the device.
+     *
+     * @param regAddress specifies the register address.
+     * @param length specifies the number of bytes to write.
+     * @param data specifies the data buffer containing the data to write to the device.
+     */
+    @Override
+    public void sendWriteCommand(int regAddress, int length, byte[] data)
+    {
+        final String funcName = "sendWriteCommand";
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API,
+                                "addr=%x,len=%d", regAddress, length);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API);
+        }
+
+        length = Math.min(length, writeData.length);
+        System.arraycopy(data, 0, writeData, 0, length);
+        startTransaction(regAddress, length, true);
+    }   //sendWriteCommand
+
+    /**
+     * This method retrieves the data read from the device.
+     *
+     * @return read-only buffer containing the data read.
+     */
+    @Override
+    public ByteBuffer getData()
+    {
+        readDataView.clear();
+        readDataView.limit(writeMode? 0: length);
+
+        return readDataView;
+    }   //getData
+
+}   //class TrcSimI2cDevice
@@ -0,0 +1,413 @@
+/*
+ * Titan Robotics Framework Library
+ * Copyright (c) 2016 Titan Robotics Club (http://www.titanrobotics.net)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package trclib;
+
+/**
+ * This class contains the register map models of the I2C devices supported by ftclib, to be
+ * used with TrcSimI2cDevice. Each model lays out its registers like the real device and lets
+ * the caller set the simulated physical quantities (e.g. the turn rate of a gyro or the color
+ * seen by a color sensor).
+ */
+public class TrcSimI2cModels
+{
+    //
+    // Registers common to Modern Robotics devices.
+    //
+    private static final int MR_REG_FIRMWARE_REVISION   = 0x00;
+    private static final int MR_REG_MANUFACTURER_CODE   = 0x01;
+    private static final int MR_REG_ID_CODE             = 0x02;
+    private static final int MR_REG_COMMAND             = 0x03;
+    private static final int MR_MANUFACTURER_CODE       = 0x4d;
+
+    /**
+     * This class implements the register map common to all Modern Robotics I2C devices. A
+     * command written to the command register is handled by handleCommand and the register
+     * reads back the command until the model clears it.
+     */
+    public static class MRDevice extends TrcSimI2cDevice.RegisterMap
+    {
+        /**
+         * Constructor: Creates an instance of the object.
+         *
+         * @param firmwareRev specifies the firmware revision.
+         * @param idCode specifies the device ID code.
+         */
+        public MRDevice(int firmwareRev, int idCode)
+        {
+            setRegister(MR_REG_FIRMWARE_REVISION, firmwareRev);
+            setRegister(MR_REG_MANUFACTURER_CODE, MR_MANUFACTURER_CODE);
+            setRegister(MR_REG_ID_CODE, idCode);
+        }   //MRDevice
+
+        /**
+         * This method is called when a command is written to the command register.
+         *
+         * @param command specifies the command.
+         */
+        protected void handleCommand(int command)
+        {
+        }   //handleCommand
+
+        @Override
+        public void writeRegister(int regAddress, byte value)
+        {
+            super.writeRegister(regAddress, value);
+            if ((regAddress & 0xff) == MR_REG_COMMAND)
+            {
+                handleCommand(value & 0xff);
+            }
+        }   //writeRegister
+
+    }   //class MRDevice
+
+    /**
+     * This class implements the register map of the Modern Robotics I2C gyro. The heading and
+     * the integrated Z value follow the simulated turn rate. Calibration takes a fixed time
+     * during which the command register reads back the calibrate command.
+     */
+    public static class MRGyro extends MRDevice
+    {
+        private static final int REG_HEADING_LSB        = 0x04;
+        private static final int REG_INTEGRATED_Z_LSB   = 0x06;
+        private static final int REG_RAW_Z_LSB          = 0x0c;
+        private static final int REG_Z_OFFSET_LSB       = 0x0e;
+        private static final int REG_Z_SCALING_LSB      = 0x10;
+
+        private static final int CMD_RESET_OFFSET_CAL   = 0x4e;
+        private static final int CMD_RESET_Z_INTEGRATOR = 0x52;
+
+        private static final double CALIBRATION_TIME    = 0.5;
+        private static final int Z_OFFSET               = 0x0300;
+        private static final int Z_SCALING              = 0x0100;
+
+        private double turnRate = 0.0;
+        private double integratedZ = 0.0;
+        private double lastTime = 0.0;
+        private double calibrationEndTime = 0.0;
+
+        /**
+         * Constructor: Creates an instance of the object.
+         */
+        public MRGyro()
+        {
+            super(0x01, 0x10);
+            setRegister16(REG_Z_OFFSET_LSB, Z_OFFSET);
+            setRegister16(REG_Z_SCALING_LSB, Z_SCALING);
+        }   //MRGyro
+
+        /**
+         * This method sets the simulated turn rate. A positive rate turns clockwise, which
+         * decrements the integrated Z value like the real sensor.
+         *
+         * @param turnRate specifies the turn rate in degrees per second.
+         */
+        public void setTurnRate(double turnRate)
+        {
+            this.turnRate = turnRate;
+        }   //setTurnRate
+
+        @Override
+        public void update(double currTime)
+        {
+            if (lastTime != 0.0)
+            {
+                integratedZ -= turnRate*(currTime - lastTime);
+            }
+            lastTime = currTime;
+
+            int z = (int)Math.round(integratedZ);
+            setRegister16(REG_INTEGRATED_Z_LSB, z);
+            setRegister16(REG_HEADING_LSB, ((-z)%360 + 360)%360);
+            setRegister16(REG_RAW_Z_LSB, -(int)Math.round(turnRate));
+
+            if (calibrationEndTime != 0.0 && currTime >= calibrationEndTime)
+            {
+                calibrationEndTime = 0.0;
+                setRegister(MR_REG_COMMAND, 0);
+            }
+        }   //update
+
+        @Override
+        protected void handleCommand(int command)
+        {
+            if (command == CMD_RESET_Z_INTEGRATOR)
+            {
+                integratedZ = 0.0;
+                setRegister(MR_REG_COMMAND, 0);
+            }
+            else if (command == CMD_RESET_OFFSET_CAL)
+            {
+                calibrationEndTime = lastTime + CALIBRATION_TIME;
+            }
+        }   //handleCommand
+
+    }   //class MRGyro
+
+    /**
+     * This class implements the register map of the Modern Robotics I2C color sensor.
+     */
+    public static class MRColorSensor extends MRDevice
+    {
+        private static final int REG_COLOR_NUMBER       = 0x04;
+        private static final int REG_RED                = 0x05;
+        private static final int REG_GREEN              = 0x06;
+        private static final int REG_BLUE               = 0x07;
+        private static final int REG_WHITE              = 0x08;
+
+        /**
+         * Constructor: Creates an instance of the object.
+         */
+        public MRColorSensor()
+        {
+            super(0x01, 0x43);
+        }   //MRColorSensor
+
+        /**
+         * This method sets the simulated color.
+         *
+         * @param colorNumber specifies the color number (0 to 16).
+         * @param red specifies the red value (0 to 255).
+         * @param green specifies the green value (0 to 255).
+         * @param blue specifies the blue value (0 to 255).
+         * @param white specifies the white value (0 to 255).
+         */
+        public void setColor(int colorNumber, int red, int green, int blue, int white)
+        {
+            setRegister(REG_COLOR_NUMBER, colorNumber);
+            setRegister(REG_RED, red);
+            setRegister(REG_GREEN, green);
+            setRegister(REG_BLUE, blue);
+            setRegister(REG_WHITE, white);
+        }   //setColor
+
+        @Override
+        protected void handleCommand(int command)
+        {
+            //
+            // LED, frequency and calibration commands take effect immediately.
+            //
+            setRegister(MR_REG_COMMAND, 0);
+        }   //handleCommand
+
+    }   //class MRColorSensor
+
+    /**
+     * This class implements the register map of the AdaFruit (TCS34725) color sensor. The
+     * register addresses include the command bit. The color data becomes valid one
+     * integration time after the sensor is enabled, and is refreshed every integration time.
+     */
+    public static class AdaFruitColorSensor extends TrcSimI2cDevice.RegisterMap
+    {
+        private static final int REG_COMMAND_BIT        = 0x80;
+        private static final int REG_ENABLE             = (0x00 | REG_COMMAND_BIT);
+        private static final int REG_ATIME              = (0x01 | REG_COMMAND_BIT);
+        private static final int REG_ID                 = (0x12 | REG_COMMAND_BIT);
+        private static final int REG_STATUS             = (0x13 | REG_COMMAND_BIT);
+        private static final int REG_CDATAL             = (0x14 | REG_COMMAND_BIT);
+        private static final int REG_RDATAL             = (0x16 | REG_COMMAND_BIT);
+        private static final int REG_GDATAL             = (0x18 | REG_COMMAND_BIT);
+        private static final int REG_BDATAL             = (0x1a | REG_COMMAND_BIT);
+
+        private static final int ENABLE_PON             = (1 << 0);
+        private static final int ENABLE_AEN             = (1 << 1);
+        private static final int STATUS_AVALID          = (1 << 0);
+        private static final int DEVICE_ID              = 0x44;
+        private static final double CYCLE_TIME          = 0.0024;
+
+        private int clear = 0;
+        private int red = 0;
+        private int green = 0;
+        private int blue = 0;
+        private double lastTime = 0.0;
+        private double nextSampleTime = 0.0;
+
+        /**
+         * Constructor: Creates an instance of the object.
+         */
+        public AdaFruitColorSensor()
+        {
+            setRegister(REG_ID, DEVICE_ID);
+            setRegister(REG_ATIME, 0xff);
+        }   //AdaFruitColorSensor
+
+        /**
+         * This method sets the simulated color.
+         *
+         * @param clear specifies the clear channel value (0 to 65535).
+         * @param red specifies the red channel value (0 to 65535).
+         * @param green specifies the green channel value (0 to 65535).
+         * @param blue specifies the blue channel value (0 to 65535).
+         */
+        public void setColor(int clear, int red, int green, int blue)
+        {
+            this.clear = clear;
+            this.red = red;
+            this.green = green;
+            this.blue = blue;
+        }   //setColor
+
+        /**
+         * This method returns the integration time set by the ATIME register.
+         *
+         * @return integration time in seconds.
+         */
+        private double getIntegrationTime()
+        {
+            return (256 - getRegister(REG_ATIME))*CYCLE_TIME;
+        }   //getIntegrationTime
+
+        @Override
+        public void update(double currTime)
+        {
+            int enable = getRegister(REG_ENABLE);
+
+            lastTime = currTime;
+            if ((enable & (ENABLE_PON | ENABLE_AEN)) == (ENABLE_PON | ENABLE_AEN) &&
+                nextSampleTime != 0.0 && currTime >= nextSampleTime)
+            {
+                setRegister16(REG_CDATAL, clear);
+                setRegister16(REG_RDATAL, red);
+                setRegister16(REG_GDATAL, green);
+                setRegister16(REG_BDATAL, blue);
+                setRegister(REG_STATUS, getRegister(REG_STATUS) | STATUS_AVALID);
+                nextSampleTime = currTime + getIntegrationTime();
+            }
+        }   //update
+
+        @Override
+        public void writeRegister(int regAddress, byte value)
+        {
+            if (regAddress == REG_ID || regAddress == REG_STATUS)
+            {
+                //
+                // Read-only registers.
+                //
+                return;
+            }
+
+            super.writeRegister(regAddress, value);
+            if (regAddress == REG_ENABLE)
+            {
+                if ((value & (ENABLE_PON | ENABLE_AEN)) == (ENABLE_PON | ENABLE_AEN))
+                {
+                    nextSampleTime = lastTime + getIntegrationTime();
+                }
+                else
+                {
+                    nextSampleTime = 0.0;
+                    setRegister(REG_STATUS, 0);
+                }
+            }
+        }   //writeRegister
+
+    }   //class AdaFruitColorSensor
+
+    /**
+     * This class implements the register map of the ZX distance sensor (GestureSense XZ01).
+     * The status flags are cleared when the status register is read and the heartbeat bit
+     * toggles on every status read, like the real sensor.
+     */
+    public static class ZXDistanceSensor extends TrcSimI2cDevice.RegisterMap
+    {
+        private static final int REG_STATUS             = 0x00;
+        private static final int REG_GESTURE            = 0x04;
+        private static final int REG_GSPEED             = 0x05;
+        private static final int REG_XPOS               = 0x08;
+        private static final int REG_ZPOS               = 0x0a;
+        private static final int REG_LRNG               = 0x0c;
+        private static final int REG_RRNG               = 0x0e;
+        private static final int REG_REGVER             = 0xfe;
+        private static final int REG_MODEL              = 0xff;
+
+        private static final int STATUS_DAV             = (1 << 0);
+        private static final int STATUS_SWP             = (1 << 2);
+        private static final int STATUS_HB              = (1 << 7);
+
+        /**
+         * Constructor: Creates an instance of the object.
+         */
+        public ZXDistanceSensor()
+        {
+            setRegister(REG_REGVER, 0x01);
+            setRegister(REG_MODEL, 0x01);
+        }   //ZXDistanceSensor
+
+        /**
+         * This method sets the simulated position of the object in front of the sensor and
+         * flags new position data.
+         *
+         * @param xPos specifies the X coordinate (0 to 240).
+         * @param zPos specifies the Z coordinate (0 to 240).
+         * @param leftRange specifies the left emitter ranging data.
+         * @param rightRange specifies the right emitter ranging data.
+         */
+        public void setPosition(int xPos, int zPos, int leftRange, int rightRange)
+        {
+            setRegister(REG_XPOS, xPos);
+            setRegister(REG_ZPOS, zPos);
+            setRegister(REG_LRNG, leftRange);
+            setRegister(REG_RRNG, rightRange);
+            setRegister(REG_STATUS, getRegister(REG_STATUS) | STATUS_DAV);
+        }   //setPosition
+
+        /**
+         * This method simulates a detected swipe gesture.
+         *
+         * @param gesture specifies the gesture value.
+         * @param speed specifies the gesture speed.
+         */
+        public void setGesture(int gesture, int speed)
+        {
+            setRegister(REG_GESTURE, gesture);
+            setRegister(REG_GSPEED, speed);
+            setRegister(REG_STATUS, getRegister(REG_STATUS) | STATUS_SWP);
+        }   //setGesture
+
+        @Override
+        public byte readRegister(int regAddress)
+        {
+            byte value = super.readRegister(regAddress);
+
+            if ((regAddress & 0xff) == REG_STATUS)
+            {
+                setRegister(REG_STATUS, (value & STATUS_HB) ^ STATUS_HB);
+            }
+
+            return value;
+        }   //readRegister
+
+        @Override
+        public void writeRegister(int regAddress, byte value)
+        {
+            int address = regAddress & 0xff;
+
+            if (address != REG_STATUS && address != REG_REGVER && address != REG_MODEL)
+            {
+                super.writeRegister(regAddress, value);
+            }
+        }   //writeRegister
+
+    }   //class ZXDistanceSensor
+
+}   //class TrcSimI2cModels
@@ -0,0 +1,165 @@
+/*
+ * Titan Robotics Framework Library
+ * Copyright (c) 2016 Titan Robotics Club (http://www.titanrobotics.net)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package trclib;
+
+/**
+ * This class simulates a motor driven axis for running control code on a desktop JVM. The
+ * velocity of the axis follows gain*output with a first order lag, and the position
+ * integrates the velocity. The output takes effect after a dead time, which models the
+ * actuator and sensor latency of the robot. It provides its position as a PID input and takes
+ * the relay output of a PID autotuner, so the tuner can be run against it in simulated time.
+ */
+public class TrcSimPlant implements TrcPidController.PidInput, TrcPidAutoTuner.RelayOutput
+{
+    private static final int MAX_DELAY_SAMPLES = 256;
+
+    private final double gain;
+    private final double timeConstant;
+    private final double deadTime;
+    private final double[] outputTimes = new double[MAX_DELAY_SAMPLES];
+    private final double[] outputs = new double[MAX_DELAY_SAMPLES];
+    private int head = 0;
+    private int count = 0;
+    private double currTime = 0.0;
+    private double output = 0.0;
+    private double appliedOutput = 0.0;
+    private double velocity = 0.0;
+    private double position = 0.0;
+
+    /**
+     * Constructor: Creates an instance of the object.
+     *
+     * @param gain specifies the steady state velocity per unit of output.
+     * @param timeConstant specifies the time constant of the velocity lag in seconds.
+     * @param deadTime specifies the time the output takes to take effect in seconds.
+     */
+    public TrcSimPlant(double gain, double timeConstant, double deadTime)
+    {
+        if (timeConstant <= 0.0 || deadTime < 0.0)
+        {
+            throw new IllegalArgumentException("Invalid plant parameters.");
+        }
+
+        this.gain = gain;
+        this.timeConstant = timeConstant;
+        this.deadTime = deadTime;
+    }   //TrcSimPlant
+
+    /**
+     * This method advances the simulation by the given time step.
+     *
+     * @param dt specifies the time step in seconds.
+     */
+    public void step(double dt)
+    {
+        currTime += dt;
+        //
+        // Apply the outputs whose dead time has passed.
+        //
+        while (count > 0 && outputTimes[head] + deadTime <= currTime)
+        {
+            appliedOutput = outputs[head];
+            head = (head + 1) % MAX_DELAY_SAMPLES;
+            count--;
+        }
+
+        velocity += (gain*appliedOutput - velocity)*dt/(timeConstant + dt);
+        position += velocity*dt;
+    }   //step
+
+    /**
+     * This method returns the simulated time.
+     *
+     * @return simulated time in seconds.
+     */
+    public double getTime()
+    {
+        return currTime;
+    }   //getTime
+
+    /**
+     * This method returns the position of the axis.
+     *
+     * @return position.
+     */
+    public double getPosition()
+    {
+        return position;
+    }   //getPosition
+
+    /**
+     * This method returns the velocity of the axis.
+     *
+     * @return velocity.
+     */
+    public double getVelocity()
+    {
+        return velocity;
+    }   //getVelocity
+
+    /**
+     * This method sets the output of the axis. It takes effect after the dead time.
+     *
+     * @param output specifies the output.
+     */
+    public void setOutput(double output)
+    {
+        if (output != this.output)
+        {
+            if (count == MAX_DELAY_SAMPLES)
+            {
+                //
+                // The delay line is full, drop the oldest output.
+                //
+                head = (head + 1) % MAX_DELAY_SAMPLES;
+                count--;
+            }
+            outputTimes[(head + count) % MAX_DELAY_SAMPLES] = currTime;
+            outputs[(head + count) % MAX_DELAY_SAMPLES] = output;
+            count++;
+            this.output = output;
+        }
+    }   //setOutput
+
+    //
+    // Implements TrcPidController.PidInput interface.
+    //
+
+    @Override
+    public double getInput(TrcPidController pidCtrl)
+    {
+        return position;
+    }   //getInput
+
+    //
+    // Implements TrcPidAutoTuner.RelayOutput interface.
+    //
+
+    @Override
+    public void setRelayOutput(double output)
+    {
+        setOutput(output);
+    }   //setRelayOutput
+
+}   //class TrcSimPlant
@@ -0,0 +1,137 @@
+/*
+ * Titan Robotics Framework Library
+ * Copyright (c) 2016 Titan Robotics Club (http://www.titanrobotics.net)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package trclib;
+
+/**
+ * This class implements a spike (outlier) rejection filter. A data sample that differs from
+ * the last accepted sample by more than the given threshold is considered a spike and is
+ * replaced by the last accepted sample. If the data keeps on being rejected for more than the
+ * given number of consecutive samples, it is assumed to be a genuine step change and the new
+ * value is accepted. This prevents the filter from locking onto a stale value forever.
+ */
+public class TrcSpikeFilter extends TrcFilter
+{
+    private static final String moduleName = "TrcSpikeFilter";
+    private static final boolean debugEnabled = false;
+    private TrcDbgTrace dbgTrace = null;
+
+    private final double maxDelta;
+    private final int maxRejects;
+    private double lastValue;
+    private boolean initialized;
+    private int rejectCount;
+    private int totalRejects;
+
+    /**
+     * Constructor: Creates an instance of the object.
+     *
+     * @param instanceName specifies the instance name.
+     * @param maxDelta specifies the maximum change from the last accepted sample that is
+     *                 considered valid.
+     * @param maxRejects specifies the maximum number of consecutive samples to reject before
+     *                   accepting the new value as a step change.
+     */
+    public TrcSpikeFilter(String instanceName, double maxDelta, int maxRejects)
+    {
+        super(instanceName);
+
+        if (debugEnabled)
+        {
+            dbgTrace = new TrcDbgTrace(
+                    moduleName + "." + instanceName,
+                    false,
+                    TrcDbgTrace.TraceLevel.API,
+                    TrcDbgTrace.MsgLevel.INFO);
+        }
+
+        if (maxDelta <= 0.0)
+        {
+            throw new IllegalArgumentException("maxDelta must be greater than zero.");
+        }
+
+        if (maxRejects < 0)
+        {
+            throw new IllegalArgumentException("maxRejects must not be negative.");
+        }
+
+        this.maxDelta = maxDelta;
+        this.maxRejects = maxRejects;
+        totalRejects = 0;
+        reset();
+    }   //TrcSpikeFilter
+
+    /**
+     * This method returns the total number of samples rejected since the filter was created.
+     *
+     * @return total number of rejected samples.
+     */
+    public int getTotalRejects()
+    {
+        return totalRejects;
+    }   //getTotalRejects
+
+    //
+    // Overrides TrcFilter methods.
+    //
+
+    @Override
+    public void reset()
+    {
+        lastValue = 0.0;
+        initialized = false;
+        rejectCount = 0;
+    }   //reset
+
+    //
+    // Implements TrcFilter abstract methods.
+    //
+
+    @Override
+    public double filterData(double data)
+    {
+        final String funcName = "filterData";
+
+        if (!initialized || Math.abs(data - lastValue) <= maxDelta || rejectCount >= maxRejects)
+        {
+            lastValue = data;
+            initialized = true;
+            rejectCount = 0;
+        }
+        else
+        {
+            rejectCount++;
+            totalRejects++;
+        }
+
+        if (debugEnabled)
+        {
+            dbgTrace.traceEnter(funcName, TrcDbgTrace.TraceLevel.API, "data=%f", data);
+            dbgTrace.traceExit(funcName, TrcDbgTrace.TraceLevel.API,
+                               "=%f (rejects=%d)", lastValue, rejectCount);
+        }
+
+        return lastValue;
+    }   //filterData
+
+}   //class TrcSpikeFilter